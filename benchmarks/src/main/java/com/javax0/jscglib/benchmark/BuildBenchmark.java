@@ -0,0 +1,40 @@
+package com.javax0.jscglib.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.javax0.jscglib.JSC;
+
+/**
+ * Measures building JSC trees through the JSCBuilder factory methods and the
+ * fluent JSC calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildBenchmark {
+
+	@Param({ "1", "100", "10000", "100000" })
+	public int members;
+
+	@Param({ "4" })
+	public int commands;
+
+	@Benchmark
+	public JSC build() {
+		return Models.model("Built", members, commands);
+	}
+}
@@ -0,0 +1,56 @@
+package com.javax0.jscglib.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.javax0.jscglib.JSC;
+import com.javax0.jscglib.JSCCompiler;
+import com.javax0.jscglib.JSCCompilerCache;
+
+/**
+ * Measures the way from the JSC tree to a loaded class, with and without the
+ * compiler cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompileBenchmark {
+
+	@Param({ "1", "100" })
+	public int members;
+
+	private JSC klass;
+	private JSCCompiler compiler;
+	private JSCCompiler cachingCompiler;
+
+	@Setup
+	public void setup() {
+		klass = Models.model("Compiled", members, 4);
+		compiler = new JSCCompiler();
+		cachingCompiler = new JSCCompiler().cache(new JSCCompilerCache(16));
+	}
+
+	@Benchmark
+	public Class<?> compile() {
+		return compiler.compile(klass);
+	}
+
+	@Benchmark
+	public Class<?> compileCached() {
+		return cachingCompiler.compile(klass);
+	}
+}
@@ -0,0 +1,119 @@
+package com.javax0.jscglib.benchmark;
+
+import static com.javax0.jscglib.JSCBuilder.argument;
+import static com.javax0.jscglib.JSCBuilder.field;
+import static com.javax0.jscglib.JSCBuilder.klass;
+import static com.javax0.jscglib.JSCBuilder.method;
+import static com.javax0.jscglib.JSCExpression.gt;
+import static com.javax0.jscglib.JSCExpression.literal;
+import static com.javax0.jscglib.JSCExpression.local;
+import static com.javax0.jscglib.JSCExpression.minus;
+import static com.javax0.jscglib.JSCExpression.plus;
+import static com.javax0.jscglib.JSCStatement.assign;
+import static com.javax0.jscglib.JSCStatement.ifThen;
+import static com.javax0.jscglib.JSCStatement.returns;
+
+import java.lang.reflect.Modifier;
+
+import com.javax0.jscglib.JSC;
+import com.javax0.jscglib.JSCStatement;
+
+/**
+ * Creates the synthetic JSC models used by the benchmarks.
+ */
+final class Models {
+
+	private Models() {
+	}
+
+	/**
+	 * Create a class with the given number of members. Every second member
+	 * is an initialized field, the others are methods.
+	 *
+	 * @param name
+	 *            the name of the class
+	 * @param members
+	 *            the number of the members in the class
+	 * @param commands
+	 *            the number of the commands in each method. Every fourth
+	 *            command is a block command, an {@code if} with a block
+	 *            body, the others are simple assignments.
+	 * @return
+	 */
+	static JSC model(String name, int members, int commands) {
+		JSC klass = klass(name).inPackage("com.javax0.jscglib.generated")
+				.modifier(Modifier.PUBLIC).imports("java.util.List");
+		for (int i = 0; i < members; i++) {
+			if (i % 2 == 0) {
+				klass.add(field(int.class, "field" + i).modifier(
+						Modifier.PRIVATE).initValue(i));
+			} else {
+				JSC method = method(int.class, "method" + i)
+						.modifier(Modifier.PUBLIC)
+						.arguments(argument(int.class, "a"),
+								argument(String.class, "s"));
+				for (int j = 0; j < commands; j++) {
+					if (j % 4 == 3) {
+						method.commandBlock("if (a > " + j + ") { a--; }");
+					} else {
+						method.command("a = a + " + j);
+					}
+				}
+				method.command("return a + field" + (i - 1));
+				klass.add(method);
+			}
+		}
+		return klass;
+	}
+
+	/**
+	 * Create a class like {@link #model(String, int, int)} but with the method
+	 * bodies built from typed statements. Every fourth command is an
+	 * {@code if} statement with another {@code if} in its body, nested
+	 * {@code depth} levels deep, so the printer renders real nested blocks.
+	 *
+	 * @param name
+	 *            the name of the class
+	 * @param members
+	 *            the number of the members in the class
+	 * @param commands
+	 *            the number of the commands in each method
+	 * @param depth
+	 *            the nesting depth of the {@code if} statements
+	 * @return
+	 */
+	static JSC nestedModel(String name, int members, int commands, int depth) {
+		JSC klass = klass(name).inPackage("com.javax0.jscglib.generated")
+				.modifier(Modifier.PUBLIC);
+		for (int i = 0; i < members; i++) {
+			if (i % 2 == 0) {
+				klass.add(field(int.class, "field" + i).modifier(
+						Modifier.PRIVATE).initValue(i));
+			} else {
+				JSC method = method(int.class, "method" + i)
+						.modifier(Modifier.PUBLIC)
+						.arguments(argument(int.class, "a"));
+				for (int j = 0; j < commands; j++) {
+					if (j % 4 == 3) {
+						method.commands(nested(j, depth));
+					} else {
+						method.commands(assign(local("a"),
+								plus(local("a"), literal(j))));
+					}
+				}
+				method.commands(returns(local("a")));
+				klass.add(method);
+			}
+		}
+		return klass;
+	}
+
+	private static JSCStatement nested(int j, int depth) {
+		JSCStatement statement = assign(local("a"),
+				minus(local("a"), literal(1)));
+		for (int level = depth; level > 0; level--) {
+			statement = ifThen(gt(local("a"), literal(j + level)), statement);
+		}
+		return statement;
+	}
+}
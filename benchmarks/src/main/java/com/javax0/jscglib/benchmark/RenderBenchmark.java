@@ -0,0 +1,91 @@
+package com.javax0.jscglib.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.javax0.jscglib.JSC;
+import com.javax0.jscglib.JSCPrinter;
+
+/**
+ * Measures rendering a JSC class of different sizes. The {@code commands}
+ * parameter sets the size of the method bodies and the {@code depth}
+ * parameter the nesting depth of the {@code if} blocks in them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+	@Param({ "1", "100", "10000", "100000" })
+	public int members;
+
+	@Param({ "1", "16" })
+	public int commands;
+
+	@Param({ "1", "8" })
+	public int depth;
+
+	private JSC klass;
+	private ForkJoinPool pool;
+
+	/**
+	 * A writer that drops everything, so that only the rendering is measured.
+	 */
+	private static final Writer NULL_WRITER = new Writer() {
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	@Setup
+	public void setup() {
+		klass = Models.nestedModel("Rendered", members, commands, depth);
+		pool = new ForkJoinPool();
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public String renderToString() {
+		return klass.toString();
+	}
+
+	@Benchmark
+	public void renderToWriter() throws IOException {
+		JSCPrinter.pprint(klass, NULL_WRITER);
+	}
+
+	@Benchmark
+	public String renderParallel() {
+		return JSCPrinter.pprintParallel(klass, pool, 1000);
+	}
+}
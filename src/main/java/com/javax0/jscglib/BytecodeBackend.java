@@ -0,0 +1,1604 @@
+package com.javax0.jscglib;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Translates JSC classes directly to byte code without invoking the Java
+ * compiler. The backend handles the classes that contain only structure:
+ * fields with constant initializers, constructors calling the no argument
+ * constructor of the parent class, abstract and native methods, and methods
+ * and constructors with bodies built from {@link JSCStatement}s that compute
+ * with {@code int}, {@code long}, {@code double} and {@code boolean} local
+ * variables, arguments and fields of the class.
+ * <p>
+ * The backend does not report errors. Whenever a class contains something it
+ * does not handle, like a command string, an annotation or a generic type,
+ * or something the Java compiler would report as an error, it gives up and
+ * the classes are compiled by javac, which does the error reporting.
+ */
+final class BytecodeBackend {
+	private static final int CLASS_MODIFIERS = Modifier.PUBLIC
+			| Modifier.FINAL | Modifier.ABSTRACT;
+	private static final int ACCESS_MODIFIERS = Modifier.PUBLIC
+			| Modifier.PROTECTED | Modifier.PRIVATE;
+	private static final int FIELD_MODIFIERS = ACCESS_MODIFIERS
+			| Modifier.STATIC | Modifier.FINAL | Modifier.TRANSIENT
+			| Modifier.VOLATILE;
+	private static final int METHOD_MODIFIERS = ACCESS_MODIFIERS
+			| Modifier.STATIC | Modifier.FINAL | Modifier.SYNCHRONIZED
+			| Modifier.NATIVE | Modifier.ABSTRACT | Modifier.STRICT;
+	private static final int ACC_SUPER = 0x20;
+
+	private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+			"abstract", "assert", "boolean", "break", "byte", "case", "catch",
+			"char", "class", "const", "continue", "default", "do", "double",
+			"else", "enum", "extends", "final", "finally", "float", "for",
+			"goto", "if", "implements", "import", "instanceof", "int",
+			"interface", "long", "native", "new", "package", "private",
+			"protected", "public", "return", "short", "static", "strictfp",
+			"super", "switch", "synchronized", "this", "throw", "throws",
+			"transient", "try", "void", "volatile", "while", "true", "false",
+			"null", "_"));
+
+	private static final Map<String, String> PRIMITIVES = new HashMap<>();
+	static {
+		PRIMITIVES.put("boolean", "Z");
+		PRIMITIVES.put("byte", "B");
+		PRIMITIVES.put("char", "C");
+		PRIMITIVES.put("short", "S");
+		PRIMITIVES.put("int", "I");
+		PRIMITIVES.put("long", "J");
+		PRIMITIVES.put("float", "F");
+		PRIMITIVES.put("double", "D");
+	}
+
+	private BytecodeBackend() {
+	}
+
+	/**
+	 * Thrown when the backend can not translate a class. It is always caught
+	 * inside the backend, therefore it does not fill the stack trace.
+	 */
+	private static final class Unsupported extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		Unsupported() {
+			super(null, null, false, false);
+		}
+	}
+
+	private static final Unsupported UNSUPPORTED = new Unsupported();
+
+	/**
+	 * Translate the classes to byte code.
+	 *
+	 * @param klasses
+	 *            JSC objects of type {@link JSCType#CLASS}
+	 * @param loader
+	 *            the class loader used to find the classes referenced by the
+	 *            code
+	 * @return the byte code keyed by the binary names of the classes or
+	 *         {@code null} if any of the classes can not be translated
+	 *         directly
+	 */
+	static Map<String, byte[]> compile(final Collection<JSC> klasses,
+			final ClassLoader loader) {
+		final Map<String, JSC> batch = new LinkedHashMap<>();
+		for (final JSC klass : klasses) {
+			if (klass.hasLazyMembers()) {
+				return null;
+			}
+			if (batch.put(JSCCompiler.className(klass), klass) != null) {
+				return null;
+			}
+		}
+		final Map<String, byte[]> bytecodes = new HashMap<>();
+		try {
+			for (final Map.Entry<String, JSC> entry : batch.entrySet()) {
+				bytecodes.put(entry.getKey(), new ClassTranslator(entry
+						.getValue(), batch, loader).translate());
+			}
+		} catch (Unsupported e) {
+			return null;
+		}
+		return bytecodes;
+	}
+
+	/**
+	 * A type resolved from its name used in the source code.
+	 */
+	private static final class Type {
+		final String descriptor;
+		/**
+		 * The class when the type is loaded by the class loader, {@code null}
+		 * for primitive types and for the classes compiled in the same batch.
+		 */
+		final Class<?> klass;
+		/**
+		 * The JSC of the class when it is compiled in the same batch.
+		 */
+		final JSC jsc;
+
+		Type(final String descriptor, final Class<?> klass, final JSC jsc) {
+			this.descriptor = descriptor;
+			this.klass = klass;
+			this.jsc = jsc;
+		}
+
+		boolean isPrimitive() {
+			return descriptor.length() == 1;
+		}
+
+		boolean isReference() {
+			return !isPrimitive();
+		}
+
+		/**
+		 * @return the internal name of a class type, like
+		 *         {@code java/lang/String}
+		 */
+		String internalName() {
+			return descriptor.substring(1, descriptor.length() - 1);
+		}
+
+		int size() {
+			return "J".equals(descriptor) || "D".equals(descriptor) ? 2 : 1;
+		}
+	}
+
+	private static final class ClassTranslator {
+		private final JSC klass;
+		private final Map<String, JSC> batch;
+		private final ClassLoader loader;
+		private final String packge;
+		private final String internalName;
+		private final Map<String, Type> resolved = new HashMap<>();
+		private ClassFileWriter classFile;
+		private Type parent;
+		private final List<Type> interfaces = new ArrayList<>();
+		/**
+		 * The methods the class inherits from the classes and interfaces
+		 * loaded by the class loader.
+		 */
+		private final List<Method> inherited = new ArrayList<>();
+		/**
+		 * The methods the class inherits from the classes compiled in the
+		 * same batch.
+		 */
+		private final Set<String> inheritedFromBatch = new HashSet<>();
+
+		ClassTranslator(final JSC klass, final Map<String, JSC> batch,
+				final ClassLoader loader) {
+			this.klass = klass;
+			this.batch = batch;
+			this.loader = loader;
+			this.packge = klass.getPackge();
+			this.internalName = JSCCompiler.className(klass).replace('.', '/');
+		}
+
+		byte[] translate() throws Unsupported {
+			checkClass();
+			parent = parentType();
+			checkParent(parent);
+			final List<String> interfaceNames = new ArrayList<>();
+			for (final String intrface : klass.getIntrfaces()) {
+				final Type type = resolve(intrface);
+				if (type.klass == null || !type.klass.isInterface()
+						|| interfaceNames.contains(type.internalName())) {
+					throw UNSUPPORTED;
+				}
+				interfaces.add(type);
+				interfaceNames.add(type.internalName());
+				collectInherited(type.klass);
+			}
+			classFile = new ClassFileWriter((klass.getModifiers() & CLASS_MODIFIERS)
+					| ACC_SUPER, internalName, parent.internalName(),
+					interfaceNames);
+			classFile.sourceFile(klass.getIdentifier() + ".java");
+
+			final List<JSC> fields = new ArrayList<>();
+			final List<JSC> constructors = new ArrayList<>();
+			final List<JSC> methods = new ArrayList<>();
+			for (final JSC member : klass.getDeclaredBlocks()) {
+				switch (member.getJscType()) {
+				case FIELD:
+					fields.add(member);
+					break;
+				case CONSTRUCTOR:
+					constructors.add(member);
+					break;
+				case METHOD:
+					methods.add(member);
+					break;
+				default:
+					throw UNSUPPORTED;
+				}
+			}
+			final List<FieldInit> instanceInits = new ArrayList<>();
+			final List<FieldInit> staticInits = new ArrayList<>();
+			translateFields(fields, instanceInits, staticInits);
+			translateConstructors(constructors, instanceInits);
+			final Map<String, String> signatures = translateMethods(methods);
+			checkImplemented(signatures);
+			if (!staticInits.isEmpty()) {
+				final ClassFileWriter.Code code = new ClassFileWriter.Code(
+						classFile, 0);
+				for (final FieldInit init : staticInits) {
+					code.push(init.value);
+					code.op2(ClassFileWriter.Code.PUTSTATIC, classFile
+							.fieldRef(internalName, init.name, init.descriptor),
+							-init.size);
+				}
+				code.op(ClassFileWriter.Code.RETURN, 0);
+				classFile.method(Modifier.STATIC, "<clinit>", "()V",
+						new ArrayList<String>(), code);
+			}
+			return classFile.toByteArray();
+		}
+
+		private void checkClass() throws Unsupported {
+			final int modifiers = klass.getModifiers();
+			if ((modifiers & ~CLASS_MODIFIERS) != 0
+					|| Modifier.isFinal(modifiers)
+					&& Modifier.isAbstract(modifiers)
+					|| !klass.getAnnotations().isEmpty()
+					|| !isIdentifier(klass.getIdentifier())) {
+				throw UNSUPPORTED;
+			}
+			if (packge != null) {
+				for (final String part : packge.split("\\.", -1)) {
+					if (!isIdentifier(part)) {
+						throw UNSUPPORTED;
+					}
+				}
+			}
+			for (final String imported : klass.getImports()) {
+				if (imported.startsWith("static ")) {
+					throw UNSUPPORTED;
+				}
+			}
+		}
+
+		/**
+		 * The parent class has to be extensible and it needs a no argument
+		 * constructor the generated constructors can call.
+		 */
+		private void checkParent(final Type parent) throws Unsupported {
+			if (parent.isPrimitive() || parent.descriptor.startsWith("[")) {
+				throw UNSUPPORTED;
+			}
+			if (parent.jsc != null) {
+				if (Modifier.isFinal(parent.jsc.getModifiers())
+						|| !hasNoArgumentConstructor(parent.jsc)) {
+					throw UNSUPPORTED;
+				}
+				collectInherited(parent);
+				return;
+			}
+			final Class<?> type = parent.klass;
+			collectInherited(type);
+			if (type.isInterface() || type.isEnum() || type == Enum.class
+					|| Modifier.isFinal(type.getModifiers())) {
+				throw UNSUPPORTED;
+			}
+			try {
+				final int modifiers = type.getDeclaredConstructor()
+						.getModifiers();
+				if (!Modifier.isPublic(modifiers)
+						&& !Modifier.isProtected(modifiers)) {
+					throw UNSUPPORTED;
+				}
+			} catch (NoSuchMethodException | SecurityException e) {
+				throw UNSUPPORTED;
+			}
+		}
+
+		/**
+		 * Walk up the classes compiled in the same batch until the first
+		 * class loaded by the class loader.
+		 */
+		private void collectInherited(final Type parent) throws Unsupported {
+			final Set<JSC> ancestors = new HashSet<>();
+			ancestors.add(klass);
+			Type current = parent;
+			while (current.jsc != null) {
+				if (!ancestors.add(current.jsc)) {
+					throw UNSUPPORTED;
+				}
+				for (final JSC member : current.jsc.getDeclaredBlocks()) {
+					if (member.getJscType() == JSCType.METHOD) {
+						inheritedFromBatch.add(member.getIdentifier());
+					}
+				}
+				current = new ClassTranslator(current.jsc, batch, loader)
+						.parentType();
+			}
+			collectInherited(current.klass);
+		}
+
+		private Type parentType() throws Unsupported {
+			return klass.getParentClass() == null ? resolve("java.lang.Object")
+					: resolve(klass.getParentClass());
+		}
+
+		private void collectInherited(final Class<?> type) {
+			if (type == null) {
+				return;
+			}
+			if (type.isInterface()) {
+				for (final Method method : type.getMethods()) {
+					if (!Modifier.isStatic(method.getModifiers())) {
+						inherited.add(method);
+					}
+				}
+				return;
+			}
+			for (Class<?> ancestor = type; ancestor != null; ancestor = ancestor
+					.getSuperclass()) {
+				for (final Method method : ancestor.getDeclaredMethods()) {
+					if (!Modifier.isPrivate(method.getModifiers())) {
+						inherited.add(method);
+					}
+				}
+				for (final Class<?> intrface : ancestor.getInterfaces()) {
+					collectInherited(intrface);
+				}
+			}
+		}
+
+		private static boolean hasNoArgumentConstructor(final JSC klass) {
+			boolean hasConstructor = false;
+			for (final JSC member : klass.getDeclaredBlocks()) {
+				if (member.getJscType() == JSCType.CONSTRUCTOR) {
+					hasConstructor = true;
+					if (member.getArguments().isEmpty()
+							&& !Modifier.isPrivate(member.getModifiers())) {
+						return true;
+					}
+				}
+			}
+			return !hasConstructor;
+		}
+
+		/**
+		 * A field initialized in the constructors or in the static
+		 * initializer.
+		 */
+		private static final class FieldInit {
+			final String name;
+			final String descriptor;
+			final Object value;
+			final int size;
+
+			FieldInit(final String name, final Type type, final Object value) {
+				this.name = name;
+				this.descriptor = type.descriptor;
+				this.value = value;
+				this.size = type.size();
+			}
+		}
+
+		private void translateFields(final List<JSC> fields,
+				final List<FieldInit> instanceInits,
+				final List<FieldInit> staticInits) throws Unsupported {
+			final Set<String> names = new HashSet<>();
+			for (final JSC field : fields) {
+				final int modifiers = field.getModifiers();
+				if ((modifiers & ~FIELD_MODIFIERS) != 0
+						|| Integer.bitCount(modifiers & ACCESS_MODIFIERS) > 1
+						|| Modifier.isFinal(modifiers)
+						&& Modifier.isVolatile(modifiers)
+						|| !field.getAnnotations().isEmpty()
+						|| !isIdentifier(field.getIdentifier())
+						|| !names.add(field.getIdentifier())
+						|| field.getType() == null) {
+					throw UNSUPPORTED;
+				}
+				final Type type = resolve(field.getType());
+				Object constantValue = null;
+				if (field.getExpression() == null) {
+					if (Modifier.isFinal(modifiers)) {
+						throw UNSUPPORTED;
+					}
+				} else {
+					final Object value = Literals.convert(
+							Literals.parse(field.getExpression()), type);
+					if (Modifier.isStatic(modifiers)) {
+						if (Modifier.isFinal(modifiers) && value != null) {
+							constantValue = value;
+						} else {
+							staticInits.add(new FieldInit(field
+									.getIdentifier(), type, value));
+						}
+					} else {
+						instanceInits.add(new FieldInit(field.getIdentifier(),
+								type, value));
+					}
+				}
+				classFile.field(modifiers, field.getIdentifier(),
+						type.descriptor, constantValue);
+			}
+		}
+
+		private void translateConstructors(final List<JSC> constructors,
+				final List<FieldInit> instanceInits) throws Unsupported {
+			if (constructors.isEmpty()) {
+				translateConstructor(klass.getModifiers() & Modifier.PUBLIC,
+						new ArrayList<JSC>(), new ArrayList<JSC>(),
+						new ArrayList<String>(), instanceInits);
+				return;
+			}
+			final Set<String> descriptors = new HashSet<>();
+			for (final JSC constructor : constructors) {
+				final int modifiers = constructor.getModifiers();
+				if ((modifiers & ~ACCESS_MODIFIERS) != 0
+						|| Integer.bitCount(modifiers) > 1
+						|| !constructor.getAnnotations().isEmpty()
+						|| !klass.getIdentifier().equals(
+								constructor.getIdentifier())
+						|| !descriptors.add(argumentsDescriptor(constructor))) {
+					throw UNSUPPORTED;
+				}
+				translateConstructor(modifiers, constructor.getArguments(),
+						constructor.getCommands(), exceptions(constructor),
+						instanceInits);
+			}
+		}
+
+		private void translateConstructor(final int modifiers,
+				final List<JSC> arguments, final List<JSC> commands,
+				final List<String> exceptions,
+				final List<FieldInit> instanceInits) throws Unsupported {
+			final ClassFileWriter.Code code = new ClassFileWriter.Code(
+					classFile, 1 + argumentsSize(arguments));
+			code.op(ClassFileWriter.Code.ALOAD_0, 1);
+			code.op2(ClassFileWriter.Code.INVOKESPECIAL,
+					classFile.methodRef(parent.internalName(), "<init>", "()V"),
+					-1);
+			for (final FieldInit init : instanceInits) {
+				code.op(ClassFileWriter.Code.ALOAD_0, 1);
+				code.push(init.value);
+				code.op2(ClassFileWriter.Code.PUTFIELD, classFile.fieldRef(
+						internalName, init.name, init.descriptor),
+						-1 - init.size);
+			}
+			new BodyTranslator(code, arguments, false, "V").translate(commands);
+			classFile.method(modifiers, "<init>", "(" + descriptors(arguments)
+					+ ")V", exceptions, code);
+		}
+
+		/**
+		 * Translate the methods.
+		 *
+		 * @return the descriptors of the methods keyed by the name and the
+		 *         descriptors of the arguments
+		 */
+		private Map<String, String> translateMethods(final List<JSC> methods)
+				throws Unsupported {
+			final Map<String, String> signatures = new HashMap<>();
+			for (final JSC method : methods) {
+				final int modifiers = method.getModifiers();
+				if ((modifiers & ~METHOD_MODIFIERS) != 0
+						|| Integer.bitCount(modifiers & ACCESS_MODIFIERS) > 1
+						|| !method.getAnnotations().isEmpty()
+						|| !isIdentifier(method.getIdentifier())
+						|| method.getType() == null) {
+					throw UNSUPPORTED;
+				}
+				final String returnDescriptor = "void".equals(method.getType()) ? "V"
+						: resolve(method.getType()).descriptor;
+				final String key = method.getIdentifier()
+						+ argumentsDescriptor(method);
+				if (signatures.put(key, returnDescriptor) != null) {
+					throw UNSUPPORTED;
+				}
+				final boolean isAbstract = Modifier.isAbstract(modifiers);
+				final boolean isNative = Modifier.isNative(modifiers);
+				if (isAbstract
+						&& ((modifiers & (Modifier.PRIVATE | Modifier.STATIC
+								| Modifier.FINAL | Modifier.NATIVE
+								| Modifier.SYNCHRONIZED | Modifier.STRICT)) != 0 || !Modifier
+								.isAbstract(klass.getModifiers()))
+						|| isNative && Modifier.isStrict(modifiers)) {
+					throw UNSUPPORTED;
+				}
+				checkOverride(method, returnDescriptor);
+				ClassFileWriter.Code code = null;
+				if (!isAbstract && !isNative) {
+					final boolean isStatic = Modifier.isStatic(modifiers);
+					code = new ClassFileWriter.Code(classFile, (isStatic ? 0
+							: 1) + argumentsSize(method.getArguments()));
+					new BodyTranslator(code, method.getArguments(), isStatic,
+							returnDescriptor).translate(method.getCommands());
+				} else if (!method.getCommands().isEmpty()) {
+					throw UNSUPPORTED;
+				}
+				classFile.method(modifiers, method.getIdentifier(), "("
+						+ descriptors(method.getArguments()) + ")"
+						+ returnDescriptor, exceptions(method), code);
+			}
+			return signatures;
+		}
+
+		/**
+		 * A local variable or an argument.
+		 */
+		private static final class Local {
+			final int index;
+			final String descriptor;
+
+			Local(final int index, final String descriptor) {
+				this.index = index;
+				this.descriptor = descriptor;
+			}
+		}
+
+		/**
+		 * Translates the statements of a method or a constructor. The values
+		 * are {@code int}, {@code long}, {@code double} or {@code boolean},
+		 * like in the Java Virtual Machine the {@code boolean} values are
+		 * {@code int} zero and one on the operand stack.
+		 */
+		private final class BodyTranslator {
+			private final ClassFileWriter.Code code;
+			private final boolean isStatic;
+			private final String returnDescriptor;
+			private final Map<String, Local> locals = new HashMap<>();
+			private final Deque<List<String>> scopes = new ArrayDeque<>();
+
+			BodyTranslator(final ClassFileWriter.Code code,
+					final List<JSC> arguments, final boolean isStatic,
+					final String returnDescriptor) throws Unsupported {
+				this.code = code;
+				this.isStatic = isStatic;
+				this.returnDescriptor = returnDescriptor;
+				scopes.push(new ArrayList<String>());
+				int index = isStatic ? 0 : 1;
+				for (final JSC argument : arguments) {
+					final Type type = resolve(argument.getType());
+					locals.put(argument.getIdentifier(), new Local(index,
+							type.descriptor));
+					scopes.peek().add(argument.getIdentifier());
+					index += type.size();
+				}
+			}
+
+			void translate(final List<JSC> commands) throws Unsupported {
+				final List<JSCStatement> statements = new ArrayList<>();
+				for (final JSC command : commands) {
+					if (!(command instanceof JSCStatement)) {
+						throw UNSUPPORTED;
+					}
+					statements.add(((JSCStatement) command).fold());
+				}
+				if (statements(statements)) {
+					if (!"V".equals(returnDescriptor)) {
+						throw UNSUPPORTED;
+					}
+					code.op(ClassFileWriter.Code.RETURN, 0);
+				}
+				if (code.size() > Short.MAX_VALUE) {
+					throw UNSUPPORTED;
+				}
+			}
+
+			/**
+			 * @return {@code true} if the execution continues after the
+			 *         statements
+			 */
+			private boolean statements(final List<JSCStatement> statements)
+					throws Unsupported {
+				scopes.push(new ArrayList<String>());
+				boolean completes = true;
+				for (final JSCStatement statement : statements) {
+					if (!completes) {
+						throw UNSUPPORTED;
+					}
+					statement(statement);
+					completes = statement.canCompleteNormally();
+				}
+				for (final String name : scopes.pop()) {
+					locals.remove(name);
+				}
+				return completes;
+			}
+
+			private void statement(final JSCStatement statement)
+					throws Unsupported {
+				switch (statement.getKind()) {
+				case DECLARE:
+					declare(statement);
+					break;
+				case ASSIGN:
+					assign(statement.getTarget(), statement.getValue());
+					break;
+				case RETURN:
+					if (statement.getValue() == null) {
+						if (!"V".equals(returnDescriptor)) {
+							throw UNSUPPORTED;
+						}
+						code.op(ClassFileWriter.Code.RETURN, 0);
+					} else {
+						if ("V".equals(returnDescriptor)) {
+							throw UNSUPPORTED;
+						}
+						convert(expression(statement.getValue()),
+								returnDescriptor);
+						code.op(ClassFileWriter.Code.IRETURN
+								+ typeOffset(returnDescriptor),
+								-size(returnDescriptor));
+					}
+					break;
+				case IF: {
+					final ClassFileWriter.Code.Label otherwise = new ClassFileWriter.Code.Label();
+					branch(statement.getCondition(), otherwise, false);
+					final boolean completes = statements(statement.getBody());
+					if (statement.getElseBody().isEmpty()) {
+						code.mark(otherwise);
+					} else {
+						final ClassFileWriter.Code.Label end = new ClassFileWriter.Code.Label();
+						if (completes) {
+							code.jump(ClassFileWriter.Code.GOTO, end, 0);
+						}
+						code.mark(otherwise);
+						statements(statement.getElseBody());
+						code.mark(end);
+					}
+					break;
+				}
+				case WHILE:
+					loop(statement.getCondition(), statement.getBody(), null);
+					break;
+				case FOR:
+					scopes.push(new ArrayList<String>());
+					if (statement.getInit() != null) {
+						statement(statement.getInit());
+					}
+					loop(statement.getCondition(), statement.getBody(),
+							statement.getUpdate());
+					for (final String name : scopes.pop()) {
+						locals.remove(name);
+					}
+					break;
+				case BLOCK:
+					statements(statement.getBody());
+					break;
+				default:
+					throw UNSUPPORTED;
+				}
+			}
+
+			private void loop(final JSCExpression condition,
+					final List<JSCStatement> body, final JSCStatement update)
+					throws Unsupported {
+				final ClassFileWriter.Code.Label start = new ClassFileWriter.Code.Label();
+				final ClassFileWriter.Code.Label end = new ClassFileWriter.Code.Label();
+				code.mark(start);
+				if (condition != null) {
+					branch(condition, end, false);
+				}
+				statements(body);
+				if (update != null) {
+					statement(update);
+				}
+				code.jump(ClassFileWriter.Code.GOTO, start, 0);
+				code.mark(end);
+			}
+
+			/**
+			 * A local variable without initial value is not supported: the
+			 * Java compiler reports the use of a variable before assignment,
+			 * and the byte code verifier rejects it.
+			 */
+			private void declare(final JSCStatement statement)
+					throws Unsupported {
+				final String name = statement.getDeclaredName();
+				if (statement.getValue() == null || locals.containsKey(name)) {
+					throw UNSUPPORTED;
+				}
+				final String descriptor = valueType(resolve(statement
+						.getDeclaredType()).descriptor);
+				convert(expression(statement.getValue()), descriptor);
+				final Local local = new Local(code.local(size(descriptor)),
+						descriptor);
+				code.local(ClassFileWriter.Code.ISTORE,
+						typeOffset(descriptor), local.index);
+				locals.put(name, local);
+				scopes.peek().add(name);
+			}
+
+			private void assign(final JSCExpression target,
+					final JSCExpression value) throws Unsupported {
+				switch (target.getKind()) {
+				case LOCAL: {
+					final Local local = local(target.getName());
+					convert(expression(value), local.descriptor);
+					code.local(ClassFileWriter.Code.ISTORE,
+							typeOffset(local.descriptor), local.index);
+					break;
+				}
+				case FIELD: {
+					final JSC field = field(target);
+					if (Modifier.isFinal(field.getModifiers())) {
+						throw UNSUPPORTED;
+					}
+					final String descriptor = valueType(resolve(field
+							.getType()).descriptor);
+					code.op(ClassFileWriter.Code.ALOAD_0, 1);
+					convert(expression(value), descriptor);
+					code.op2(ClassFileWriter.Code.PUTFIELD, classFile.fieldRef(
+							internalName, field.getIdentifier(), descriptor),
+							-1 - size(descriptor));
+					break;
+				}
+				default:
+					throw UNSUPPORTED;
+				}
+			}
+
+			private Local local(final String name) throws Unsupported {
+				final Local local = locals.get(name);
+				if (local == null) {
+					throw UNSUPPORTED;
+				}
+				valueType(local.descriptor);
+				return local;
+			}
+
+			/**
+			 * Find the field of the class used as {@code this.name}. The
+			 * inherited fields are not supported.
+			 */
+			private JSC field(final JSCExpression target) throws Unsupported {
+				if (isStatic || target.getTarget() != null) {
+					throw UNSUPPORTED;
+				}
+				for (final JSC member : klass.getDeclaredBlocks()) {
+					if (member.getJscType() == JSCType.FIELD
+							&& target.getName().equals(member.getIdentifier())) {
+						if (Modifier.isStatic(member.getModifiers())) {
+							throw UNSUPPORTED;
+						}
+						return member;
+					}
+				}
+				throw UNSUPPORTED;
+			}
+
+			/**
+			 * Push the value of the expression on the operand stack.
+			 *
+			 * @return the descriptor of the type of the value
+			 */
+			private String expression(final JSCExpression expression)
+					throws Unsupported {
+				switch (expression.getKind()) {
+				case LITERAL: {
+					final Object value = expression.getValue();
+					if (value instanceof Boolean) {
+						code.push((Boolean) value ? 1 : 0);
+						return "Z";
+					}
+					if (!(value instanceof Integer || value instanceof Long || value instanceof Double)) {
+						throw UNSUPPORTED;
+					}
+					code.push(value);
+					return value instanceof Integer ? "I"
+							: value instanceof Long ? "J" : "D";
+				}
+				case LOCAL: {
+					final Local local = local(expression.getName());
+					code.local(ClassFileWriter.Code.ILOAD,
+							typeOffset(local.descriptor), local.index);
+					return local.descriptor;
+				}
+				case FIELD: {
+					final JSC field = field(expression);
+					final String descriptor = valueType(resolve(field
+							.getType()).descriptor);
+					code.op(ClassFileWriter.Code.ALOAD_0, 1);
+					code.op2(ClassFileWriter.Code.GETFIELD, classFile
+							.fieldRef(internalName, field.getIdentifier(),
+									descriptor), size(descriptor) - 1);
+					return descriptor;
+				}
+				case UNARY:
+					if (expression.getOperator() == JSCExpression.Operator.NOT) {
+						if (!"Z".equals(expression(expression.getOperands()
+								.get(0)))) {
+							throw UNSUPPORTED;
+						}
+						code.push(1);
+						code.op(ClassFileWriter.Code.IXOR, -1);
+						return "Z";
+					}
+					final String type = expression(expression.getOperands()
+							.get(0));
+					if ("Z".equals(type)) {
+						throw UNSUPPORTED;
+					}
+					code.op(ClassFileWriter.Code.INEG + typeOffset(type), 0);
+					return type;
+				case BINARY:
+					return binary(expression);
+				default:
+					throw UNSUPPORTED;
+				}
+			}
+
+			private String binary(final JSCExpression expression)
+					throws Unsupported {
+				final JSCExpression.Operator operator = expression
+						.getOperator();
+				if (!operator.isArithmetic()) {
+					final ClassFileWriter.Code.Label otherwise = new ClassFileWriter.Code.Label();
+					final ClassFileWriter.Code.Label end = new ClassFileWriter.Code.Label();
+					branch(expression, otherwise, false);
+					code.push(1);
+					code.jump(ClassFileWriter.Code.GOTO, end, 0);
+					code.mark(otherwise);
+					code.push(0);
+					code.mark(end);
+					return "Z";
+				}
+				final String type = operands(expression);
+				final int opcode;
+				switch (operator) {
+				case PLUS:
+					opcode = ClassFileWriter.Code.IADD;
+					break;
+				case MINUS:
+					opcode = ClassFileWriter.Code.ISUB;
+					break;
+				case TIMES:
+					opcode = ClassFileWriter.Code.IMUL;
+					break;
+				case DIVIDE:
+					opcode = ClassFileWriter.Code.IDIV;
+					break;
+				default:
+					opcode = ClassFileWriter.Code.IREM;
+				}
+				code.op(opcode + typeOffset(type), -size(type));
+				return type;
+			}
+
+			/**
+			 * Push the numeric operands of a binary operator converted to
+			 * their common type.
+			 *
+			 * @return the descriptor of the common type
+			 */
+			private String operands(final JSCExpression expression)
+					throws Unsupported {
+				final JSCExpression left = expression.getOperands().get(0);
+				final JSCExpression right = expression.getOperands().get(1);
+				final String type = promote(type(left), type(right));
+				convert(expression(left), type);
+				convert(expression(right), type);
+				return type;
+			}
+
+			/**
+			 * @return the descriptor of the type of the value of the
+			 *         expression without generating code
+			 */
+			private String type(final JSCExpression expression)
+					throws Unsupported {
+				switch (expression.getKind()) {
+				case LITERAL: {
+					final Object value = expression.getValue();
+					if (value instanceof Boolean) {
+						return "Z";
+					}
+					if (value instanceof Integer) {
+						return "I";
+					}
+					if (value instanceof Long) {
+						return "J";
+					}
+					if (value instanceof Double) {
+						return "D";
+					}
+					throw UNSUPPORTED;
+				}
+				case LOCAL:
+					return local(expression.getName()).descriptor;
+				case FIELD:
+					return valueType(resolve(field(expression).getType()).descriptor);
+				case UNARY:
+					return expression.getOperator() == JSCExpression.Operator.NOT ? "Z"
+							: type(expression.getOperands().get(0));
+				case BINARY:
+					if (!expression.getOperator().isArithmetic()) {
+						return "Z";
+					}
+					return promote(type(expression.getOperands().get(0)),
+							type(expression.getOperands().get(1)));
+				default:
+					throw UNSUPPORTED;
+				}
+			}
+
+			/**
+			 * Jump to the label if the boolean expression has the given
+			 * value, continue with the next instruction otherwise.
+			 */
+			private void branch(final JSCExpression condition,
+					final ClassFileWriter.Code.Label label, final boolean when)
+					throws Unsupported {
+				final JSCExpression folded = condition.fold();
+				if (folded.isConstant()) {
+					if (!(folded.getValue() instanceof Boolean)) {
+						throw UNSUPPORTED;
+					}
+					if ((Boolean) folded.getValue() == when) {
+						code.jump(ClassFileWriter.Code.GOTO, label, 0);
+					}
+					return;
+				}
+				final JSCExpression.Operator operator = folded.getOperator();
+				if (operator == JSCExpression.Operator.NOT) {
+					branch(folded.getOperands().get(0), label, !when);
+				} else if (operator == JSCExpression.Operator.AND
+						|| operator == JSCExpression.Operator.OR) {
+					final JSCExpression left = folded.getOperands().get(0);
+					final JSCExpression right = folded.getOperands().get(1);
+					if (when == (operator == JSCExpression.Operator.OR)) {
+						branch(left, label, when);
+						branch(right, label, when);
+					} else {
+						final ClassFileWriter.Code.Label skip = new ClassFileWriter.Code.Label();
+						branch(left, skip, !when);
+						branch(right, label, when);
+						code.mark(skip);
+					}
+				} else if (operator != null && operator.isComparison()
+						|| operator == JSCExpression.Operator.EQ
+						|| operator == JSCExpression.Operator.NE) {
+					compare(folded, label, when);
+				} else {
+					if (!"Z".equals(expression(folded))) {
+						throw UNSUPPORTED;
+					}
+					code.jump(when ? ClassFileWriter.Code.IFNE
+							: ClassFileWriter.Code.IFEQ, label, -1);
+				}
+			}
+
+			private void compare(final JSCExpression comparison,
+					final ClassFileWriter.Code.Label label, final boolean when)
+					throws Unsupported {
+				final JSCExpression.Operator operator = comparison
+						.getOperator();
+				int condition;
+				switch (operator) {
+				case EQ:
+					condition = 0;
+					break;
+				case NE:
+					condition = 1;
+					break;
+				case LT:
+					condition = 2;
+					break;
+				case GE:
+					condition = 3;
+					break;
+				case GT:
+					condition = 4;
+					break;
+				default:
+					condition = 5;
+				}
+				if (!when) {
+					condition ^= 1;
+				}
+				final JSCExpression left = comparison.getOperands().get(0);
+				final JSCExpression right = comparison.getOperands().get(1);
+				if ("Z".equals(type(left)) || "Z".equals(type(right))) {
+					if (!"Z".equals(expression(left))
+							|| !"Z".equals(expression(right))
+							|| !(operator == JSCExpression.Operator.EQ || operator == JSCExpression.Operator.NE)) {
+						throw UNSUPPORTED;
+					}
+					code.jump(ClassFileWriter.Code.IF_ICMPEQ + condition,
+							label, -2);
+					return;
+				}
+				final String type = operands(comparison);
+				switch (type) {
+				case "I":
+					code.jump(ClassFileWriter.Code.IF_ICMPEQ + condition,
+							label, -2);
+					return;
+				case "J":
+					code.op(ClassFileWriter.Code.LCMP, -3);
+					break;
+				default:
+					// NaN compares to 1 for < and <=, to -1 for > and >=
+					code.op(operator == JSCExpression.Operator.LT
+							|| operator == JSCExpression.Operator.LE ? ClassFileWriter.Code.DCMPG
+							: ClassFileWriter.Code.DCMPL, -3);
+				}
+				code.jump(ClassFileWriter.Code.IFEQ + condition, label, -1);
+			}
+
+			private void convert(final String from, final String to)
+					throws Unsupported {
+				if (from.equals(to)) {
+					return;
+				}
+				if ("I".equals(from) && "J".equals(to)) {
+					code.op(ClassFileWriter.Code.I2L, 1);
+				} else if ("I".equals(from) && "D".equals(to)) {
+					code.op(ClassFileWriter.Code.I2D, 1);
+				} else if ("J".equals(from) && "D".equals(to)) {
+					code.op(ClassFileWriter.Code.L2D, 0);
+				} else {
+					throw UNSUPPORTED;
+				}
+			}
+		}
+
+		/**
+		 * A method that overrides an inherited method with a different return
+		 * type needs a bridge method, the backend does not create those.
+		 * Overriding a final or static method or weakening the access is an
+		 * error. Methods inherited from the classes of the same batch are not
+		 * analyzed, overriding those is left to javac.
+		 */
+		private void checkOverride(final JSC method,
+				final String returnDescriptor) throws Unsupported {
+			if (inheritedFromBatch.contains(method.getIdentifier())) {
+				throw UNSUPPORTED;
+			}
+			final String arguments = argumentsDescriptor(method);
+			for (final Method candidate : inherited) {
+				if (!candidate.getName().equals(method.getIdentifier())
+						|| !arguments.equals(argumentsDescriptor(candidate))) {
+					continue;
+				}
+				if (!returnDescriptor.equals(descriptor(candidate
+						.getReturnType()))
+						|| Modifier.isFinal(candidate.getModifiers())
+						|| Modifier.isStatic(candidate.getModifiers()) != Modifier
+								.isStatic(method.getModifiers())
+						|| accessRank(method.getModifiers()) < accessRank(candidate
+								.getModifiers())) {
+					throw UNSUPPORTED;
+				}
+			}
+		}
+
+		private static int accessRank(final int modifiers) {
+			if (Modifier.isPublic(modifiers)) {
+				return 3;
+			}
+			if (Modifier.isProtected(modifiers)) {
+				return 2;
+			}
+			if (Modifier.isPrivate(modifiers)) {
+				return 0;
+			}
+			return 1;
+		}
+
+		/**
+		 * A class that is not abstract has to implement all the abstract
+		 * methods it inherits. The descriptors were already checked by
+		 * {@link #checkOverride(JSC, String)}.
+		 */
+		private void checkImplemented(final Map<String, String> signatures)
+				throws Unsupported {
+			if (Modifier.isAbstract(klass.getModifiers())) {
+				return;
+			}
+			if (parent.jsc != null
+					&& (Modifier.isAbstract(parent.jsc.getModifiers()) || !interfaces
+							.isEmpty())) {
+				throw UNSUPPORTED;
+			}
+			for (final Method method : inherited) {
+				if (Modifier.isAbstract(method.getModifiers())
+						&& !signatures.containsKey(method.getName()
+								+ argumentsDescriptor(method))
+						&& !isImplemented(method)) {
+					throw UNSUPPORTED;
+				}
+			}
+		}
+
+		/**
+		 * @return {@code true} if a concrete public method of the inherited
+		 *         classes implements the abstract method
+		 */
+		private boolean isImplemented(final Method method) {
+			for (final Method candidate : inherited) {
+				if (!candidate.getDeclaringClass().isInterface()
+						&& !Modifier.isAbstract(candidate.getModifiers())
+						&& Modifier.isPublic(candidate.getModifiers())
+						&& candidate.getName().equals(method.getName())
+						&& candidate.getReturnType() == method.getReturnType()
+						&& Arrays.equals(candidate.getParameterTypes(),
+								method.getParameterTypes())) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private List<String> exceptions(final JSC code) throws Unsupported {
+			final List<String> exceptions = new ArrayList<>();
+			for (final String exception : code.getExceptions()) {
+				final Type type = resolve(exception);
+				if (type.jsc != null || type.klass == null
+						|| !Throwable.class.isAssignableFrom(type.klass)) {
+					throw UNSUPPORTED;
+				}
+				exceptions.add(type.internalName());
+			}
+			return exceptions;
+		}
+
+		private String argumentsDescriptor(final JSC code) throws Unsupported {
+			return "(" + descriptors(code.getArguments()) + ")";
+		}
+
+		private static String argumentsDescriptor(final Method method) {
+			final StringBuilder sb = new StringBuilder("(");
+			for (final Class<?> type : method.getParameterTypes()) {
+				sb.append(descriptor(type));
+			}
+			return sb.append(")").toString();
+		}
+
+		private String descriptors(final List<JSC> arguments)
+				throws Unsupported {
+			final StringBuilder sb = new StringBuilder();
+			final Set<String> names = new HashSet<>();
+			for (final JSC argument : arguments) {
+				if (argument.getJscType() != JSCType.ARGUMENT
+						|| !isIdentifier(argument.getIdentifier())
+						|| !names.add(argument.getIdentifier())
+						|| argument.getType() == null) {
+					throw UNSUPPORTED;
+				}
+				sb.append(resolve(argument.getType()).descriptor);
+			}
+			return sb.toString();
+		}
+
+		private int argumentsSize(final List<JSC> arguments)
+				throws Unsupported {
+			int size = 0;
+			for (final JSC argument : arguments) {
+				size += resolve(argument.getType()).size();
+			}
+			return size;
+		}
+
+		/**
+		 * Resolve a type name the way the Java compiler does: primitive
+		 * types, arrays, fully qualified names, the class itself, single type
+		 * imports, classes of the same package and on demand imports
+		 * including {@code java.lang}, in this order.
+		 */
+		private Type resolve(final String name) throws Unsupported {
+			Type type = resolved.get(name);
+			if (type == null) {
+				type = resolveUncached(name.trim());
+				resolved.put(name, type);
+			}
+			return type;
+		}
+
+		private Type resolveUncached(final String name) throws Unsupported {
+			if (name.indexOf('<') != -1 || name.indexOf('@') != -1
+					|| name.endsWith("...")) {
+				throw UNSUPPORTED;
+			}
+			if (name.endsWith("[]")) {
+				final Type element = resolveUncached(name.substring(0,
+						name.length() - 2).trim());
+				return new Type("[" + element.descriptor, element.klass == null ? null
+						: java.lang.reflect.Array.newInstance(element.klass, 0)
+								.getClass(), null);
+			}
+			final String primitive = PRIMITIVES.get(name);
+			if (primitive != null) {
+				return new Type(primitive, null, null);
+			}
+			final String[] parts = name.split("\\.", -1);
+			for (final String part : parts) {
+				if (!isIdentifier(part)) {
+					throw UNSUPPORTED;
+				}
+			}
+			Type type = resolveSimple(parts[0]);
+			if (type == null) {
+				type = findQualified(parts);
+			} else {
+				for (int i = 1; i < parts.length && type != null; i++) {
+					type = type.klass == null ? null : load(type.klass
+							.getName() + "$" + parts[i]);
+				}
+			}
+			if (type == null) {
+				throw UNSUPPORTED;
+			}
+			return type;
+		}
+
+		private Type resolveSimple(final String name) throws Unsupported {
+			if (name.equals(klass.getIdentifier())) {
+				return new Type("L" + internalName + ";", null, klass);
+			}
+			for (final String imported : klass.getImports()) {
+				if (imported.endsWith("." + name)) {
+					final Type type = findQualified(imported.split("\\.", -1));
+					if (type == null) {
+						throw UNSUPPORTED;
+					}
+					return type;
+				}
+			}
+			final Type inPackage = find(qualify(packge, name));
+			if (inPackage != null) {
+				return inPackage;
+			}
+			Type found = null;
+			final List<String> onDemand = new ArrayList<>();
+			for (final String imported : klass.getImports()) {
+				if (imported.endsWith(".*")) {
+					onDemand.add(imported.substring(0, imported.length() - 2));
+				}
+			}
+			onDemand.add("java.lang");
+			for (final String imported : onDemand) {
+				final Type type = find(imported + "." + name);
+				if (type != null) {
+					if (found != null
+							&& !found.descriptor.equals(type.descriptor)) {
+						throw UNSUPPORTED;
+					}
+					found = type;
+				}
+			}
+			return found;
+		}
+
+		private static String qualify(final String packge, final String name) {
+			return packge == null ? name : packge + "." + name;
+		}
+
+		/**
+		 * Find a class by the fully qualified name that may contain nested
+		 * class names separated by dots.
+		 */
+		private Type findQualified(final String[] parts) {
+			final StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < parts.length; i++) {
+				if (i > 0) {
+					sb.append('.');
+				}
+				sb.append(parts[i]);
+				Type type = find(sb.toString());
+				for (int j = i + 1; j < parts.length && type != null; j++) {
+					type = type.klass == null ? null : load(type.klass
+							.getName() + "$" + parts[j]);
+				}
+				if (type != null) {
+					return type;
+				}
+			}
+			return null;
+		}
+
+		private Type find(final String name) {
+			final JSC jsc = batch.get(name);
+			if (jsc != null) {
+				return new Type("L" + name.replace('.', '/') + ";", null, jsc);
+			}
+			return load(name);
+		}
+
+		private Type load(final String name) {
+			try {
+				final Class<?> type = Class.forName(name, false, loader);
+				if (!Modifier.isPublic(type.getModifiers())) {
+					return null;
+				}
+				return new Type(descriptor(type), type, null);
+			} catch (ClassNotFoundException | LinkageError e) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * @return the descriptor if the backend can compute with values of the
+	 *         type
+	 */
+	private static String valueType(final String descriptor)
+			throws Unsupported {
+		if (!"I".equals(descriptor) && !"J".equals(descriptor)
+				&& !"D".equals(descriptor) && !"Z".equals(descriptor)) {
+			throw UNSUPPORTED;
+		}
+		return descriptor;
+	}
+
+	/**
+	 * @return the type of the binary numeric promotion of the operands
+	 */
+	private static String promote(final String left, final String right)
+			throws Unsupported {
+		if ("Z".equals(left) || "Z".equals(right)) {
+			throw UNSUPPORTED;
+		}
+		if ("D".equals(left) || "D".equals(right)) {
+			return "D";
+		}
+		return "J".equals(left) || "J".equals(right) ? "J" : "I";
+	}
+
+	private static int typeOffset(final String descriptor) {
+		switch (descriptor) {
+		case "J":
+			return ClassFileWriter.Code.LONG;
+		case "F":
+			return ClassFileWriter.Code.FLOAT;
+		case "D":
+			return ClassFileWriter.Code.DOUBLE;
+		case "I":
+		case "Z":
+		case "B":
+		case "C":
+		case "S":
+			return ClassFileWriter.Code.INT;
+		default:
+			return ClassFileWriter.Code.REFERENCE;
+		}
+	}
+
+	private static int size(final String descriptor) {
+		return "J".equals(descriptor) || "D".equals(descriptor) ? 2 : 1;
+	}
+
+	static String descriptor(final Class<?> type) {
+		if (type.isArray()) {
+			return type.getName().replace('.', '/');
+		}
+		if (type.isPrimitive()) {
+			if (type == void.class) {
+				return "V";
+			}
+			return PRIMITIVES.get(type.getName());
+		}
+		return "L" + type.getName().replace('.', '/') + ";";
+	}
+
+	static boolean isIdentifier(final String name) {
+		if (name == null || name.length() == 0 || KEYWORDS.contains(name)
+				|| !Character.isJavaIdentifierStart(name.charAt(0))) {
+			return false;
+		}
+		for (int i = 1; i < name.length(); i++) {
+			if (!Character.isJavaIdentifierPart(name.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses the Java literals the backend can store in a field and converts
+	 * them to the type of the field following the rules of the assignment
+	 * conversion of constants.
+	 */
+	private static final class Literals {
+		private static final Object NULL = new Object();
+		private static final Pattern INTEGER = Pattern
+				.compile("-?(0|[1-9][0-9]*)[lL]?");
+		private static final Pattern FLOATING = Pattern
+				.compile("-?([0-9]+\\.[0-9]*|\\.[0-9]+|[0-9]+)([eE][+-]?[0-9]+)?[fFdD]?");
+
+		/**
+		 * @return the value of the literal as {@link Integer}, {@link Long},
+		 *         {@link Float}, {@link Double}, {@link Boolean},
+		 *         {@link Character}, {@link String} or {@link #NULL}
+		 */
+		static Object parse(final String literal) throws Unsupported {
+			final String s = literal.trim();
+			if ("null".equals(s)) {
+				return NULL;
+			}
+			if ("true".equals(s) || "false".equals(s)) {
+				return Boolean.valueOf(s);
+			}
+			if (s.length() >= 2 && s.charAt(0) == '"'
+					&& s.charAt(s.length() - 1) == '"') {
+				return unescape(s.substring(1, s.length() - 1), '"');
+			}
+			if (s.length() >= 3 && s.charAt(0) == '\''
+					&& s.charAt(s.length() - 1) == '\'') {
+				final String c = unescape(s.substring(1, s.length() - 1), '\'');
+				if (c.length() != 1) {
+					throw UNSUPPORTED;
+				}
+				return c.charAt(0);
+			}
+			try {
+				if (INTEGER.matcher(s).matches()) {
+					if (Character.toLowerCase(s.charAt(s.length() - 1)) == 'l') {
+						return Long.parseLong(s.substring(0, s.length() - 1));
+					}
+					return Integer.parseInt(s);
+				}
+				if (FLOATING.matcher(s).matches()) {
+					final char suffix = Character.toLowerCase(s.charAt(s
+							.length() - 1));
+					final String number = suffix == 'f' || suffix == 'd' ? s
+							.substring(0, s.length() - 1) : s;
+					final boolean zero = !number.matches("[^eE]*[1-9].*");
+					if (suffix == 'f') {
+						final float f = Float.parseFloat(number);
+						if (Float.isInfinite(f) || f == 0 && !zero) {
+							throw UNSUPPORTED;
+						}
+						return f;
+					}
+					final double d = Double.parseDouble(number);
+					if (Double.isInfinite(d) || d == 0 && !zero) {
+						throw UNSUPPORTED;
+					}
+					return d;
+				}
+			} catch (NumberFormatException e) {
+				throw UNSUPPORTED;
+			}
+			throw UNSUPPORTED;
+		}
+
+		private static String unescape(final String s, final char quote)
+				throws Unsupported {
+			final StringBuilder sb = new StringBuilder(s.length());
+			for (int i = 0; i < s.length(); i++) {
+				final char c = s.charAt(i);
+				if (c == quote || c == '\n' || c == '\r') {
+					throw UNSUPPORTED;
+				}
+				if (c != '\\') {
+					sb.append(c);
+					continue;
+				}
+				if (++i == s.length()) {
+					throw UNSUPPORTED;
+				}
+				final char e = s.charAt(i);
+				switch (e) {
+				case 'b':
+					sb.append('\b');
+					break;
+				case 't':
+					sb.append('\t');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'f':
+					sb.append('\f');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case '"':
+				case '\'':
+				case '\\':
+					sb.append(e);
+					break;
+				default:
+					if (e < '0' || e > '7') {
+						// unicode escapes are processed by javac before
+						// parsing, they are not handled here
+						throw UNSUPPORTED;
+					}
+					int value = e - '0';
+					final int maxDigits = e <= '3' ? 3 : 2;
+					for (int n = 1; n < maxDigits && i + 1 < s.length()
+							&& s.charAt(i + 1) >= '0' && s.charAt(i + 1) <= '7'; n++) {
+						value = value * 8 + s.charAt(++i) - '0';
+					}
+					sb.append((char) value);
+				}
+			}
+			return sb.toString();
+		}
+
+		/**
+		 * Convert the value of a literal to the type of the field.
+		 *
+		 * @return the value as it is pushed on the operand stack: an
+		 *         {@link Integer}, {@link Long}, {@link Float}, {@link Double},
+		 *         {@link String} or {@code null}
+		 */
+		static Object convert(final Object value, final Type type)
+				throws Unsupported {
+			if (value == NULL) {
+				if (type.isReference()) {
+					return null;
+				}
+				throw UNSUPPORTED;
+			}
+			if (value instanceof String) {
+				if (type.klass != null
+						&& type.klass.isAssignableFrom(String.class)) {
+					return value;
+				}
+				throw UNSUPPORTED;
+			}
+			if (value instanceof Boolean) {
+				if ("Z".equals(type.descriptor)) {
+					return (Boolean) value ? 1 : 0;
+				}
+				throw UNSUPPORTED;
+			}
+			final Number number = value instanceof Character ? Integer
+					.valueOf((Character) value) : (Number) value;
+			final boolean integral = number instanceof Integer;
+			switch (type.descriptor) {
+			case "B":
+				return inRange(integral, number, Byte.MIN_VALUE, Byte.MAX_VALUE);
+			case "S":
+				return inRange(integral, number, Short.MIN_VALUE,
+						Short.MAX_VALUE);
+			case "C":
+				return inRange(integral, number, Character.MIN_VALUE,
+						Character.MAX_VALUE);
+			case "I":
+				if (integral) {
+					return number;
+				}
+				break;
+			case "J":
+				if (integral || number instanceof Long) {
+					return number.longValue();
+				}
+				break;
+			case "F":
+				if (!(number instanceof Double)) {
+					return number.floatValue();
+				}
+				break;
+			case "D":
+				return number.doubleValue();
+			default:
+			}
+			throw UNSUPPORTED;
+		}
+
+		private static Object inRange(final boolean integral,
+				final Number number, final int min, final int max)
+				throws Unsupported {
+			if (integral && number.intValue() >= min
+					&& number.intValue() <= max) {
+				return number.intValue();
+			}
+			throw UNSUPPORTED;
+		}
+	}
+}
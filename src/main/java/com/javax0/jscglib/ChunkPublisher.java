@@ -0,0 +1,264 @@
+package com.javax0.jscglib;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Publishes the rendered code as encoded chunks. Every subscriber gets its
+ * own rendering, which runs on a thread of the executor. The rendering thread
+ * waits while the subscriber has no outstanding demand, thus at most one
+ * chunk is kept in memory for a subscriber. The chunks are not larger than
+ * the chunk size, and the code written before the members of a class is
+ * published as soon as it is rendered, even if it does not fill a chunk.
+ */
+final class ChunkPublisher implements Flow.Publisher<ByteBuffer> {
+	/**
+	 * Large enough to hold any character in any charset.
+	 */
+	static final int MIN_CHUNK_SIZE = 16;
+
+	private final JSC code;
+	private final Charset charset;
+	private final int chunkSize;
+	private final Executor executor;
+
+	ChunkPublisher(final JSC code, final Charset charset, final int chunkSize,
+			final Executor executor) {
+		if (code == null || charset == null || executor == null) {
+			throw new IllegalArgumentException(
+					"The code, the charset and the executor can not be null");
+		}
+		if (chunkSize < MIN_CHUNK_SIZE) {
+			throw new IllegalArgumentException("The chunk size " + chunkSize
+					+ " is smaller than " + MIN_CHUNK_SIZE);
+		}
+		this.code = code;
+		this.charset = charset;
+		this.chunkSize = chunkSize;
+		this.executor = executor;
+	}
+
+	@Override
+	public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("The subscriber can not be null");
+		}
+		final Subscription subscription = new Subscription(subscriber);
+		subscriber.onSubscribe(subscription);
+	}
+
+	/**
+	 * Thrown by the sink to stop the rendering when the subscription was
+	 * cancelled.
+	 */
+	private static final class Cancelled extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		Cancelled() {
+			super(null, null);
+		}
+	}
+
+	private final class Subscription implements Flow.Subscription, Runnable {
+		private final Flow.Subscriber<? super ByteBuffer> subscriber;
+		private long demand = 0;
+		private boolean started = false;
+		private boolean cancelled = false;
+		private Throwable failure = null;
+
+		Subscription(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(final long n) {
+			final boolean start;
+			synchronized (this) {
+				if (cancelled) {
+					return;
+				}
+				if (n <= 0) {
+					failure = new IllegalArgumentException(
+							"The requested number of chunks " + n
+									+ " is not positive");
+				} else {
+					demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+				}
+				start = !started;
+				started = true;
+				notifyAll();
+			}
+			if (start) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					synchronized (this) {
+						cancelled = true;
+					}
+					subscriber.onError(e);
+				}
+			}
+		}
+
+		@Override
+		public synchronized void cancel() {
+			cancelled = true;
+			notifyAll();
+		}
+
+		/**
+		 * Wait until the subscriber wants the next chunk.
+		 */
+		private void await() throws IOException {
+			synchronized (this) {
+				try {
+					while (demand == 0 && !cancelled && failure == null) {
+						wait();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException(
+							"The publishing of the code was interrupted");
+				}
+				if (cancelled || failure != null) {
+					throw new Cancelled();
+				}
+				demand--;
+			}
+		}
+
+		private void publish(final ByteBuffer chunk) throws IOException {
+			await();
+			subscriber.onNext(chunk);
+		}
+
+		@Override
+		public void run() {
+			try {
+				final Sink sink = new Sink(this);
+				JSCPrinter.pprintFlushing(code, sink);
+				sink.close();
+			} catch (Cancelled e) {
+				// the failure, if any, is signalled below
+			} catch (Throwable t) {
+				synchronized (this) {
+					if (failure == null) {
+						failure = t;
+					}
+				}
+			}
+			final Throwable error;
+			synchronized (this) {
+				if (cancelled) {
+					return;
+				}
+				cancelled = true;
+				error = failure;
+			}
+			if (error == null) {
+				subscriber.onComplete();
+			} else {
+				subscriber.onError(error);
+			}
+		}
+	}
+
+	/**
+	 * Collects the characters, encodes them and publishes the bytes in
+	 * chunks.
+	 */
+	private final class Sink implements Appendable, Flushable {
+		private final Subscription subscription;
+		private final CharsetEncoder encoder = charset.newEncoder();
+		private final CharBuffer chars = CharBuffer.allocate(chunkSize);
+		private ByteBuffer bytes = ByteBuffer.allocate(chunkSize);
+
+		Sink(final Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public Appendable append(final CharSequence csq) throws IOException {
+			return append(csq, 0, csq.length());
+		}
+
+		@Override
+		public Appendable append(final CharSequence csq, final int start,
+				final int end) throws IOException {
+			int from = start;
+			while (from < end) {
+				if (!chars.hasRemaining()) {
+					encode(false);
+				}
+				final int n = Math.min(chars.remaining(), end - from);
+				chars.append(csq, from, from + n);
+				from += n;
+			}
+			return this;
+		}
+
+		@Override
+		public Appendable append(final char c) throws IOException {
+			if (!chars.hasRemaining()) {
+				encode(false);
+			}
+			chars.put(c);
+			return this;
+		}
+
+		/**
+		 * Encode the collected characters, publishing the full chunks. A
+		 * character split between two appends stays in the character buffer.
+		 */
+		private void encode(final boolean endOfInput) throws IOException {
+			chars.flip();
+			while (true) {
+				final CoderResult result = encoder.encode(chars, bytes,
+						endOfInput);
+				if (result.isOverflow()) {
+					publish();
+				} else if (result.isUnderflow()) {
+					break;
+				} else {
+					result.throwException();
+				}
+			}
+			chars.compact();
+		}
+
+		private void publish() throws IOException {
+			if (bytes.position() > 0) {
+				bytes.flip();
+				final ByteBuffer chunk = bytes;
+				bytes = ByteBuffer.allocate(chunkSize);
+				subscription.publish(chunk);
+			}
+		}
+
+		/**
+		 * Publish what was rendered so far, even if it does not fill a chunk.
+		 */
+		@Override
+		public void flush() throws IOException {
+			encode(false);
+			publish();
+		}
+
+		void close() throws IOException {
+			encode(true);
+			while (encoder.flush(bytes).isOverflow()) {
+				publish();
+			}
+			publish();
+		}
+	}
+}
@@ -0,0 +1,647 @@
+package com.javax0.jscglib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles the bytes of a class file. This is a minimal writer that knows
+ * only the structures the direct bytecode backend needs: the constant pool,
+ * fields with constant values, methods with code and declared exceptions,
+ * and the source file attribute.
+ * <p>
+ * The class files have version 50 (Java 6), thus the methods do not need
+ * stack map frames, the JVM verifies them by type inference.
+ */
+final class ClassFileWriter {
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int MAJOR_VERSION = 50;
+
+	private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+	private final DataOutputStream pool = new DataOutputStream(poolBytes);
+	private final Map<String, Integer> poolIndex = new HashMap<>();
+	private int poolSize = 1;
+
+	private final int access;
+	private final int thisClass;
+	private final int superClass;
+	private final int[] interfaces;
+	private final List<byte[]> fields = new ArrayList<>();
+	private final List<byte[]> methods = new ArrayList<>();
+	private int sourceFile = 0;
+
+	/**
+	 * @param access
+	 *            the access flags of the class
+	 * @param name
+	 *            the internal name of the class, like
+	 *            {@code com/javax0/Sample}
+	 * @param superName
+	 *            the internal name of the super class
+	 * @param interfaceNames
+	 *            the internal names of the implemented interfaces
+	 */
+	ClassFileWriter(final int access, final String name,
+			final String superName, final List<String> interfaceNames) {
+		this.access = access;
+		this.thisClass = classRef(name);
+		this.superClass = classRef(superName);
+		this.interfaces = new int[interfaceNames.size()];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaces[i] = classRef(interfaceNames.get(i));
+		}
+	}
+
+	void sourceFile(final String fileName) {
+		sourceFile = utf8(fileName);
+	}
+
+	private int entry(final String key, final int size, final Entry entry) {
+		final Integer index = poolIndex.get(key);
+		if (index != null) {
+			return index;
+		}
+		try {
+			entry.write();
+		} catch (IOException e) {
+			throw new IllegalStateException(
+					"ByteArrayOutputStream should not throw IOException", e);
+		}
+		final int newIndex = poolSize;
+		poolSize += size;
+		if (poolSize > 0xFFFF) {
+			throw new IllegalStateException(
+					"The constant pool of the class is too large");
+		}
+		poolIndex.put(key, newIndex);
+		return newIndex;
+	}
+
+	private interface Entry {
+		void write() throws IOException;
+	}
+
+	int utf8(final String s) {
+		return entry("U" + s, 1, new Entry() {
+			@Override
+			public void write() throws IOException {
+				pool.writeByte(1);
+				pool.writeUTF(s);
+			}
+		});
+	}
+
+	int classRef(final String internalName) {
+		final int name = utf8(internalName);
+		return entry("C" + internalName, 1, new Entry() {
+			@Override
+			public void write() throws IOException {
+				pool.writeByte(7);
+				pool.writeShort(name);
+			}
+		});
+	}
+
+	int string(final String s) {
+		final int value = utf8(s);
+		return entry("S" + s, 1, new Entry() {
+			@Override
+			public void write() throws IOException {
+				pool.writeByte(8);
+				pool.writeShort(value);
+			}
+		});
+	}
+
+	int integer(final int value) {
+		return entry("I" + value, 1, new Entry() {
+			@Override
+			public void write() throws IOException {
+				pool.writeByte(3);
+				pool.writeInt(value);
+			}
+		});
+	}
+
+	int floating(final float value) {
+		return entry("F" + Float.floatToRawIntBits(value), 1, new Entry() {
+			@Override
+			public void write() throws IOException {
+				pool.writeByte(4);
+				pool.writeFloat(value);
+			}
+		});
+	}
+
+	int longInteger(final long value) {
+		return entry("J" + value, 2, new Entry() {
+			@Override
+			public void write() throws IOException {
+				pool.writeByte(5);
+				pool.writeLong(value);
+			}
+		});
+	}
+
+	int doubleFloating(final double value) {
+		return entry("D" + Double.doubleToRawLongBits(value), 2, new Entry() {
+			@Override
+			public void write() throws IOException {
+				pool.writeByte(6);
+				pool.writeDouble(value);
+			}
+		});
+	}
+
+	/**
+	 * @param value
+	 *            an {@link Integer}, {@link Long}, {@link Float},
+	 *            {@link Double} or {@link String}
+	 * @return the index of the constant in the pool
+	 */
+	int constant(final Object value) {
+		if (value instanceof Integer) {
+			return integer((Integer) value);
+		}
+		if (value instanceof Long) {
+			return longInteger((Long) value);
+		}
+		if (value instanceof Float) {
+			return floating((Float) value);
+		}
+		if (value instanceof Double) {
+			return doubleFloating((Double) value);
+		}
+		if (value instanceof String) {
+			return string((String) value);
+		}
+		throw new IllegalArgumentException("'" + value
+				+ "' can not be a constant in the constant pool");
+	}
+
+	private int nameAndType(final String name, final String descriptor) {
+		final int nameIndex = utf8(name);
+		final int descriptorIndex = utf8(descriptor);
+		return entry("N" + name + ":" + descriptor, 1, new Entry() {
+			@Override
+			public void write() throws IOException {
+				pool.writeByte(12);
+				pool.writeShort(nameIndex);
+				pool.writeShort(descriptorIndex);
+			}
+		});
+	}
+
+	private int memberRef(final int tag, final String owner,
+			final String name, final String descriptor) {
+		final int classIndex = classRef(owner);
+		final int nameAndTypeIndex = nameAndType(name, descriptor);
+		return entry(tag + owner + "." + name + ":" + descriptor, 1,
+				new Entry() {
+					@Override
+					public void write() throws IOException {
+						pool.writeByte(tag);
+						pool.writeShort(classIndex);
+						pool.writeShort(nameAndTypeIndex);
+					}
+				});
+	}
+
+	int fieldRef(final String owner, final String name, final String descriptor) {
+		return memberRef(9, owner, name, descriptor);
+	}
+
+	int methodRef(final String owner, final String name,
+			final String descriptor) {
+		return memberRef(10, owner, name, descriptor);
+	}
+
+	/**
+	 * Add a field to the class.
+	 *
+	 * @param access
+	 * @param name
+	 * @param descriptor
+	 * @param constantValue
+	 *            the value of the {@code ConstantValue} attribute or
+	 *            {@code null} if the field does not have one
+	 */
+	void field(final int access, final String name, final String descriptor,
+			final Object constantValue) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			if (constantValue == null) {
+				out.writeShort(0);
+			} else {
+				out.writeShort(1);
+				out.writeShort(utf8("ConstantValue"));
+				out.writeInt(2);
+				out.writeShort(constant(constantValue));
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(
+					"ByteArrayOutputStream should not throw IOException", e);
+		}
+		fields.add(bytes.toByteArray());
+	}
+
+	/**
+	 * Add a method to the class.
+	 *
+	 * @param access
+	 * @param name
+	 * @param descriptor
+	 * @param exceptions
+	 *            the internal names of the declared exceptions
+	 * @param code
+	 *            the code of the method or {@code null} for abstract and
+	 *            native methods
+	 */
+	void method(final int access, final String name, final String descriptor,
+			final List<String> exceptions, final Code code) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			out.writeShort((code == null ? 0 : 1)
+					+ (exceptions.isEmpty() ? 0 : 1));
+			if (code != null) {
+				final byte[] instructions = code.toByteArray();
+				out.writeShort(utf8("Code"));
+				out.writeInt(12 + instructions.length);
+				out.writeShort(code.getMaxStack());
+				out.writeShort(code.getMaxLocals());
+				out.writeInt(instructions.length);
+				out.write(instructions);
+				out.writeShort(0);
+				out.writeShort(0);
+			}
+			if (!exceptions.isEmpty()) {
+				out.writeShort(utf8("Exceptions"));
+				out.writeInt(2 + 2 * exceptions.size());
+				out.writeShort(exceptions.size());
+				for (final String exception : exceptions) {
+					out.writeShort(classRef(exception));
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(
+					"ByteArrayOutputStream should not throw IOException", e);
+		}
+		methods.add(bytes.toByteArray());
+	}
+
+	/**
+	 * @return the bytes of the class file
+	 */
+	byte[] toByteArray() {
+		final int sourceFileAttribute = sourceFile == 0 ? 0 : utf8("SourceFile");
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(MAGIC);
+			out.writeShort(0);
+			out.writeShort(MAJOR_VERSION);
+			out.writeShort(poolSize);
+			pool.flush();
+			poolBytes.writeTo(out);
+			out.writeShort(access);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(interfaces.length);
+			for (final int intrface : interfaces) {
+				out.writeShort(intrface);
+			}
+			writeAll(out, fields);
+			writeAll(out, methods);
+			if (sourceFile == 0) {
+				out.writeShort(0);
+			} else {
+				out.writeShort(1);
+				out.writeShort(sourceFileAttribute);
+				out.writeInt(2);
+				out.writeShort(sourceFile);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(
+					"ByteArrayOutputStream should not throw IOException", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeAll(final DataOutputStream out,
+			final List<byte[]> items) throws IOException {
+		out.writeShort(items.size());
+		for (final byte[] item : items) {
+			out.write(item);
+		}
+	}
+
+	/**
+	 * The instructions of a method. The maximal depth of the operand stack is
+	 * calculated from the stack effect the caller passes with each
+	 * instruction.
+	 */
+	static final class Code {
+		static final int ICONST_0 = 0x03;
+		static final int LCONST_0 = 0x09;
+		static final int FCONST_0 = 0x0b;
+		static final int DCONST_0 = 0x0e;
+		static final int ACONST_NULL = 0x01;
+		static final int BIPUSH = 0x10;
+		static final int SIPUSH = 0x11;
+		static final int LDC = 0x12;
+		static final int LDC_W = 0x13;
+		static final int LDC2_W = 0x14;
+		static final int ALOAD_0 = 0x2a;
+		static final int RETURN = 0xb1;
+		static final int GETSTATIC = 0xb2;
+		static final int PUTSTATIC = 0xb3;
+		static final int GETFIELD = 0xb4;
+		static final int PUTFIELD = 0xb5;
+		static final int INVOKESPECIAL = 0xb7;
+		static final int ILOAD = 0x15;
+		static final int ISTORE = 0x36;
+		static final int IADD = 0x60;
+		static final int ISUB = 0x64;
+		static final int IMUL = 0x68;
+		static final int IDIV = 0x6c;
+		static final int IREM = 0x70;
+		static final int INEG = 0x74;
+		static final int IXOR = 0x82;
+		static final int I2L = 0x85;
+		static final int I2D = 0x87;
+		static final int L2D = 0x8a;
+		static final int LCMP = 0x94;
+		static final int DCMPL = 0x97;
+		static final int DCMPG = 0x98;
+		static final int IFEQ = 0x99;
+		static final int IFNE = 0x9a;
+		static final int IFLT = 0x9b;
+		static final int IFGE = 0x9c;
+		static final int IFGT = 0x9d;
+		static final int IFLE = 0x9e;
+		static final int IF_ICMPEQ = 0x9f;
+		static final int IF_ICMPNE = 0xa0;
+		static final int IF_ICMPLT = 0xa1;
+		static final int IF_ICMPGE = 0xa2;
+		static final int IF_ICMPGT = 0xa3;
+		static final int IF_ICMPLE = 0xa4;
+		static final int GOTO = 0xa7;
+		static final int IRETURN = 0xac;
+		static final int WIDE = 0xc4;
+		/**
+		 * The offsets of the typed variants of the load, store, return and
+		 * arithmetic instructions from the {@code int} variant, for example
+		 * {@code ILOAD + LONG} is {@code LLOAD}. The arithmetic instructions
+		 * have no reference variant.
+		 */
+		static final int INT = 0;
+		static final int LONG = 1;
+		static final int FLOAT = 2;
+		static final int DOUBLE = 3;
+		static final int REFERENCE = 4;
+
+		/**
+		 * A position in the code that branches jump to. A label can be
+		 * referenced before it is placed, the offsets are patched when the
+		 * code is finished.
+		 */
+		static final class Label {
+			private int position = -1;
+			/**
+			 * The depth of the operand stack when the code jumps to the
+			 * label, {@code -1} until the first jump.
+			 */
+			private int stack = -1;
+		}
+
+		/**
+		 * A branch offset to patch: the position of the branch instruction
+		 * and the label it jumps to.
+		 */
+		private static final class Jump {
+			final int position;
+			final Label label;
+
+			Jump(final int position, final Label label) {
+				this.position = position;
+				this.label = label;
+			}
+		}
+
+		private final ClassFileWriter classFile;
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private int stack = 0;
+		private int maxStack = 0;
+		private int maxLocals;
+		private final List<Jump> jumps = new ArrayList<>();
+
+		/**
+		 * @param classFile
+		 *            the class file the constants are added to
+		 * @param maxLocals
+		 *            the number of the local variable slots the parameters
+		 *            and {@code this} occupy
+		 */
+		Code(final ClassFileWriter classFile, final int maxLocals) {
+			this.classFile = classFile;
+			this.maxLocals = maxLocals;
+		}
+
+		/**
+		 * Reserve local variable slots.
+		 *
+		 * @param size
+		 *            the number of slots, two for {@code long} and
+		 *            {@code double}
+		 * @return the index of the first reserved slot
+		 */
+		int local(final int size) {
+			final int index = maxLocals;
+			maxLocals += size;
+			return index;
+		}
+
+		private void stack(final int delta) {
+			stack += delta;
+			if (stack > maxStack) {
+				maxStack = stack;
+			}
+		}
+
+		Code op(final int opcode, final int stackDelta) {
+			bytes.write(opcode);
+			stack(stackDelta);
+			return this;
+		}
+
+		Code op1(final int opcode, final int operand, final int stackDelta) {
+			bytes.write(opcode);
+			bytes.write(operand);
+			stack(stackDelta);
+			return this;
+		}
+
+		Code op2(final int opcode, final int operand, final int stackDelta) {
+			bytes.write(opcode);
+			bytes.write(operand >> 8);
+			bytes.write(operand);
+			stack(stackDelta);
+			return this;
+		}
+
+		/**
+		 * Push a constant value on the operand stack using the shortest
+		 * instruction.
+		 *
+		 * @param value
+		 *            an {@link Integer}, {@link Long}, {@link Float},
+		 *            {@link Double}, {@link String} or {@code null}
+		 * @return
+		 */
+		Code push(final Object value) {
+			if (value == null) {
+				return op(ACONST_NULL, 1);
+			}
+			if (value instanceof Integer) {
+				final int i = (Integer) value;
+				if (i >= -1 && i <= 5) {
+					return op(ICONST_0 + i, 1);
+				}
+				if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) {
+					return op1(BIPUSH, i & 0xFF, 1);
+				}
+				if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) {
+					return op2(SIPUSH, i & 0xFFFF, 1);
+				}
+			}
+			if (value instanceof Long) {
+				final long l = (Long) value;
+				if (l == 0 || l == 1) {
+					return op(LCONST_0 + (int) l, 2);
+				}
+				return op2(LDC2_W, classFile.constant(value), 2);
+			}
+			if (value instanceof Float) {
+				final float f = (Float) value;
+				if (f == 0 && Float.floatToRawIntBits(f) == 0 || f == 1
+						|| f == 2) {
+					return op(FCONST_0 + (int) f, 1);
+				}
+			}
+			if (value instanceof Double) {
+				final double d = (Double) value;
+				if (d == 0 && Double.doubleToRawLongBits(d) == 0 || d == 1) {
+					return op(DCONST_0 + (int) d, 2);
+				}
+				return op2(LDC2_W, classFile.constant(value), 2);
+			}
+			final int index = classFile.constant(value);
+			if (index <= 0xFF) {
+				return op1(LDC, index, 1);
+			}
+			return op2(LDC_W, index, 1);
+		}
+
+		/**
+		 * Load or store a local variable.
+		 *
+		 * @param opcode
+		 *            {@link #ILOAD} or {@link #ISTORE}
+		 * @param type
+		 *            one of {@link #INT}, {@link #LONG}, {@link #FLOAT},
+		 *            {@link #DOUBLE} or {@link #REFERENCE}
+		 * @param index
+		 *            the slot of the local variable
+		 */
+		Code local(final int opcode, final int type, final int index) {
+			final int size = type == LONG || type == DOUBLE ? 2 : 1;
+			final int delta = opcode == ILOAD ? size : -size;
+			if (index <= 3) {
+				final int first = opcode == ILOAD ? 0x1a : 0x3b;
+				return op(first + type * 4 + index, delta);
+			}
+			if (index <= 0xFF) {
+				return op1(opcode + type, index, delta);
+			}
+			bytes.write(WIDE);
+			return op2(opcode + type, index, delta);
+		}
+
+		/**
+		 * Jump to the label.
+		 *
+		 * @param opcode
+		 *            {@link #GOTO} or one of the conditional branches
+		 * @param stackDelta
+		 *            the number of the operands the branch pops, negative
+		 */
+		Code jump(final int opcode, final Label label, final int stackDelta) {
+			jumps.add(new Jump(bytes.size(), label));
+			op2(opcode, 0, stackDelta);
+			if (label.stack == -1) {
+				label.stack = stack;
+			}
+			return this;
+		}
+
+		/**
+		 * Place the label at the current position. If the code jumps to the
+		 * label, the stack depth is the one at the jump, the instructions
+		 * between an unconditional jump and the label are not executed on
+		 * this path.
+		 */
+		Code mark(final Label label) {
+			label.position = bytes.size();
+			if (label.stack != -1) {
+				stack = label.stack;
+			} else {
+				label.stack = stack;
+			}
+			return this;
+		}
+
+		/**
+		 * @return the size of the code in bytes
+		 */
+		int size() {
+			return bytes.size();
+		}
+
+		int getMaxStack() {
+			return maxStack;
+		}
+
+		int getMaxLocals() {
+			return maxLocals;
+		}
+
+		byte[] toByteArray() {
+			final byte[] code = bytes.toByteArray();
+			for (final Jump jump : jumps) {
+				if (jump.label.position == -1) {
+					throw new IllegalStateException("The label is not placed");
+				}
+				final int offset = jump.label.position - jump.position;
+				if (offset != (short) offset) {
+					throw new IllegalStateException(
+							"The jump is too long for a branch instruction");
+				}
+				code[jump.position + 1] = (byte) (offset >> 8);
+				code[jump.position + 2] = (byte) offset;
+			}
+			return code;
+		}
+	}
+}
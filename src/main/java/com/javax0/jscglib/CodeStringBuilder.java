@@ -1,24 +1,157 @@
 package com.javax0.jscglib;
 
+import java.io.Flushable;
+import java.io.IOException;
 import java.util.List;
 
+/**
+ * Writes the source code into a single sink. The whole JSC tree is rendered
+ * into one instance of this class, therefore the indentation depth is kept
+ * here and the text of the nested structures is written directly to the
+ * sink without creating intermediate strings.
+ * <p>
+ * Indentation is emitted lazily: when something is appended at the start of
+ * a line the actual indentation is written first.
+ */
 public final class CodeStringBuilder {
 
 	CodeStringBuilder() {
+		this(new StringBuilder());
+	}
+
+	/**
+	 * Create a code builder that writes the code into the sink.
+	 *
+	 * @param sink
+	 *            where the characters are written to. Any {@link IOException}
+	 *            thrown by the sink is wrapped into a {@link SinkException}.
+	 */
+	CodeStringBuilder(Appendable sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * Create a code builder that writes a fragment of the code that is later
+	 * spliced into the output of another code builder using
+	 * {@link #appendFragment(String)}.
+	 *
+	 * @param tabs
+	 *            the indentation depth of the code builder the fragment is
+	 *            going to be spliced into
+	 */
+	CodeStringBuilder(int tabs) {
+		this(new StringBuilder());
+		this.tabs = tabs;
 	}
 
 	private static final int tabSize = 2;
+	private static final String SPACES = "                                ";
 
-	private final StringBuilder sb = new StringBuilder();
+	private final Appendable sink;
 	private int tabs = 0;
+	private boolean lineStart = true;
+	private RenderStatistics statistics = null;
+	private boolean flushing = false;
+
+	/**
+	 * Count the characters written into this builder. {@code null} switches
+	 * counting off, which is the default.
+	 *
+	 * @param statistics
+	 */
+	void setStatistics(RenderStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	RenderStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Let {@link #flush()} flush the sink. Off by default, the sinks of the
+	 * printing methods are flushed only at the end.
+	 *
+	 * @param flushing
+	 */
+	void setFlushing(boolean flushing) {
+		this.flushing = flushing;
+	}
+
+	/**
+	 * Flush the sink if flushing is switched on and the sink is
+	 * {@link Flushable}. The printer calls this method when the code written
+	 * so far can already be used by the consumer, like after the header of a
+	 * class.
+	 */
+	CodeStringBuilder flush() {
+		if (flushing && sink instanceof Flushable) {
+			try {
+				((Flushable) sink).flush();
+			} catch (IOException e) {
+				throw new SinkException(e);
+			}
+		}
+		return this;
+	}
+
+	private void write(CharSequence s) {
+		if (statistics != null) {
+			statistics.characters(s.length());
+		}
+		try {
+			sink.append(s);
+		} catch (IOException e) {
+			throw new SinkException(e);
+		}
+	}
+
+	private void indent() {
+		if (statistics != null) {
+			statistics.characters(tabs);
+		}
+		try {
+			int n = tabs;
+			while (n > SPACES.length()) {
+				sink.append(SPACES);
+				n -= SPACES.length();
+			}
+			sink.append(SPACES, 0, n);
+		} catch (IOException e) {
+			throw new SinkException(e);
+		}
+	}
 
 	CodeStringBuilder append(String s) {
-		if (s != null) {
-			sb.append(s);
+		if (s != null && s.length() > 0) {
+			if (lineStart) {
+				indent();
+				lineStart = false;
+			}
+			write(s);
+		}
+		return this;
+	}
+
+	/**
+	 * Append a fragment created by a code builder that was created with the
+	 * same indentation depth as this one has now. The fragment already
+	 * contains the indentation, it is copied as it is.
+	 *
+	 * @param fragment
+	 * @return
+	 */
+	CodeStringBuilder appendFragment(String fragment) {
+		if (fragment.length() > 0) {
+			write(fragment);
+			lineStart = fragment.charAt(fragment.length() - 1) == '\n';
 		}
 		return this;
 	}
 
+	int getTabs() {
+		return tabs;
+	}
+
 	CodeStringBuilder append(String prefix, String s, String postfix) {
 		if (s != null) {
 			append(prefix);
@@ -30,8 +163,9 @@ public final class CodeStringBuilder {
 
 	private String sep = "";
 
-	private void startList() {
+	CodeStringBuilder startList() {
 		sep = "";
+		return this;
 	}
 
 	CodeStringBuilder space() {
@@ -39,42 +173,39 @@ public final class CodeStringBuilder {
 		return this;
 	}
 
-	private CodeStringBuilder space(int n) {
-		for (int i = 0; i < n; i++) {
-			space();
-		}
-		return this;
-	}
-
 	CodeStringBuilder begin() {
-		append("{\n");
+		append("{").nl();
 		tabs += tabSize;
-		space(tabs);
 		return this;
 	}
 
 	CodeStringBuilder end() {
-		append("\n");
+		if (!lineStart) {
+			nl();
+		}
 		tabs -= tabSize;
-		space(tabs);
-		append("}\n");
-		space(tabs);
+		append("}").nl();
 		return this;
 	}
 
-	private void separator() {
+	/**
+	 * Append a comma separator unless this is the first element of a list
+	 * started with {@link #startList()}.
+	 */
+	CodeStringBuilder separator() {
 		append(sep);
 		sep = ",";
+		return this;
 	}
 
 	CodeStringBuilder sc() {
-		space(tabs);
-		return append(";\n");
+		return append(";").nl();
 	}
 
 	CodeStringBuilder nl() {
-		space(tabs);
-		return append("\n");
+		write("\n");
+		lineStart = true;
+		return this;
 	}
 
 	/**
@@ -85,7 +216,7 @@ public final class CodeStringBuilder {
 	 * <p>
 	 * Note that just like in case of {@link #appendList(List)} if the argument
 	 * {@code objects} is null then nothing is appended.
-	 * 
+	 *
 	 * @param prefix
 	 * @param objects
 	 * @param postfix
@@ -114,7 +245,7 @@ public final class CodeStringBuilder {
 	 * a single concatenated string, the elements are separated by comma and a
 	 * space. For example the list <tt>[ "a", "b", "c" ]</tt> will become
 	 * <tt>"a, b, c"</tt>.
-	 * 
+	 *
 	 * @param objects
 	 *            if the argument is null, then nothing is appended
 	 * @return
@@ -135,7 +266,23 @@ public final class CodeStringBuilder {
 	}
 
 	public String toString() {
-		return sb.toString();
+		return sink.toString();
 	}
 
+	/**
+	 * Wraps the {@link IOException} thrown by the sink so that it can travel
+	 * through the fluent calls. The public printing methods unwrap it.
+	 */
+	static final class SinkException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		SinkException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
 }
@@ -0,0 +1,115 @@
+package com.javax0.jscglib;
+
+/**
+ * A 128 bit structural hash value of a {@link JSC} tree. Two trees that have
+ * the same structure and content have the same fingerprint. The value does not
+ * depend on the JVM instance, therefore it can be used as a key for data
+ * stored between runs.
+ */
+public final class Fingerprint {
+	private final long high;
+	private final long low;
+
+	Fingerprint(final long high, final long low) {
+		this.high = high;
+		this.low = low;
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof Fingerprint)) {
+			return false;
+		}
+		final Fingerprint that = (Fingerprint) other;
+		return high == that.high && low == that.low;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (low ^ (low >>> 32));
+	}
+
+	/**
+	 * @return the 32 character long hexadecimal representation of the value
+	 */
+	@Override
+	public String toString() {
+		return hex(high) + hex(low);
+	}
+
+	private static String hex(final long value) {
+		final String s = Long.toHexString(value);
+		return "0000000000000000".substring(s.length()) + s;
+	}
+
+	/**
+	 * Collects the data into two independent 64 bit lanes. One lane is
+	 * FNV-1a, the other is a multiply-rotate hash. Both lanes are finalized
+	 * using the MurmurHash3 mixer.
+	 */
+	static final class Hasher {
+		private static final long FNV_PRIME = 0x100000001b3L;
+		private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+		private static final long C2 = 0xC2B2AE3D27D4EB4FL;
+
+		private long h1 = 0xcbf29ce484222325L;
+		private long h2 = 0x27D4EB2F165667C5L;
+
+		private void mix(final long value) {
+			h1 = (h1 ^ value) * FNV_PRIME;
+			h2 = Long.rotateLeft(h2 ^ (value * C2), 31) * GOLDEN;
+		}
+
+		Hasher put(final int value) {
+			mix(value);
+			return this;
+		}
+
+		Hasher put(final boolean value) {
+			mix(value ? 1 : 0);
+			return this;
+		}
+
+		/**
+		 * Put a string into the hash. The length is also hashed, so that a
+		 * sequence of strings can not collide with a different split of the
+		 * same characters. A {@code null} value differs from an empty string.
+		 *
+		 * @param s
+		 * @return
+		 */
+		Hasher put(final String s) {
+			if (s == null) {
+				mix(-1);
+			} else {
+				mix(s.length());
+				for (int i = 0; i < s.length(); i++) {
+					mix(s.charAt(i));
+				}
+			}
+			return this;
+		}
+
+		Hasher put(final Fingerprint fingerprint) {
+			mix(fingerprint.high);
+			mix(fingerprint.low);
+			return this;
+		}
+
+		Fingerprint fingerprint() {
+			return new Fingerprint(fmix(h1), fmix(h2 ^ h1));
+		}
+
+		private static long fmix(long k) {
+			k ^= k >>> 33;
+			k *= 0xff51afd7ed558ccdL;
+			k ^= k >>> 33;
+			k *= 0xc4ceb9fe1a85ec53L;
+			k ^= k >>> 33;
+			return k;
+		}
+	}
+}
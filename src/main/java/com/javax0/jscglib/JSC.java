@@ -1,8 +1,13 @@
 package com.javax0.jscglib;
 
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Basic builder to create a class source code. An instance of a JSC class
@@ -15,10 +20,29 @@ import java.util.List;
  * @author Peter Verhas
  * 
  */
-public class JSC {
+public class JSC implements Serializable {
+	private static final long serialVersionUID = 1L;
 	// TODO static and dynamic block building is missing
 	private JSCType jscType;
 
+	private final boolean frozen;
+
+	public JSC() {
+		frozen = false;
+	}
+
+	/**
+	 * Create an immutable node. Used by the subclasses whose instances are
+	 * values that never change, like {@link JSCStatement}. These nodes behave
+	 * like the nodes of a frozen snapshot.
+	 *
+	 * @param jscType
+	 */
+	JSC(final JSCType jscType) {
+		frozen = true;
+		this.jscType = jscType;
+	}
+
 	public JSCType getJscType() {
 		return jscType;
 	}
@@ -30,6 +54,7 @@ public class JSC {
 	 * @param jscType
 	 */
 	public void setJscType(final JSCType jscType) {
+		invalidate();
 		this.jscType = jscType;
 	}
 
@@ -42,6 +67,7 @@ public class JSC {
 	 * @return
 	 */
 	public JSC inPackage(final String packge) {
+		invalidate();
 		this.packge = packge;
 		return this;
 	}
@@ -53,6 +79,7 @@ public class JSC {
 	 * @return
 	 */
 	public JSC inPackage(final Package packge) {
+		invalidate();
 		this.packge = packge.getName();
 		return this;
 	}
@@ -80,6 +107,7 @@ public class JSC {
 	 * @return
 	 */
 	public JSC modifier(final int... modifiers) {
+		invalidate();
 		for (final int modifier : modifiers) {
 			this.modifiers |= modifier;
 		}
@@ -95,7 +123,8 @@ public class JSC {
 	 * @return
 	 */
 	public JSC parent(final Class<?> parent) {
-		parentClass = parent.getCanonicalName();
+		invalidate();
+		parentClass = TypeNames.of(parent);
 		return this;
 	}
 
@@ -109,7 +138,8 @@ public class JSC {
 	 * @return
 	 */
 	public JSC parent(final Package packge, final String className) {
-		parentClass = packge.toString() + "." + className;
+		invalidate();
+		parentClass = packge.getName() + "." + className;
 		return this;
 	}
 
@@ -123,6 +153,7 @@ public class JSC {
 	 * @return
 	 */
 	public JSC parent(final String packge, final String className) {
+		invalidate();
 		parentClass = packge + "." + className;
 		return this;
 	}
@@ -136,11 +167,12 @@ public class JSC {
 	 * @return
 	 */
 	public JSC parent(final String className) {
+		invalidate();
 		parentClass = className;
 		return this;
 	}
 
-	private List<String> intrfaces = new LinkedList<>();
+	private List<String> intrfaces = null;
 
 	/**
 	 * Defines the interfaces that the class implements.
@@ -151,7 +183,8 @@ public class JSC {
 	 * @return
 	 */
 	public JSC interfaces(final String... intrfaces) {
-		this.intrfaces = Arrays.asList(intrfaces);
+		invalidate();
+		this.intrfaces = addAll(null, intrfaces);
 		return this;
 	}
 
@@ -162,13 +195,14 @@ public class JSC {
 	 * @return
 	 */
 	public JSC interfaces(final Class<?>... intrfaces) {
+		invalidate();
 		for (final Class<?> intrface : intrfaces) {
-			this.intrfaces.add(intrface.getCanonicalName());
+			this.intrfaces = add(this.intrfaces, TypeNames.of(intrface));
 		}
 		return this;
 	}
 
-	private final List<JSC> declaredBlocks = new LinkedList<>();
+	private List<JSC> declaredBlocks = null;
 
 	/**
 	 * Add some block to the class, like a method, a constructor or just
@@ -178,10 +212,67 @@ public class JSC {
 	 * @return
 	 */
 	public JSC add(final JSC jsc) {
-		declaredBlocks.add(jsc);
+		invalidate();
+		adopt(jsc);
+		declaredBlocks = add(declaredBlocks, jsc);
+		return this;
+	}
+
+	private boolean lazyMembers = false;
+
+	/**
+	 * Add members to the class that are created only when the class is
+	 * rendered. The printer pulls the members from the iterator one after the
+	 * other at the position of this call among the other members, writes them
+	 * and drops them. A class with hundreds of thousands of generated members
+	 * can be written to a {@link java.io.Writer} this way without holding all
+	 * the members in the memory.
+	 * <p>
+	 * The members can be pulled only once, thus the class can be rendered or
+	 * compiled only once. The class can not be frozen, it has no
+	 * {@link #fingerprint()} and the compiler does not cache it.
+	 *
+	 * @param members
+	 * @return
+	 */
+	public JSC add(final Iterator<? extends JSC> members) {
+		invalidate();
+		markLazyMembers();
+		declaredBlocks = add(declaredBlocks, new LazyMembers(members));
 		return this;
 	}
 
+	/**
+	 * Add members to the class that are created only when the class is
+	 * rendered. The supplier is called until it returns {@code null}. See
+	 * {@link #add(Iterator)}.
+	 *
+	 * @param members
+	 * @return
+	 */
+	public JSC add(final Supplier<? extends JSC> members) {
+		return add(LazyMembers.iterator(members));
+	}
+
+	/**
+	 * @return {@code true} if some members of the class or of a class nested
+	 *         in it are created only when the class is rendered
+	 */
+	boolean hasLazyMembers() {
+		return lazyMembers;
+	}
+
+	/**
+	 * Mark this node and all the nodes above it, so that the outer classes
+	 * are not cached, fingerprinted or written either.
+	 */
+	private void markLazyMembers() {
+		lazyMembers = true;
+		for (final JSC node : owners()) {
+			node.markLazyMembers();
+		}
+	}
+
 	private String type;
 
 	/**
@@ -191,6 +282,7 @@ public class JSC {
 	 * @return
 	 */
 	public JSC returnType(final String type) {
+		invalidate();
 		this.type = type;
 		return this;
 	}
@@ -202,7 +294,8 @@ public class JSC {
 	 * @return
 	 */
 	public JSC returnType(final Class<?> type) {
-		this.type = type.getCanonicalName();
+		invalidate();
+		this.type = TypeNames.of(type);
 		return this;
 	}
 
@@ -216,11 +309,12 @@ public class JSC {
 	 * @return
 	 */
 	public JSC identifier(final String identifier) {
+		invalidate();
 		this.identifier = identifier;
 		return this;
 	}
 
-	private final List<JSC> arguments = new LinkedList<>();
+	private List<JSC> arguments = null;
 
 	/**
 	 * Define the arguments of a constructor or a method. Chaining this method
@@ -241,11 +335,13 @@ public class JSC {
 	 * @return
 	 */
 	public JSC arguments(final JSC... arguments) {
-		this.arguments.addAll(Arrays.asList(arguments));
+		invalidate();
+		adopt(arguments);
+		this.arguments = addAll(this.arguments, arguments);
 		return this;
 	}
 
-	private final List<String> imports = new LinkedList<>();
+	private List<String> imports = null;
 
 	/**
 	 * Add imports to the class. The arguments have to be the fully qualified
@@ -255,7 +351,8 @@ public class JSC {
 	 * @return
 	 */
 	public JSC imports(String... imports) {
-		this.imports.addAll(Arrays.asList(imports));
+		invalidate();
+		this.imports = addAll(this.imports, imports);
 		return this;
 	}
 
@@ -265,6 +362,11 @@ public class JSC {
 		return blockCommand;
 	}
 
+	void setBlockCommand(final boolean blockCommand) {
+		invalidate();
+		this.blockCommand = blockCommand;
+	}
+
 	/**
 	 * Create a block command. Block commands are enclosed between '{' and '}'
 	 * and do not need ';' after them. Using this method the caller can define a
@@ -283,7 +385,7 @@ public class JSC {
 		return command(tool);
 	}
 
-	private final List<JSC> commands = new LinkedList<>();
+	private List<JSC> commands = null;
 
 	/**
 	 * Add a command to the actual constructor or method or other block.
@@ -318,11 +420,13 @@ public class JSC {
 	 * @return
 	 */
 	public JSC commands(final JSC... commands) {
-		this.commands.addAll(Arrays.asList(commands));
+		invalidate();
+		adopt(commands);
+		this.commands = addAll(this.commands, commands);
 		return this;
 	}
 
-	private final List<String> annotations = new LinkedList<>();
+	private List<String> annotations = null;
 
 	/**
 	 * Give annotation to the element.
@@ -341,11 +445,12 @@ public class JSC {
 	 * @return
 	 */
 	public JSC annotations(String... annotations) {
-		this.annotations.addAll(Arrays.asList(annotations));
+		invalidate();
+		this.annotations = addAll(this.annotations, annotations);
 		return this;
 	}
 
-	private final List<String> exceptions = new LinkedList<>();
+	private List<String> exceptions = null;
 
 	/**
 	 * Add an exception to the method or constructor.
@@ -358,13 +463,15 @@ public class JSC {
 	}
 
 	public JSC exceptions(String... exceptions) {
-		this.exceptions.addAll(Arrays.asList(exceptions));
+		invalidate();
+		this.exceptions = addAll(this.exceptions, exceptions);
 		return this;
 	}
 
 	public JSC exceptions(Class<?>[] throwables) {
+		invalidate();
 		for (Class<?> throwable : throwables) {
-			this.exceptions.add(throwable.getName());
+			this.exceptions = add(this.exceptions, TypeNames.of(throwable));
 		}
 		return this;
 	}
@@ -372,6 +479,7 @@ public class JSC {
 	private String expression;
 
 	private JSC setExpression(String expression) {
+		invalidate();
 		this.expression = expression;
 		return this;
 	}
@@ -469,12 +577,326 @@ public class JSC {
 		return argument(tool);
 	}
 
+	/**
+	 * The lists of a node are created only when the first element is added to
+	 * them. Most of the nodes, like the commands, never use most of the lists.
+	 * The lists are array backed and start small.
+	 */
+	private static final int INITIAL_CAPACITY = 4;
+
+	private static <T> List<T> add(List<T> list, final T element) {
+		if (list == null) {
+			list = new ArrayList<>(INITIAL_CAPACITY);
+		}
+		list.add(element);
+		return list;
+	}
+
+	private static <T> List<T> addAll(List<T> list, final T[] elements) {
+		if (list == null) {
+			list = new ArrayList<>(Math.max(INITIAL_CAPACITY, elements.length));
+		}
+		for (final T element : elements) {
+			list.add(element);
+		}
+		return list;
+	}
+
+	private static <T> List<T> orEmpty(final List<T> list) {
+		return list == null ? Collections.<T> emptyList() : list;
+	}
+
+	/**
+	 * The nodes that this node was added to as a block, an argument or a
+	 * command. All of them are notified when the node changes. Most nodes
+	 * have a single owner, the list is created only for a node added to more
+	 * than one parent.
+	 */
+	private JSC owner = null;
+	private List<JSC> otherOwners = null;
+
+	private transient Fingerprint fingerprint = null;
+
+	private boolean memoizing = false;
+	private transient Fragment rendered = null;
+
+	/**
+	 * The code of a node rendered at some indentation depth. The instances
+	 * are immutable so that a frozen node shared by several threads can cache
+	 * it without synchronization.
+	 */
+	private static final class Fragment {
+		private final int tabs;
+		private final String code;
+
+		Fragment(final int tabs, final String code) {
+			this.tabs = tabs;
+			this.code = code;
+		}
+	}
+
+	/**
+	 * The whole rendered code of a frozen node, cached by {@link #toString()}.
+	 */
+	private transient String text = null;
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException(
+					"The JSC object is frozen, it can not be modified");
+		}
+	}
+
+	/**
+	 * Drop the cached values of this node and of all the nodes above it. Every
+	 * mutating method calls this method before modifying the node.
+	 */
+	private void invalidate() {
+		checkNotFrozen();
+		dropCaches();
+	}
+
+	private void dropCaches() {
+		fingerprint = null;
+		rendered = null;
+		for (final JSC node : owners()) {
+			node.dropCaches();
+		}
+	}
+
+	private List<JSC> owners() {
+		if (otherOwners != null) {
+			return otherOwners;
+		}
+		return owner == null ? Collections.<JSC> emptyList() : Collections
+				.singletonList(owner);
+	}
+
+	/**
+	 * Keep the rendered code of the members of this class and reuse it until
+	 * the member or something inside the member changes. When a single method
+	 * of a large class is modified then printing the class again renders only
+	 * that method, the code of the other members is copied from the cache.
+	 * <p>
+	 * The cached code is kept in memory as long as the members are alive,
+	 * roughly doubling the memory the class needs.
+	 *
+	 * @return
+	 */
+	public JSC memoizeMembers() {
+		checkNotFrozen();
+		memoizing = true;
+		return this;
+	}
+
+	boolean isMemoizing() {
+		return memoizing;
+	}
+
+	/**
+	 * @param tabs
+	 *            the indentation depth the node is going to be printed at
+	 * @return the cached rendered code of the node or {@code null} if the node
+	 *         changed since it was last rendered at this depth
+	 */
+	String getRendered(final int tabs) {
+		final Fragment fragment = rendered;
+		return fragment != null && fragment.tabs == tabs ? fragment.code
+				: null;
+	}
+
+	void setRendered(final int tabs, final String rendered) {
+		this.rendered = new Fragment(tabs, rendered);
+	}
+
+	/**
+	 * Register this node as an owner of the children. Frozen children never
+	 * change, they do not need to know their owners.
+	 */
+	private void adopt(final JSC... children) {
+		for (final JSC child : children) {
+			if (!child.frozen) {
+				child.addOwner(this);
+			}
+			if (child.lazyMembers) {
+				markLazyMembers();
+			}
+		}
+	}
+
+	private void addOwner(final JSC node) {
+		if (owner == null) {
+			owner = node;
+		} else if (owner != node && !owners().contains(node)) {
+			if (otherOwners == null) {
+				otherOwners = add(otherOwners, owner);
+			}
+			otherOwners.add(node);
+		}
+	}
+
+	/**
+	 * Create an immutable snapshot of the tree starting at this node. Calling
+	 * any modifying method on the snapshot or on any node of it throws
+	 * {@link IllegalStateException}. Modifying the original tree does not
+	 * affect the snapshot.
+	 * <p>
+	 * Subtrees of the snapshot that have the same {@link Fingerprint} and the
+	 * same code are represented by the same node. Frozen nodes can be added to any number
+	 * of other trees and they can be printed, fingerprinted and compiled from
+	 * many threads at the same time. The fingerprint and the rendered code are
+	 * cached in the frozen nodes in immutable objects, therefore the snapshot
+	 * needs no synchronization once it was handed over to other threads by
+	 * the usual means, like a final or volatile field or a concurrent
+	 * collection.
+	 *
+	 * @return the frozen snapshot, or {@code this} if the node is already
+	 *         frozen
+	 */
+	public JSC freeze() {
+		return freeze(new HashMap<Fingerprint, JSC>());
+	}
+
+	/**
+	 * Freeze the node reusing the snapshots in {@code shared}, keyed by their
+	 * fingerprint. A snapshot found by the fingerprint is reused only if it
+	 * renders the same code, the fingerprint alone may collide.
+	 */
+	JSC freeze(final Map<Fingerprint, JSC> shared) {
+		if (frozen) {
+			return this;
+		}
+		final Fingerprint key = fingerprint();
+		final JSC snapshot = shared.get(key);
+		if (snapshot == null) {
+			final JSC created = new JSC(this, shared);
+			shared.put(key, created);
+			return created;
+		}
+		if (snapshot.memoizing != memoizing
+				|| !snapshot.toString().equals(toString())) {
+			// fingerprint collision, the node is not shared
+			return new JSC(this, shared);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Create the frozen copy of the node {@code source}.
+	 */
+	private JSC(final JSC source, final Map<Fingerprint, JSC> shared) {
+		frozen = true;
+		jscType = source.jscType;
+		packge = source.packge;
+		modifiers = source.modifiers;
+		parentClass = source.parentClass;
+		intrfaces = frozenStrings(source.intrfaces);
+		declaredBlocks = frozenNodes(source.declaredBlocks, shared);
+		type = source.type;
+		identifier = source.identifier;
+		arguments = frozenNodes(source.arguments, shared);
+		imports = frozenStrings(source.imports);
+		blockCommand = source.blockCommand;
+		commands = frozenNodes(source.commands, shared);
+		annotations = frozenStrings(source.annotations);
+		exceptions = frozenStrings(source.exceptions);
+		expression = source.expression;
+		simpleCommand = source.simpleCommand;
+		memoizing = source.memoizing;
+		fingerprint = source.fingerprint();
+	}
+
+	private static List<String> frozenStrings(final List<String> strings) {
+		return strings == null ? null : Collections
+				.unmodifiableList(new ArrayList<>(strings));
+	}
+
+	private static List<JSC> frozenNodes(final List<JSC> nodes,
+			final Map<Fingerprint, JSC> shared) {
+		if (nodes == null) {
+			return null;
+		}
+		final List<JSC> frozenNodes = new ArrayList<>(nodes.size());
+		for (final JSC node : nodes) {
+			frozenNodes.add(node.freeze(shared));
+		}
+		return Collections.unmodifiableList(frozenNodes);
+	}
+
+	/**
+	 * @return {@code true} if this node is part of a snapshot created by
+	 *         {@link #freeze()}
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Get the structural hash of the tree starting at this node. The hash
+	 * covers all the fields of the node and the fingerprints of the children.
+	 * <p>
+	 * The value is calculated when it is first needed and it is cached. The
+	 * methods modifying the node drop the cached value of the node and of the
+	 * nodes it was added to, therefore after a modification only the
+	 * fingerprints along the path to the root are recalculated. Modifying the
+	 * lists returned by the getters directly is not detected.
+	 *
+	 * @return
+	 */
+	public Fingerprint fingerprint() {
+		if (fingerprint == null) {
+			fingerprint = calculateFingerprint();
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Calculate the fingerprint of this node. Subclasses that have other
+	 * fields than the ones defined here override this method.
+	 */
+	Fingerprint calculateFingerprint() {
+		final Fingerprint.Hasher hasher = new Fingerprint.Hasher()
+				.put(jscType == null ? null : jscType.name()).put(packge)
+				.put(modifiers).put(parentClass).put(type).put(identifier)
+				.put(blockCommand).put(expression).put(simpleCommand);
+		putStrings(hasher, getIntrfaces());
+		putStrings(hasher, getImports());
+		putStrings(hasher, getAnnotations());
+		putStrings(hasher, getExceptions());
+		putNodes(hasher, getDeclaredBlocks());
+		putNodes(hasher, getArguments());
+		putNodes(hasher, getCommands());
+		return hasher.fingerprint();
+	}
+
+	private static void putStrings(final Fingerprint.Hasher hasher,
+			final List<String> strings) {
+		hasher.put(strings.size());
+		for (final String string : strings) {
+			hasher.put(string);
+		}
+	}
+
+	private static void putNodes(final Fingerprint.Hasher hasher,
+			final List<JSC> nodes) {
+		hasher.put(nodes.size());
+		for (final JSC node : nodes) {
+			hasher.put(node.fingerprint());
+		}
+	}
+
 	/**
 	 * Convert the generated structure to string and thus ready to be passed to
 	 * the compiler.
 	 */
 	public String toString() {
-		return JSCPrinter.pprint(this);
+		if (!frozen) {
+			return JSCPrinter.pprint(this);
+		}
+		if (text == null) {
+			text = JSCPrinter.pprint(this);
+		}
+		return text;
 	}
 
 	protected String getPackge() {
@@ -490,11 +912,11 @@ public class JSC {
 	}
 
 	protected List<String> getIntrfaces() {
-		return intrfaces;
+		return orEmpty(intrfaces);
 	}
 
 	protected List<JSC> getDeclaredBlocks() {
-		return declaredBlocks;
+		return orEmpty(declaredBlocks);
 	}
 
 	protected String getType() {
@@ -506,23 +928,23 @@ public class JSC {
 	}
 
 	protected List<JSC> getArguments() {
-		return arguments;
+		return orEmpty(arguments);
 	}
 
 	protected List<JSC> getCommands() {
-		return commands;
+		return orEmpty(commands);
 	}
 
 	protected List<String> getExceptions() {
-		return exceptions;
+		return orEmpty(exceptions);
 	}
 
 	protected List<String> getImports() {
-		return imports;
+		return orEmpty(imports);
 	}
 
 	protected List<String> getAnnotations() {
-		return annotations;
+		return orEmpty(annotations);
 	}
 
 	protected String getExpression() {
@@ -0,0 +1,279 @@
+package com.javax0.jscglib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the source code of many classes into a source tree. The directory of
+ * each class is derived from its package, the same way as the Java compiler
+ * expects it. The classes are rendered and written on a thread pool.
+ * <p>
+ * A file that already contains the same code is not written, its
+ * modification time does not change. This way the tools that check the
+ * modification time, like incremental compilers and IDEs, process only the
+ * classes that really changed.
+ * <p>
+ * Typical use:
+ *
+ * <pre>
+ * List&lt;JSCBatch.Result&gt; results = new JSCBatch(Paths.get(&quot;target/generated-sources&quot;))
+ * 		.add(classes).threads(8).write();
+ * </pre>
+ */
+public class JSCBatch {
+	private final Path root;
+	private final List<JSC> klasses = new ArrayList<>();
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private ExecutorService executor = null;
+	private Charset charset = Charset.forName("UTF-8");
+
+	/**
+	 * @param root
+	 *            the root directory of the source tree
+	 */
+	public JSCBatch(final Path root) {
+		this.root = root;
+	}
+
+	/**
+	 * Add classes to the batch.
+	 *
+	 * @param klasses
+	 *            JSC objects of type {@link JSCType#CLASS}
+	 * @return
+	 */
+	public JSCBatch add(final JSC... klasses) {
+		return add(Arrays.asList(klasses));
+	}
+
+	/**
+	 * Add classes to the batch.
+	 *
+	 * @param klasses
+	 *            JSC objects of type {@link JSCType#CLASS}
+	 * @return
+	 */
+	public JSCBatch add(final Collection<JSC> klasses) {
+		for (final JSC klass : klasses) {
+			JSCCompiler.className(klass);
+		}
+		this.klasses.addAll(klasses);
+		return this;
+	}
+
+	/**
+	 * Define the number of threads writing the files. The pool is created when
+	 * {@link #write()} is called and it is shut down before it returns.
+	 *
+	 * @param threads
+	 * @return
+	 */
+	public JSCBatch threads(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException(
+					"The number of threads has to be positive");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Use the executor to write the files instead of creating a new thread
+	 * pool. The executor is not shut down.
+	 *
+	 * @param executor
+	 * @return
+	 */
+	public JSCBatch executor(final ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Define the character set of the source files. The default is UTF-8.
+	 *
+	 * @param charset
+	 * @return
+	 */
+	public JSCBatch charset(final Charset charset) {
+		this.charset = charset;
+		return this;
+	}
+
+	/**
+	 * @param klass
+	 * @return the file where the source code of the class is written to
+	 */
+	public Path file(final JSC klass) {
+		return root.resolve(JSCCompiler.className(klass).replace('.', '/')
+				+ ".java");
+	}
+
+	/**
+	 * Render and write all the classes of the batch. The method returns when
+	 * all the files are written.
+	 *
+	 * @return the results of the writes in the order the classes were added
+	 * @throws IOException
+	 *             the first exception that happened writing a file. The other
+	 *             files are written even if one of them fails.
+	 */
+	public List<Result> write() throws IOException {
+		final ExecutorService service = executor == null ? Executors
+				.newFixedThreadPool(threads) : executor;
+		try {
+			final List<Future<Result>> futures = new ArrayList<>(
+					klasses.size());
+			for (final JSC klass : klasses) {
+				futures.add(service.submit(new Callable<Result>() {
+					@Override
+					public Result call() throws IOException {
+						return write(klass);
+					}
+				}));
+			}
+			return collect(futures);
+		} finally {
+			if (executor == null) {
+				service.shutdown();
+			}
+		}
+	}
+
+	private List<Result> collect(final List<Future<Result>> futures)
+			throws IOException {
+		final List<Result> results = new ArrayList<>(futures.size());
+		Throwable failure = null;
+		for (final Future<Result> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Writing the batch was interrupted", e);
+			}
+		}
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		return results;
+	}
+
+	/**
+	 * The size of the buffer the existing files are compared through.
+	 */
+	private static final int COMPARE_BUFFER_SIZE = 16 * 1024;
+
+	private Result write(final JSC klass) throws IOException {
+		final long start = System.nanoTime();
+		final Path file = file(klass);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JSCPrinter.pprint(klass, out, charset);
+		final byte[] content = out.toByteArray();
+		final boolean changed = !hasContent(file, content);
+		if (changed) {
+			Files.createDirectories(file.getParent());
+			Files.write(file, content);
+		}
+		return new Result(klass, file, changed, System.nanoTime() - start);
+	}
+
+	/**
+	 * Check that the file exists and contains the bytes. The size of the file
+	 * is checked first and the content is compared only if the size is the
+	 * same. The file is read through a small buffer and the reading stops at
+	 * the first difference. The file is not mapped, a mapping would keep the
+	 * file locked on some systems when it is overwritten afterwards.
+	 *
+	 * @param file
+	 * @param content
+	 * @return {@code true} if the file contains exactly the bytes
+	 * @throws IOException
+	 */
+	static boolean hasContent(final Path file, final byte[] content)
+			throws IOException {
+		if (!Files.isRegularFile(file) || Files.size(file) != content.length) {
+			return false;
+		}
+		final byte[] buffer = new byte[Math.min(content.length,
+				COMPARE_BUFFER_SIZE)];
+		try (InputStream in = Files.newInputStream(file)) {
+			int position = 0;
+			int read;
+			while (position < content.length
+					&& (read = in.read(buffer, 0, Math.min(buffer.length,
+							content.length - position))) > 0) {
+				if (!Arrays.equals(buffer, 0, read, content, position,
+						position + read)) {
+					return false;
+				}
+				position += read;
+			}
+			return position == content.length && in.read() == -1;
+		}
+	}
+
+	/**
+	 * The result of writing one class.
+	 */
+	public static class Result {
+		private final JSC klass;
+		private final Path file;
+		private final boolean changed;
+		private final long nanos;
+
+		Result(final JSC klass, final Path file, final boolean changed,
+				final long nanos) {
+			this.klass = klass;
+			this.file = file;
+			this.changed = changed;
+			this.nanos = nanos;
+		}
+
+		public JSC getKlass() {
+			return klass;
+		}
+
+		public Path getFile() {
+			return file;
+		}
+
+		/**
+		 * @return {@code true} if the file was written, {@code false} if the
+		 *         file already contained the same code and it was not touched
+		 */
+		public boolean isChanged() {
+			return changed;
+		}
+
+		/**
+		 * @return the time spent rendering and writing the file in
+		 *         nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+	}
+}
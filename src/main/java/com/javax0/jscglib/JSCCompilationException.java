@@ -0,0 +1,39 @@
+package com.javax0.jscglib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Thrown by {@link JSCCompiler} when the generated code can not be compiled.
+ * The compiler messages are available through {@link #getDiagnostics()}.
+ */
+public class JSCCompilationException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+	static final String MESSAGE = "The generated code can not be compiled\n";
+
+	private final transient List<Diagnostic<? extends JavaFileObject>> diagnostics;
+
+	JSCCompilationException(
+			final List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+		super(MESSAGE + JSCCompiler.format(diagnostics));
+		this.diagnostics = new ArrayList<>(diagnostics);
+	}
+
+	/**
+	 * Create an exception for an error found before the Java compiler is
+	 * invoked, there are no compiler messages.
+	 *
+	 * @param message
+	 */
+	JSCCompilationException(final String message) {
+		super(MESSAGE + message);
+		this.diagnostics = new ArrayList<>();
+	}
+
+	public List<Diagnostic<? extends JavaFileObject>> getDiagnostics() {
+		return diagnostics;
+	}
+}
@@ -0,0 +1,563 @@
+package com.javax0.jscglib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles {@link JSC} classes in memory and loads them. The source code is
+ * rendered directly to the compiler and the generated byte code is kept in
+ * memory, there is no file written to or read from the disk.
+ * <p>
+ * Each compilation defines the classes in a new class loader. Classes that
+ * reference each other have to be compiled together in one call. Classes
+ * needed only at run time can be defined as hidden classes instead, see
+ * {@link #hiddenClasses(MethodHandles.Lookup)}.
+ */
+public class JSCCompiler {
+
+	private final ClassLoader parent;
+	private final List<String> options = new ArrayList<>();
+	private JSCCompilerCache cache = null;
+	private boolean directBytecode = false;
+	private MethodHandles.Lookup host = null;
+
+	/**
+	 * Create a compiler that loads the compiled classes in class loaders that
+	 * are children of the context class loader of the current thread.
+	 */
+	public JSCCompiler() {
+		this(Thread.currentThread().getContextClassLoader() == null ? JSCCompiler.class
+				.getClassLoader() : Thread.currentThread()
+				.getContextClassLoader());
+	}
+
+	/**
+	 * Create a compiler that loads the compiled classes in class loaders that
+	 * are children of the {@code parent} class loader.
+	 *
+	 * @param parent
+	 */
+	public JSCCompiler(final ClassLoader parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Add options that are passed to the Java compiler, like
+	 * {@code "-classpath", "..."}.
+	 *
+	 * @param options
+	 * @return
+	 */
+	public JSCCompiler options(final String... options) {
+		this.options.addAll(Arrays.asList(options));
+		return this;
+	}
+
+	/**
+	 * Use the cache to look up the byte code before invoking the Java compiler
+	 * and store the newly compiled byte code into it. The key of the cache is
+	 * the {@link Fingerprint} of the classes compiled together, the compiler
+	 * options, the version of the JVM and of the Java compiler and the class
+	 * path entries with their size and modification time. Byte code compiled
+	 * by another JDK or against other versions of the dependencies is not
+	 * reused.
+	 *
+	 * @param cache
+	 * @return
+	 */
+	public JSCCompiler cache(final JSCCompilerCache cache) {
+		this.cache = cache;
+		return this;
+	}
+
+	/**
+	 * Translate the classes directly to byte code without invoking the Java
+	 * compiler when they contain only fields with constant initializers and
+	 * constructors and methods whose bodies are empty or made of
+	 * {@link JSCStatement}s computing with {@code int}, {@code long},
+	 * {@code double} and {@code boolean} values. The classes that contain
+	 * command strings or anything else the direct translation does not handle
+	 * are compiled by the Java compiler as usual.
+	 * <p>
+	 * The directly translated classes are neither cached nor affected by the
+	 * compiler options, they do not contain debug information. The types used
+	 * in the code are looked up using the parent class loader.
+	 *
+	 * @param directBytecode
+	 * @return
+	 */
+	public JSCCompiler directBytecode(final boolean directBytecode) {
+		this.directBytecode = directBytecode;
+		return this;
+	}
+
+	/**
+	 * Define the compiled classes as hidden classes of the host instead of
+	 * loading them in a new class loader. Defining a hidden class is cheaper
+	 * and a hidden class is unloaded as soon as it is not referenced, even if
+	 * the loader of the host stays alive.
+	 * <p>
+	 * A hidden class can not be referenced by name, therefore only one class
+	 * can be compiled at a time and it can not have nested, local or
+	 * anonymous classes. The class has to be in the package of the host, and
+	 * the types it uses are resolved by the loader of the host. The name
+	 * returned by {@link Class#getName()} of a hidden class has a suffix that
+	 * makes it unique.
+	 *
+	 * @param host
+	 *            a lookup with full privilege access, typically
+	 *            {@code MethodHandles.lookup()} called in a class of the
+	 *            package of the generated classes, or {@code null} to switch
+	 *            the hidden classes off
+	 * @return
+	 */
+	public JSCCompiler hiddenClasses(final MethodHandles.Lookup host) {
+		if (host != null && !host.hasFullPrivilegeAccess()) {
+			throw new IllegalArgumentException("The lookup of the host '"
+					+ host.lookupClass().getName()
+					+ "' has no full privilege access");
+		}
+		this.host = host;
+		return this;
+	}
+
+	protected ClassLoader getParent() {
+		return parent;
+	}
+
+	/**
+	 * Compile a class and load it.
+	 *
+	 * @param klass
+	 *            a JSC of type {@link JSCType#CLASS}
+	 * @return the loaded class
+	 * @throws JSCCompilationException
+	 *             when the code can not be compiled
+	 */
+	public Class<?> compile(final JSC klass) {
+		return compile(Arrays.asList(klass)).get(0);
+	}
+
+	/**
+	 * Compile the classes together and load them.
+	 *
+	 * @param klasses
+	 *            JSC objects of type {@link JSCType#CLASS}
+	 * @return the loaded classes in the same order as the argument list
+	 * @throws JSCCompilationException
+	 *             when the code can not be compiled
+	 * @throws IllegalArgumentException
+	 *             when the classes can not be defined as hidden classes
+	 */
+	public List<Class<?>> compile(final Collection<JSC> klasses) {
+		if (host != null) {
+			return Arrays.<Class<?>> asList(defineHidden(klasses));
+		}
+		final ByteCodeClassLoader loader = new ByteCodeClassLoader(parent,
+				compileToBytecode(klasses));
+		final List<Class<?>> classes = new ArrayList<>(klasses.size());
+		for (final JSC klass : klasses) {
+			try {
+				classes.add(loader.loadClass(className(klass)));
+			} catch (ClassNotFoundException e) {
+				throw new IllegalStateException("The class '"
+						+ className(klass) + "' was compiled but can not be loaded", e);
+			}
+		}
+		return classes;
+	}
+
+	private Class<?> defineHidden(final Collection<JSC> klasses) {
+		if (klasses.size() != 1) {
+			throw new IllegalArgumentException(
+					"Hidden classes have to be compiled one by one");
+		}
+		final String name = className(klasses.iterator().next());
+		final String packge = name.lastIndexOf('.') == -1 ? "" : name
+				.substring(0, name.lastIndexOf('.'));
+		if (!packge.equals(host.lookupClass().getPackageName())) {
+			throw new IllegalArgumentException("The class '" + name
+					+ "' is not in the package of the host '"
+					+ host.lookupClass().getName() + "'");
+		}
+		final Map<String, byte[]> bytecodes = compileToBytecode(klasses);
+		if (bytecodes.size() != 1) {
+			throw new IllegalArgumentException("The class '" + name
+					+ "' has nested, local or anonymous classes, "
+					+ "it can not be defined as a hidden class");
+		}
+		final byte[] bytecode = bytecodes.get(name);
+		final JSCEvents.DefineClass event = new JSCEvents.DefineClass();
+		event.begin();
+		final Class<?> klass;
+		try {
+			klass = host.defineHiddenClass(bytecode, true).lookupClass();
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("The class '" + name
+					+ "' can not be defined in the host '"
+					+ host.lookupClass().getName() + "'", e);
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.className = klass.getName();
+			event.size = bytecode.length;
+			event.commit();
+		}
+		return klass;
+	}
+
+	/**
+	 * Compile the classes together and return the byte code.
+	 *
+	 * @param klasses
+	 *            JSC objects of type {@link JSCType#CLASS}
+	 * @return the byte code of the classes keyed by the binary names. The map
+	 *         also contains the inner and anonymous classes.
+	 * @throws JSCCompilationException
+	 *             when the code can not be compiled
+	 */
+	public Map<String, byte[]> compileToBytecode(final Collection<JSC> klasses) {
+		for (final JSC klass : klasses) {
+			if (klass.getJscType() != JSCType.CLASS) {
+				continue;
+			}
+			try {
+				JSCStatement.validate(klass);
+			} catch (IllegalArgumentException e) {
+				throw new JSCCompilationException(e.getMessage());
+			}
+		}
+		if (directBytecode) {
+			final Map<String, byte[]> bytecodes = BytecodeBackend.compile(
+					klasses, parent);
+			if (bytecodes != null) {
+				return bytecodes;
+			}
+		}
+		if (cache == null || hasLazyMembers(klasses)) {
+			return javac(klasses);
+		}
+		final Fingerprint key = fingerprint(klasses);
+		Map<String, byte[]> bytecodes = cache.get(key);
+		if (bytecodes == null) {
+			bytecodes = javac(klasses);
+			cache.put(key, bytecodes);
+		}
+		return bytecodes;
+	}
+
+	private static boolean hasLazyMembers(final Collection<JSC> klasses) {
+		for (final JSC klass : klasses) {
+			if (klass.hasLazyMembers()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Fingerprint fingerprint(final Collection<JSC> klasses) {
+		final Fingerprint.Hasher hasher = new Fingerprint.Hasher();
+		hasher.put(System.getProperty("java.version"))
+				.put(System.getProperty("java.vm.version"))
+				.put(System.getProperty("java.vendor"));
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler != null) {
+			hasher.put(compiler.getClass().getName()).put(
+					compiler.getSourceVersions().toString());
+		}
+		hasher.put(options.size());
+		for (final String option : options) {
+			hasher.put(option);
+		}
+		putPath(hasher, classPath());
+		putPath(hasher, option("--module-path", "-p"));
+		hasher.put(klasses.size());
+		for (final JSC klass : klasses) {
+			hasher.put(klass.fingerprint());
+		}
+		return hasher.fingerprint();
+	}
+
+	/**
+	 * @return the value of the last option with one of the names, or
+	 *         {@code null} if there is no such option
+	 */
+	private String option(final String... names) {
+		String value = null;
+		for (int i = 0; i < options.size() - 1; i++) {
+			if (Arrays.asList(names).contains(options.get(i))) {
+				value = options.get(i + 1);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @return the class path the Java compiler uses: the one given in the
+	 *         options or the class path of the JVM
+	 */
+	private String classPath() {
+		final String classPath = option("-classpath", "-cp", "--class-path");
+		return classPath == null ? System.getProperty("java.class.path")
+				: classPath;
+	}
+
+	/**
+	 * Hash the entries of the path with their size and modification time, so
+	 * that a changed dependency changes the key even if its file name stays
+	 * the same. The size and the modification time of a directory do not
+	 * change when a class file in it is rewritten, therefore the files under
+	 * the directory entries are hashed one by one.
+	 */
+	private static void putPath(final Fingerprint.Hasher hasher,
+			final String path) {
+		if (path == null) {
+			hasher.put(0);
+			return;
+		}
+		final String[] entries = path.split(File.pathSeparator);
+		hasher.put(entries.length);
+		for (final String entry : entries) {
+			hasher.put(entry);
+			putFile(hasher, new File(entry));
+		}
+	}
+
+	private static void putFile(final Fingerprint.Hasher hasher,
+			final File file) {
+		final File[] children = file.listFiles();
+		if (children == null) {
+			hasher.put(Long.toString(file.length())).put(
+					Long.toString(file.lastModified()));
+			return;
+		}
+		Arrays.sort(children);
+		hasher.put(children.length);
+		for (final File child : children) {
+			hasher.put(child.getName());
+			putFile(hasher, child);
+		}
+	}
+
+	private Map<String, byte[]> javac(final Collection<JSC> klasses) {
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new IllegalStateException(
+					"There is no Java compiler available, the code runs on a JRE and not on a JDK");
+		}
+		final List<JavaFileObject> sources = new ArrayList<>(klasses.size());
+		for (final JSC klass : klasses) {
+			sources.add(new JSCSource(klass));
+		}
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		final MemoryFileManager fileManager = new MemoryFileManager(
+				compiler.getStandardFileManager(diagnostics, null, null));
+		final JSCEvents.Compile event = new JSCEvents.Compile();
+		event.begin();
+		final long start = System.nanoTime();
+		boolean success = false;
+		try {
+			success = compiler.getTask(null, fileManager, diagnostics, options,
+					null, sources).call();
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				final StringBuilder names = new StringBuilder();
+				for (final JSC klass : klasses) {
+					names.append(names.length() == 0 ? "" : ",").append(
+							className(klass));
+				}
+				event.classes = names.toString();
+				event.classCount = klasses.size();
+				event.successful = success;
+				event.commit();
+			}
+			if (JSCInstrumentation.isActive()) {
+				JSCInstrumentation.compiled(klasses.size(), System.nanoTime()
+						- start, success);
+			}
+			try {
+				fileManager.close();
+			} catch (IOException e) {
+				// the memory file manager does not hold any resource to release
+			}
+		}
+		if (!success) {
+			throw new JSCCompilationException(diagnostics.getDiagnostics());
+		}
+		return fileManager.getBytecodes();
+	}
+
+	/**
+	 * @param klass
+	 * @return the fully qualified name of the class described by the JSC
+	 */
+	static String className(final JSC klass) {
+		if (klass.getJscType() != JSCType.CLASS) {
+			throw new IllegalArgumentException("The type of the JSC object '"
+					+ klass.getJscType().name() + "' can not be compiled");
+		}
+		if (klass.getIdentifier() == null) {
+			throw new IllegalArgumentException(
+					"The JSC class has no name and can not be compiled");
+		}
+		return klass.getPackge() == null ? klass.getIdentifier() : klass
+				.getPackge() + "." + klass.getIdentifier();
+	}
+
+	/**
+	 * Source file object that renders the JSC when the compiler reads it. The
+	 * code of a class with lazy members can be rendered only once, it is kept
+	 * for the case the compiler reads the source again, for example to report
+	 * an error.
+	 */
+	private static class JSCSource extends SimpleJavaFileObject {
+		private final JSC klass;
+		private CharSequence code = null;
+
+		JSCSource(final JSC klass) {
+			super(URI.create("string:///"
+					+ className(klass).replace('.', '/')
+					+ Kind.SOURCE.extension), Kind.SOURCE);
+			this.klass = klass;
+		}
+
+		@Override
+		public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+			if (!klass.hasLazyMembers()) {
+				return JSCPrinter.pprint(klass);
+			}
+			if (code == null) {
+				code = JSCPrinter.pprint(klass);
+			}
+			return code;
+		}
+	}
+
+	/**
+	 * Class file object that collects the byte code in memory.
+	 */
+	private static class MemoryClassFile extends SimpleJavaFileObject {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		MemoryClassFile(final String className) {
+			super(URI.create("bytes:///" + className.replace('.', '/')
+					+ Kind.CLASS.extension), Kind.CLASS);
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+			return bytes;
+		}
+
+		byte[] getBytes() {
+			return bytes.toByteArray();
+		}
+	}
+
+	/**
+	 * File manager that reads the standard libraries through the standard
+	 * file manager but keeps the compiled classes in memory.
+	 */
+	private static class MemoryFileManager extends
+			ForwardingJavaFileManager<StandardJavaFileManager> {
+		private final Map<String, MemoryClassFile> classFiles = new LinkedHashMap<>();
+
+		MemoryFileManager(final StandardJavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(final Location location,
+				final String className, final Kind kind, final FileObject sibling) {
+			final MemoryClassFile classFile = new MemoryClassFile(className);
+			classFiles.put(className, classFile);
+			return classFile;
+		}
+
+		Map<String, byte[]> getBytecodes() {
+			final Map<String, byte[]> bytecodes = new HashMap<>();
+			for (final Map.Entry<String, MemoryClassFile> entry : classFiles
+					.entrySet()) {
+				bytecodes.put(entry.getKey(), entry.getValue().getBytes());
+			}
+			return bytecodes;
+		}
+	}
+
+	/**
+	 * Class loader that defines the classes from the byte code stored in a
+	 * map.
+	 */
+	static class ByteCodeClassLoader extends ClassLoader {
+		private final Map<String, byte[]> bytecodes;
+
+		ByteCodeClassLoader(final ClassLoader parent,
+				final Map<String, byte[]> bytecodes) {
+			super(parent);
+			this.bytecodes = new HashMap<>(bytecodes);
+		}
+
+		@Override
+		protected Class<?> findClass(final String name)
+				throws ClassNotFoundException {
+			final byte[] bytecode = bytecodes.remove(name);
+			if (bytecode == null) {
+				throw new ClassNotFoundException(name);
+			}
+			final JSCEvents.DefineClass event = new JSCEvents.DefineClass();
+			event.begin();
+			final Class<?> klass = defineClass(name, bytecode, 0,
+					bytecode.length);
+			event.end();
+			if (event.shouldCommit()) {
+				event.className = name;
+				event.size = bytecode.length;
+				event.commit();
+			}
+			return klass;
+		}
+	}
+
+	/**
+	 * Formats the diagnostic messages into one string.
+	 *
+	 * @param diagnostics
+	 * @return
+	 */
+	static String format(
+			final List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+		final StringBuilder sb = new StringBuilder();
+		for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+				sb.append(diagnostic.getSource() == null ? "" : diagnostic
+						.getSource().getName()).append(":")
+						.append(diagnostic.getLineNumber()).append(": ")
+						.append(diagnostic.getMessage(null)).append("\n");
+			}
+		}
+		return sb.toString();
+	}
+}
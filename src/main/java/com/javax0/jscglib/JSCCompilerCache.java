@@ -0,0 +1,217 @@
+package com.javax0.jscglib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of compiled byte code keyed by the {@link Fingerprint} of the
+ * compiled JSC classes. The cache has a bounded in-memory tier that drops the
+ * least recently used entries and an optional directory tier that survives
+ * the restart of the JVM.
+ * <p>
+ * The cache stores byte code and not classes, therefore it does not keep any
+ * class loader alive. Use it via {@link JSCCompiler#cache(JSCCompilerCache)}.
+ */
+public class JSCCompilerCache {
+	private static final int MAGIC = 0x4A534343;
+	/**
+	 * The version of the file format and of the key. Files written by other
+	 * versions are ignored.
+	 */
+	private static final int VERSION = 2;
+	private static final String EXTENSION = ".jscc";
+
+	private final Map<Fingerprint, Map<String, byte[]>> memory;
+	private final Path directory;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Create a memory only cache.
+	 *
+	 * @param maxEntries
+	 *            the maximal number of compilation results kept in memory
+	 */
+	public JSCCompilerCache(final int maxEntries) {
+		this(maxEntries, null);
+	}
+
+	/**
+	 * Create a cache that also stores the compiled byte code in a directory.
+	 *
+	 * @param maxEntries
+	 *            the maximal number of compilation results kept in memory
+	 * @param directory
+	 *            the directory where the byte code is stored. It is created
+	 *            when it does not exist. {@code null} means no disk tier.
+	 */
+	public JSCCompilerCache(final int maxEntries, final Path directory) {
+		if (maxEntries < 0) {
+			throw new IllegalArgumentException(
+					"The maximal number of cache entries can not be negative");
+		}
+		this.directory = directory;
+		this.memory = new LinkedHashMap<Fingerprint, Map<String, byte[]>>(16,
+				0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					final Map.Entry<Fingerprint, Map<String, byte[]>> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Look up the byte code compiled from the sources that have the
+	 * fingerprint {@code key}.
+	 *
+	 * @param key
+	 * @return the byte code keyed by the binary class names or {@code null}
+	 *         if the cache does not contain the key
+	 */
+	public Map<String, byte[]> get(final Fingerprint key) {
+		final JSCEvents.CacheLookup event = new JSCEvents.CacheLookup();
+		event.begin();
+		String tier = "memory";
+		Map<String, byte[]> bytecodes;
+		synchronized (this) {
+			bytecodes = memory.get(key);
+		}
+		if (bytecodes == null && directory != null) {
+			tier = "disk";
+			bytecodes = load(key);
+			if (bytecodes != null) {
+				synchronized (this) {
+					memory.put(key, bytecodes);
+				}
+			}
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.key = key.toString();
+			event.hit = bytecodes != null;
+			event.tier = bytecodes == null ? "none" : tier;
+			event.commit();
+		}
+		synchronized (this) {
+			if (bytecodes == null) {
+				misses++;
+			} else {
+				hits++;
+			}
+		}
+		JSCInstrumentation.cacheLookup(bytecodes != null);
+		return bytecodes;
+	}
+
+	/**
+	 * Store the byte code in the cache.
+	 *
+	 * @param key
+	 * @param bytecodes
+	 */
+	public void put(final Fingerprint key, final Map<String, byte[]> bytecodes) {
+		final Map<String, byte[]> value = Collections
+				.unmodifiableMap(new HashMap<>(bytecodes));
+		synchronized (this) {
+			memory.put(key, value);
+		}
+		if (directory != null) {
+			store(key, value);
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	private Path file(final Fingerprint key) {
+		return directory.resolve(key.toString() + EXTENSION);
+	}
+
+	/**
+	 * Read the byte code from the directory tier. A missing, unreadable or
+	 * corrupt file is treated as a cache miss.
+	 */
+	private Map<String, byte[]> load(final Fingerprint key) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(file(key))))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			final int count = in.readInt();
+			final Map<String, byte[]> bytecodes = new HashMap<>();
+			for (int i = 0; i < count; i++) {
+				final String name = in.readUTF();
+				final byte[] bytecode = new byte[in.readInt()];
+				in.readFully(bytecode);
+				bytecodes.put(name, bytecode);
+			}
+			return Collections.unmodifiableMap(bytecodes);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write the byte code to the directory tier. The data is written into a
+	 * temporary file first and then moved to its final place, so that a
+	 * concurrent reader never sees a half written file. The disk tier is only
+	 * an optimization, therefore a failing write is ignored.
+	 */
+	private void store(final Fingerprint key, final Map<String, byte[]> bytecodes) {
+		Path tmp = null;
+		try {
+			Files.createDirectories(directory);
+			tmp = Files.createTempFile(directory, key.toString(), ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(bytecodes.size());
+				for (final Map.Entry<String, byte[]> entry : bytecodes
+						.entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeInt(entry.getValue().length);
+					out.write(entry.getValue());
+				}
+			}
+			try {
+				Files.move(tmp, file(key), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file(key), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			// the entry stays in the memory tier
+			deleteQuietly(tmp);
+		}
+	}
+
+	private static void deleteQuietly(final Path file) {
+		if (file != null) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				// nothing to do, the file is left behind
+			}
+		}
+	}
+}
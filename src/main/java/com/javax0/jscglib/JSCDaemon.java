@@ -0,0 +1,360 @@
+package com.javax0.jscglib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long running generation server that renders and compiles JSC models sent
+ * by {@link JSCDaemonClient}s. A build that starts a new JVM for every module
+ * pays for the start of the JVM, the loading of the Java compiler and the
+ * interpretation of the code before it is compiled by the JIT every time. The
+ * daemon pays these only once, and the compiler cache it keeps is shared by
+ * all the jobs.
+ * <p>
+ * The daemon listens on the loopback interface only. The clients have to
+ * present the token of the daemon, see {@link #getToken()}, which the build
+ * usually passes to the client processes in a file readable only by the
+ * user. The token is checked before anything else is read from the
+ * connection. The models are transferred using Java serialization in frames
+ * of limited size, the daemon accepts only the classes of the JSC model.
+ * <p>
+ * Every connection is served by a task of the executor. By default the
+ * daemon uses virtual threads when the Java runtime supports them, and a
+ * cached thread pool otherwise.
+ */
+public class JSCDaemon implements Closeable {
+	/**
+	 * The number of the characters of the token.
+	 */
+	static final int TOKEN_LENGTH = 32;
+
+	/**
+	 * The largest request or response accepted.
+	 */
+	static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * The requests may contain only the nodes of the model, the enums they
+	 * use and the collections and the boxed values of their fields.
+	 */
+	private static final ObjectInputFilter FILTER = ObjectInputFilter.Config
+			.createFilter("maxdepth=1000;maxarray=1000000;maxrefs=10000000;"
+					+ "maxbytes=" + MAX_FRAME_SIZE + ";"
+					+ "com.javax0.jscglib.JSCDaemon$Request;"
+					+ "com.javax0.jscglib.JSC;"
+					+ "com.javax0.jscglib.JSCStatement;"
+					+ "com.javax0.jscglib.JSCExpression;"
+					+ "com.javax0.jscglib.JSCType;"
+					+ "com.javax0.jscglib.JSCStatement$Kind;"
+					+ "com.javax0.jscglib.JSCExpression$Kind;"
+					+ "com.javax0.jscglib.JSCExpression$Operator;"
+					+ "java.lang.Enum;java.lang.Object;java.util.ArrayList;"
+					+ "java.util.Collections$UnmodifiableRandomAccessList;"
+					+ "java.util.Collections$UnmodifiableList;"
+					+ "java.util.Collections$UnmodifiableCollection;"
+					+ "java.util.Collections$EmptyList;"
+					+ "java.lang.Number;java.lang.Integer;java.lang.Long;"
+					+ "java.lang.Double;java.lang.Boolean;!*");
+
+	/**
+	 * The time a client has to send the token after it connected.
+	 */
+	private static final int HANDSHAKE_TIMEOUT = 10000;
+
+	private JSCCompilerCache cache = new JSCCompilerCache(1000);
+	private ExecutorService executor = null;
+	private boolean ownExecutor = false;
+	private final String token;
+	private ServerSocket server = null;
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+	public JSCDaemon() {
+		final byte[] random = new byte[TOKEN_LENGTH / 2];
+		new SecureRandom().nextBytes(random);
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : random) {
+			sb.append(String.format("%02x", b));
+		}
+		token = sb.toString();
+	}
+
+	/**
+	 * Use the cache for the compilation jobs. The default is a memory cache
+	 * of 1000 entries.
+	 *
+	 * @param cache
+	 * @return
+	 */
+	public JSCDaemon cache(final JSCCompilerCache cache) {
+		this.cache = cache;
+		return this;
+	}
+
+	/**
+	 * Serve the connections using the executor. The executor is not shut
+	 * down when the daemon is closed.
+	 *
+	 * @param executor
+	 * @return
+	 */
+	public JSCDaemon executor(final ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Start listening on the loopback interface.
+	 *
+	 * @param port
+	 *            the port number, or zero to use any free port
+	 * @return
+	 * @throws IOException
+	 *             if the port can not be opened
+	 */
+	public synchronized JSCDaemon start(final int port) throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("The daemon is already started");
+		}
+		if (executor == null) {
+			executor = defaultExecutor();
+			ownExecutor = true;
+		}
+		server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		final ServerSocket listening = server;
+		executor.execute(() -> accept(listening));
+		return this;
+	}
+
+	/**
+	 * Create an executor using virtual threads if the runtime has them. The
+	 * library is compiled for an earlier release, the method is looked up
+	 * reflectively.
+	 */
+	private static ExecutorService defaultExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				final Thread thread = new Thread(runnable, "jscglib-daemon");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * @return the port the daemon listens on
+	 */
+	public synchronized int getPort() {
+		if (server == null) {
+			throw new IllegalStateException("The daemon is not started");
+		}
+		return server.getLocalPort();
+	}
+
+	/**
+	 * @return the secret the clients have to present when they connect
+	 */
+	public String getToken() {
+		return token;
+	}
+
+	/**
+	 * Stop listening and close the open connections. The jobs being executed
+	 * are finished, but their results are not sent.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (server == null) {
+			return;
+		}
+		server.close();
+		for (final Socket connection : connections) {
+			connection.close();
+		}
+		server = null;
+		if (ownExecutor) {
+			executor.shutdown();
+			executor = null;
+			ownExecutor = false;
+		}
+	}
+
+	private void accept(final ServerSocket listening) {
+		while (!listening.isClosed()) {
+			final Socket socket;
+			try {
+				socket = listening.accept();
+			} catch (IOException e) {
+				// the server socket was closed
+				return;
+			}
+			connections.add(socket);
+			executor.execute(() -> serve(socket));
+		}
+	}
+
+	private void serve(final Socket socket) {
+		try (Socket connection = socket) {
+			final DataInputStream in = new DataInputStream(
+					new BufferedInputStream(connection.getInputStream()));
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(connection.getOutputStream()));
+			connection.setSoTimeout(HANDSHAKE_TIMEOUT);
+			final byte[] presented = new byte[TOKEN_LENGTH];
+			in.readFully(presented);
+			if (!MessageDigest.isEqual(
+					token.getBytes(StandardCharsets.US_ASCII), presented)) {
+				return;
+			}
+			connection.setSoTimeout(0);
+			while (true) {
+				final byte[] frame;
+				try {
+					frame = readFrame(in);
+				} catch (EOFException e) {
+					return;
+				}
+				final Object request;
+				try (ObjectInputStream objects = new ObjectInputStream(
+						new ByteArrayInputStream(frame))) {
+					objects.setObjectInputFilter(FILTER);
+					request = objects.readObject();
+				}
+				if (!(request instanceof Request)) {
+					return;
+				}
+				writeFrame(out, execute((Request) request));
+			}
+		} catch (IOException | ClassNotFoundException e) {
+			// the client disconnected or sent something that is not a job
+		} finally {
+			connections.remove(socket);
+		}
+	}
+
+	/**
+	 * Read a frame: the size of the serialized object and the bytes.
+	 */
+	static byte[] readFrame(final DataInputStream in) throws IOException {
+		final int size = in.readInt();
+		if (size < 0 || size > MAX_FRAME_SIZE) {
+			throw new IOException("The frame size " + size
+					+ " is not between 0 and " + MAX_FRAME_SIZE);
+		}
+		final byte[] frame = new byte[size];
+		in.readFully(frame);
+		return frame;
+	}
+
+	/**
+	 * Serialize the object and write it as a frame.
+	 */
+	static void writeFrame(final DataOutputStream out, final Serializable object)
+			throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+			objects.writeObject(object);
+		}
+		if (bytes.size() > MAX_FRAME_SIZE) {
+			throw new IOException("The size " + bytes.size()
+					+ " of the serialized object is larger than "
+					+ MAX_FRAME_SIZE);
+		}
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+		out.flush();
+	}
+
+	private Response execute(final Request request) {
+		try {
+			if (request.compile) {
+				final JSCCompiler compiler = new JSCCompiler().cache(cache)
+						.options(request.options.toArray(new String[0]));
+				return new Response(null, new HashMap<>(
+						compiler.compileToBytecode(request.classes)));
+			}
+			final Map<String, String> sources = new HashMap<>();
+			for (final JSC klass : request.classes) {
+				sources.put(JSCCompiler.className(klass),
+						JSCPrinter.pprint(klass));
+			}
+			return new Response(sources, null);
+		} catch (JSCCompilationException e) {
+			return new Response(e.getClass(), e.getMessage().substring(
+					JSCCompilationException.MESSAGE.length()));
+		} catch (RuntimeException e) {
+			return new Response(e.getClass(), e.getMessage());
+		}
+	}
+
+	/**
+	 * A job sent by the client.
+	 */
+	static final class Request implements Serializable {
+		private static final long serialVersionUID = 1L;
+		final boolean compile;
+		final List<JSC> classes;
+		final List<String> options;
+
+		Request(final boolean compile, final Collection<JSC> classes,
+				final List<String> options) {
+			this.compile = compile;
+			this.classes = new ArrayList<>(classes);
+			this.options = new ArrayList<>(options);
+		}
+	}
+
+	/**
+	 * The result of a job: the rendered sources, the byte code or the error.
+	 */
+	static final class Response implements Serializable {
+		private static final long serialVersionUID = 1L;
+		final Map<String, String> sources;
+		final Map<String, byte[]> bytecodes;
+		final String errorType;
+		final String error;
+
+		Response(final Map<String, String> sources,
+				final Map<String, byte[]> bytecodes) {
+			this.sources = sources;
+			this.bytecodes = bytecodes;
+			this.errorType = null;
+			this.error = null;
+		}
+
+		Response(final Class<?> errorType, final String error) {
+			this.sources = null;
+			this.bytecodes = null;
+			this.errorType = errorType.getName();
+			this.error = error;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.javax0.jscglib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Connection to a {@link JSCDaemon} running on the same machine. The
+ * requests sent on one connection are executed one after the other, the
+ * client can be shared between threads, but the requests of the threads are
+ * serialized. Use more clients to run jobs in parallel.
+ */
+public class JSCDaemonClient implements Closeable {
+	private final Socket socket;
+	private final DataOutputStream out;
+	private final DataInputStream in;
+
+	/**
+	 * Connect to the daemon.
+	 *
+	 * @param port
+	 *            the port of the daemon on the loopback interface
+	 * @param token
+	 *            the token of the daemon
+	 * @throws IllegalArgumentException
+	 *             if the token is not a token of a daemon
+	 * @throws IOException
+	 *             if the daemon can not be reached
+	 */
+	public JSCDaemonClient(final int port, final String token)
+			throws IOException {
+		if (token == null || token.length() != JSCDaemon.TOKEN_LENGTH) {
+			throw new IllegalArgumentException("'" + token
+					+ "' is not a token of a daemon");
+		}
+		socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					socket.getOutputStream()));
+			out.write(token.getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			in = new DataInputStream(new BufferedInputStream(
+					socket.getInputStream()));
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Render the classes in the daemon.
+	 *
+	 * @param klasses
+	 *            JSC objects of type {@link JSCType#CLASS}
+	 * @return the source code keyed by the fully qualified class names
+	 * @throws UncheckedIOException
+	 *             if the connection to the daemon is broken
+	 */
+	public Map<String, String> render(final Collection<JSC> klasses) {
+		return send(new JSCDaemon.Request(false, klasses,
+				Arrays.<String> asList())).sources;
+	}
+
+	/**
+	 * Compile the classes together in the daemon.
+	 *
+	 * @param klasses
+	 *            JSC objects of type {@link JSCType#CLASS}
+	 * @param options
+	 *            the options passed to the Java compiler
+	 * @return the byte code of the classes keyed by the binary names, see
+	 *         {@link JSCCompiler#compileToBytecode(Collection)}
+	 * @throws JSCCompilationException
+	 *             when the code can not be compiled
+	 * @throws UncheckedIOException
+	 *             if the connection to the daemon is broken
+	 */
+	public Map<String, byte[]> compile(final Collection<JSC> klasses,
+			final String... options) {
+		return send(new JSCDaemon.Request(true, klasses, Arrays.asList(options))).bytecodes;
+	}
+
+	private synchronized JSCDaemon.Response send(
+			final JSCDaemon.Request request) {
+		final Object response;
+		try {
+			JSCDaemon.writeFrame(out, request);
+			try (ObjectInputStream objects = new ObjectInputStream(
+					new ByteArrayInputStream(JSCDaemon.readFrame(in)))) {
+				response = objects.readObject();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(
+					"The daemon sent an unknown response", e);
+		}
+		if (!(response instanceof JSCDaemon.Response)) {
+			throw new IllegalStateException(
+					"The daemon sent an unknown response");
+		}
+		final JSCDaemon.Response result = (JSCDaemon.Response) response;
+		if (result.errorType == null) {
+			return result;
+		}
+		if (result.errorType.equals(JSCCompilationException.class.getName())) {
+			throw new JSCCompilationException(result.error);
+		}
+		if (result.errorType
+				.equals(IllegalArgumentException.class.getName())) {
+			throw new IllegalArgumentException(result.error);
+		}
+		throw new IllegalStateException("The daemon failed with "
+				+ result.errorType + ": " + result.error);
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+}
@@ -0,0 +1,106 @@
+package com.javax0.jscglib;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the code generation. The events are enabled
+ * and configured the same way as the events of the JDK, using the names
+ * {@code com.javax0.jscglib.Render}, {@code com.javax0.jscglib.Compile},
+ * {@code com.javax0.jscglib.CacheLookup} and
+ * {@code com.javax0.jscglib.DefineClass}, for example in a {@code .jfc} file.
+ * <p>
+ * The event objects are created and begun unconditionally, which costs
+ * nothing measurable when the recording is off: the fields are filled only
+ * after {@code shouldCommit()} returned {@code true}.
+ */
+final class JSCEvents {
+
+	private JSCEvents() {
+	}
+
+	private static final String CATEGORY = "jscglib";
+
+	@Name("com.javax0.jscglib.Render")
+	@Label("Render")
+	@Description("Rendering a JSC tree to Java source code")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class Render extends Event {
+		@Label("Name")
+		@Description("The fully qualified name of the class, or the identifier of the rendered node")
+		String name;
+
+		@Label("Type")
+		String type;
+
+		@Label("Characters")
+		long characters;
+
+		@Label("Nodes")
+		int nodes;
+	}
+
+	@Name("com.javax0.jscglib.Compile")
+	@Label("Compile")
+	@Description("Compiling a batch of classes with the Java compiler")
+	@Category(CATEGORY)
+	static final class Compile extends Event {
+		@Label("Classes")
+		@Description("The names of the classes compiled together")
+		String classes;
+
+		@Label("Class Count")
+		int classCount;
+
+		@Label("Successful")
+		boolean successful;
+	}
+
+	@Name("com.javax0.jscglib.CacheLookup")
+	@Label("Compiler Cache Lookup")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class CacheLookup extends Event {
+		@Label("Key")
+		String key;
+
+		@Label("Hit")
+		boolean hit;
+
+		@Label("Tier")
+		@Description("memory, disk or none when the lookup was a miss")
+		String tier;
+	}
+
+	@Name("com.javax0.jscglib.DefineClass")
+	@Label("Define Class")
+	@Description("Defining a class from the compiled byte code")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class DefineClass extends Event {
+		@Label("Class")
+		String className;
+
+		@Label("Size")
+		@DataAmount
+		int size;
+	}
+
+	/**
+	 * @param code
+	 * @return the fully qualified name of a class, or the identifier of any
+	 *         other node
+	 */
+	static String name(final JSC code) {
+		if (code.getJscType() == JSCType.CLASS && code.getPackge() != null) {
+			return code.getPackge() + "." + code.getIdentifier();
+		}
+		return code.getIdentifier();
+	}
+}
@@ -0,0 +1,856 @@
+package com.javax0.jscglib;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A typed Java expression used in the {@link JSCStatement}s. Unlike the
+ * command strings the structure of an expression is known, therefore it can
+ * be validated, constant folded and translated to byte code without the Java
+ * compiler.
+ * <p>
+ * Expressions are immutable and can be shared between statements, methods
+ * and threads. They are created by the static methods of this class:
+ *
+ * <pre>
+ * JSCExpression e = plus(local(&quot;a&quot;), times(field(&quot;b&quot;), literal(2)));
+ * </pre>
+ */
+public final class JSCExpression implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The kind of the expression.
+	 */
+	public enum Kind {
+		LITERAL, LOCAL, FIELD, STATIC_FIELD, CALL, STATIC_CALL, NEW, BINARY, UNARY
+	}
+
+	/**
+	 * The operators of the binary and unary expressions with their Java
+	 * precedence, the higher binds stronger.
+	 */
+	public enum Operator {
+		TIMES("*", 12), DIVIDE("/", 12), REMAINDER("%", 12), PLUS("+", 11), MINUS(
+				"-", 11), LT("<", 9), LE("<=", 9), GT(">", 9), GE(">=", 9), EQ(
+				"==", 8), NE("!=", 8), AND("&&", 4), OR("||", 3), NOT("!", 14), NEGATE(
+				"-", 14);
+
+		private final String symbol;
+		private final int precedence;
+
+		private Operator(final String symbol, final int precedence) {
+			this.symbol = symbol;
+			this.precedence = precedence;
+		}
+
+		public String getSymbol() {
+			return symbol;
+		}
+
+		boolean isArithmetic() {
+			return precedence >= 11 && precedence <= 12;
+		}
+
+		boolean isComparison() {
+			return precedence == 8 || precedence == 9;
+		}
+
+		boolean isLogical() {
+			return this == AND || this == OR || this == NOT;
+		}
+	}
+
+	private static final int PRIMARY = 16;
+
+	private final Kind kind;
+	private final Operator operator;
+	private final String type;
+	private final String name;
+	private final Object value;
+	private final JSCExpression target;
+	private final List<JSCExpression> operands;
+	private transient Fingerprint fingerprint = null;
+
+	private JSCExpression(final Kind kind, final Operator operator,
+			final String type, final String name, final Object value,
+			final JSCExpression target, final JSCExpression... operands) {
+		this.kind = kind;
+		this.operator = operator;
+		this.type = type;
+		this.name = name;
+		this.value = value;
+		this.target = target;
+		this.operands = Collections.unmodifiableList(new ArrayList<>(Arrays
+				.asList(operands)));
+		for (final JSCExpression operand : operands) {
+			if (operand == null) {
+				throw new IllegalArgumentException(
+						"The operand of an expression can not be null");
+			}
+		}
+	}
+
+	private static JSCExpression constant(final Object value) {
+		return new JSCExpression(Kind.LITERAL, null, null, null, value, null);
+	}
+
+	public static JSCExpression literal(final int value) {
+		return constant(value);
+	}
+
+	public static JSCExpression literal(final long value) {
+		return constant(value);
+	}
+
+	public static JSCExpression literal(final double value) {
+		return constant(value);
+	}
+
+	public static JSCExpression literal(final boolean value) {
+		return constant(value);
+	}
+
+	/**
+	 * @param value
+	 *            the value of the string literal, it is escaped when printed
+	 * @return
+	 */
+	public static JSCExpression literal(final String value) {
+		if (value == null) {
+			throw new IllegalArgumentException(
+					"Use nullLiteral() for the null literal");
+		}
+		return constant(value);
+	}
+
+	public static JSCExpression nullLiteral() {
+		return constant(null);
+	}
+
+	/**
+	 * @param name
+	 *            the name of a local variable or of an argument
+	 * @return
+	 */
+	public static JSCExpression local(final String name) {
+		return new JSCExpression(Kind.LOCAL, null, null, identifier(name),
+				null, null);
+	}
+
+	/**
+	 * @param name
+	 *            the name of a field of {@code this} object
+	 * @return
+	 */
+	public static JSCExpression field(final String name) {
+		return new JSCExpression(Kind.FIELD, null, null, identifier(name),
+				null, null);
+	}
+
+	/**
+	 * @param target
+	 *            the object the field belongs to
+	 * @param name
+	 * @return
+	 */
+	public static JSCExpression field(final JSCExpression target,
+			final String name) {
+		return new JSCExpression(Kind.FIELD, null, null, identifier(name),
+				null, notNull(target));
+	}
+
+	/**
+	 * @param type
+	 *            the name of the class declaring the static field
+	 * @param name
+	 * @return
+	 */
+	public static JSCExpression staticField(final String type,
+			final String name) {
+		return new JSCExpression(Kind.STATIC_FIELD, null, notNull(type),
+				identifier(name), null, null);
+	}
+
+	/**
+	 * Call a method of {@code this} object.
+	 *
+	 * @param name
+	 * @param arguments
+	 * @return
+	 */
+	public static JSCExpression call(final String name,
+			final JSCExpression... arguments) {
+		return new JSCExpression(Kind.CALL, null, null, identifier(name), null,
+				null, arguments);
+	}
+
+	public static JSCExpression call(final JSCExpression target,
+			final String name, final JSCExpression... arguments) {
+		return new JSCExpression(Kind.CALL, null, null, identifier(name), null,
+				notNull(target), arguments);
+	}
+
+	public static JSCExpression staticCall(final String type,
+			final String name, final JSCExpression... arguments) {
+		return new JSCExpression(Kind.STATIC_CALL, null, notNull(type),
+				identifier(name), null, null, arguments);
+	}
+
+	public static JSCExpression staticCall(final Class<?> type,
+			final String name, final JSCExpression... arguments) {
+		return staticCall(TypeNames.of(type), name, arguments);
+	}
+
+	/**
+	 * Create a new object.
+	 *
+	 * @param type
+	 * @param arguments
+	 *            the arguments of the constructor
+	 * @return
+	 */
+	public static JSCExpression newInstance(final String type,
+			final JSCExpression... arguments) {
+		return new JSCExpression(Kind.NEW, null, notNull(type), null, null,
+				null, arguments);
+	}
+
+	public static JSCExpression newInstance(final Class<?> type,
+			final JSCExpression... arguments) {
+		return newInstance(TypeNames.of(type), arguments);
+	}
+
+	/**
+	 * @param operator
+	 *            one of the binary operators
+	 * @param left
+	 * @param right
+	 * @return
+	 */
+	public static JSCExpression binary(final Operator operator,
+			final JSCExpression left, final JSCExpression right) {
+		if (operator == Operator.NOT || operator == Operator.NEGATE) {
+			throw new IllegalArgumentException("'" + operator.name()
+					+ "' is not a binary operator");
+		}
+		return new JSCExpression(Kind.BINARY, operator, null, null, null, null,
+				left, right);
+	}
+
+	public static JSCExpression plus(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.PLUS, left, right);
+	}
+
+	public static JSCExpression minus(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.MINUS, left, right);
+	}
+
+	public static JSCExpression times(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.TIMES, left, right);
+	}
+
+	public static JSCExpression divide(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.DIVIDE, left, right);
+	}
+
+	public static JSCExpression remainder(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.REMAINDER, left, right);
+	}
+
+	public static JSCExpression lt(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.LT, left, right);
+	}
+
+	public static JSCExpression le(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.LE, left, right);
+	}
+
+	public static JSCExpression gt(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.GT, left, right);
+	}
+
+	public static JSCExpression ge(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.GE, left, right);
+	}
+
+	public static JSCExpression eq(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.EQ, left, right);
+	}
+
+	public static JSCExpression ne(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.NE, left, right);
+	}
+
+	public static JSCExpression and(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.AND, left, right);
+	}
+
+	public static JSCExpression or(final JSCExpression left,
+			final JSCExpression right) {
+		return binary(Operator.OR, left, right);
+	}
+
+	public static JSCExpression not(final JSCExpression operand) {
+		return new JSCExpression(Kind.UNARY, Operator.NOT, null, null, null,
+				null, operand);
+	}
+
+	public static JSCExpression negate(final JSCExpression operand) {
+		return new JSCExpression(Kind.UNARY, Operator.NEGATE, null, null, null,
+				null, operand);
+	}
+
+	private static String identifier(final String name) {
+		if (!BytecodeBackend.isIdentifier(name)) {
+			throw new IllegalArgumentException("'" + name
+					+ "' is not a valid Java identifier");
+		}
+		return name;
+	}
+
+	private static <T> T notNull(final T value) {
+		if (value == null) {
+			throw new IllegalArgumentException(
+					"The argument of the expression can not be null");
+		}
+		return value;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the operator of a binary or unary expression, {@code null}
+	 *         otherwise
+	 */
+	public Operator getOperator() {
+		return operator;
+	}
+
+	/**
+	 * @return the type of a static field, static call or new instance
+	 *         expression, {@code null} otherwise
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @return the name of the local variable, field or method
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the value of a literal: an {@link Integer}, {@link Long},
+	 *         {@link Double}, {@link Boolean}, {@link String} or {@code null}
+	 */
+	public Object getValue() {
+		return value;
+	}
+
+	/**
+	 * @return the object of a field access or a method call, {@code null} if
+	 *         it is {@code this}
+	 */
+	public JSCExpression getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return the operands of an operator or the arguments of a call
+	 */
+	public List<JSCExpression> getOperands() {
+		return operands;
+	}
+
+	/**
+	 * @return {@code true} if the expression is a literal
+	 */
+	public boolean isConstant() {
+		return kind == Kind.LITERAL;
+	}
+
+	/**
+	 * A constant expression in the sense of the Java language is built only
+	 * from literals other than {@code null} and operators. The compiler
+	 * decides the reachability of the statements using the value of these
+	 * expressions, other expressions are not constant even if they can be
+	 * folded.
+	 *
+	 * @param value
+	 * @return {@code true} if the expression is a constant expression with
+	 *         the given boolean value
+	 */
+	boolean isConstantExpression(final boolean value) {
+		if (!isConstantExpression()) {
+			return false;
+		}
+		final JSCExpression folded = fold();
+		return folded.isConstant()
+				&& Boolean.valueOf(value).equals(folded.getValue());
+	}
+
+	private boolean isConstantExpression() {
+		switch (kind) {
+		case LITERAL:
+			return value != null;
+		case UNARY:
+		case BINARY:
+			for (final JSCExpression operand : operands) {
+				if (!operand.isConstantExpression()) {
+					return false;
+				}
+			}
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Evaluate the sub expressions that have only literal operands. The
+	 * arithmetic follows the Java rules, for example the {@code int}
+	 * operations overflow silently. Integer division by zero is not folded,
+	 * it throws exception when the code runs. The logical operators with a
+	 * constant left operand are reduced even if the right operand is not
+	 * constant.
+	 *
+	 * @return the folded expression, or {@code this} if there is nothing to
+	 *         fold
+	 */
+	public JSCExpression fold() {
+		switch (kind) {
+		case BINARY:
+			return foldBinary();
+		case UNARY:
+			return foldUnary();
+		case CALL:
+		case STATIC_CALL:
+		case NEW:
+		case FIELD:
+			return foldOperands();
+		default:
+			return this;
+		}
+	}
+
+	private JSCExpression foldOperands() {
+		boolean changed = false;
+		final JSCExpression foldedTarget = target == null ? null : target
+				.fold();
+		changed |= foldedTarget != target;
+		final JSCExpression[] folded = new JSCExpression[operands.size()];
+		for (int i = 0; i < folded.length; i++) {
+			folded[i] = operands.get(i).fold();
+			changed |= folded[i] != operands.get(i);
+		}
+		return changed ? new JSCExpression(kind, operator, type, name, value,
+				foldedTarget, folded) : this;
+	}
+
+	private JSCExpression foldUnary() {
+		final JSCExpression operand = operands.get(0).fold();
+		if (operand.isConstant()) {
+			final Object v = operand.value;
+			if (operator == Operator.NOT && v instanceof Boolean) {
+				return constant(!(Boolean) v);
+			}
+			if (operator == Operator.NEGATE) {
+				if (v instanceof Integer) {
+					return constant(-(Integer) v);
+				}
+				if (v instanceof Long) {
+					return constant(-(Long) v);
+				}
+				if (v instanceof Double) {
+					return constant(-(Double) v);
+				}
+			}
+		}
+		return operand == operands.get(0) ? this : new JSCExpression(kind,
+				operator, null, null, null, null, operand);
+	}
+
+	private JSCExpression foldBinary() {
+		final JSCExpression left = operands.get(0).fold();
+		if (operator == Operator.AND || operator == Operator.OR) {
+			if (left.isConstant() && left.value instanceof Boolean) {
+				final boolean l = (Boolean) left.value;
+				if (operator == Operator.AND) {
+					return l ? operands.get(1).fold() : constant(false);
+				}
+				return l ? constant(true) : operands.get(1).fold();
+			}
+		}
+		final JSCExpression right = operands.get(1).fold();
+		if (left.isConstant() && right.isConstant()) {
+			final Object result = evaluate(operator, left.value, right.value);
+			if (result != NOT_CONSTANT) {
+				return constant(result);
+			}
+		}
+		return left == operands.get(0) && right == operands.get(1) ? this
+				: new JSCExpression(kind, operator, null, null, null, null,
+						left, right);
+	}
+
+	private static final Object NOT_CONSTANT = new Object();
+
+	private static Object evaluate(final Operator operator, final Object l,
+			final Object r) {
+		if (operator == Operator.PLUS
+				&& (l instanceof String || r instanceof String)) {
+			if (l instanceof Double || r instanceof Double) {
+				// the string form of double literals is printed differently
+				// by the Java compiler and by Double.toString() in edge cases
+				return NOT_CONSTANT;
+			}
+			return String.valueOf(l) + String.valueOf(r);
+		}
+		if (l instanceof Boolean && r instanceof Boolean) {
+			final boolean a = (Boolean) l, b = (Boolean) r;
+			switch (operator) {
+			case EQ:
+				return a == b;
+			case NE:
+				return a != b;
+			case AND:
+				return a && b;
+			case OR:
+				return a || b;
+			default:
+				return NOT_CONSTANT;
+			}
+		}
+		if (!(l instanceof Number) || !(r instanceof Number)) {
+			return NOT_CONSTANT;
+		}
+		if (l instanceof Double || r instanceof Double) {
+			final double a = ((Number) l).doubleValue(), b = ((Number) r)
+					.doubleValue();
+			switch (operator) {
+			case PLUS:
+				return a + b;
+			case MINUS:
+				return a - b;
+			case TIMES:
+				return a * b;
+			case DIVIDE:
+				return a / b;
+			case REMAINDER:
+				return a % b;
+			case LT:
+				return a < b;
+			case LE:
+				return a <= b;
+			case GT:
+				return a > b;
+			case GE:
+				return a >= b;
+			case EQ:
+				return a == b;
+			case NE:
+				return a != b;
+			default:
+				return NOT_CONSTANT;
+			}
+		}
+		if (l instanceof Long || r instanceof Long) {
+			final long a = ((Number) l).longValue(), b = ((Number) r)
+					.longValue();
+			switch (operator) {
+			case PLUS:
+				return a + b;
+			case MINUS:
+				return a - b;
+			case TIMES:
+				return a * b;
+			case DIVIDE:
+				return b == 0 ? NOT_CONSTANT : a / b;
+			case REMAINDER:
+				return b == 0 ? NOT_CONSTANT : a % b;
+			default:
+				return compare(operator, Long.compare(a, b));
+			}
+		}
+		final int a = (Integer) l, b = (Integer) r;
+		switch (operator) {
+		case PLUS:
+			return a + b;
+		case MINUS:
+			return a - b;
+		case TIMES:
+			return a * b;
+		case DIVIDE:
+			return b == 0 ? NOT_CONSTANT : a / b;
+		case REMAINDER:
+			return b == 0 ? NOT_CONSTANT : a % b;
+		default:
+			return compare(operator, Integer.compare(a, b));
+		}
+	}
+
+	private static Object compare(final Operator operator, final int c) {
+		switch (operator) {
+		case LT:
+			return c < 0;
+		case LE:
+			return c <= 0;
+		case GT:
+			return c > 0;
+		case GE:
+			return c >= 0;
+		case EQ:
+			return c == 0;
+		case NE:
+			return c != 0;
+		default:
+			return NOT_CONSTANT;
+		}
+	}
+
+	/**
+	 * Get the structural hash of the expression. Equal expressions have the
+	 * same fingerprint, thus method bodies can be compared and cached.
+	 *
+	 * @return
+	 */
+	public Fingerprint fingerprint() {
+		if (fingerprint == null) {
+			final Fingerprint.Hasher hasher = new Fingerprint.Hasher();
+			hasher.put(kind.name()).put(operator == null ? null : operator
+					.name()).put(type).put(name)
+					.put(value == null ? null : value.getClass().getName())
+					.put(value == null ? null : value.toString())
+					.put(target != null);
+			if (target != null) {
+				hasher.put(target.fingerprint());
+			}
+			hasher.put(operands.size());
+			for (final JSCExpression operand : operands) {
+				hasher.put(operand.fingerprint());
+			}
+			fingerprint = hasher.fingerprint();
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Compare the expressions structurally. The fingerprints are compared
+	 * first to tell different expressions apart quickly, equal fingerprints
+	 * are confirmed comparing the parts, because the fingerprints may collide.
+	 */
+	@Override
+	public boolean equals(final Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof JSCExpression)) {
+			return false;
+		}
+		final JSCExpression that = (JSCExpression) other;
+		return fingerprint().equals(that.fingerprint()) && kind == that.kind
+				&& operator == that.operator && Objects.equals(type, that.type)
+				&& Objects.equals(name, that.name)
+				&& Objects.equals(value, that.value)
+				&& Objects.equals(target, that.target)
+				&& operands.equals(that.operands);
+	}
+
+	@Override
+	public int hashCode() {
+		return fingerprint().hashCode();
+	}
+
+	private int precedence() {
+		if (kind == Kind.BINARY || kind == Kind.UNARY) {
+			return operator.precedence;
+		}
+		if (kind == Kind.LITERAL && isNegative(value)) {
+			return Operator.NEGATE.precedence;
+		}
+		return PRIMARY;
+	}
+
+	/**
+	 * @return {@code true} if the literal is printed with a leading minus
+	 *         sign, including {@code -0.0}
+	 */
+	private static boolean isNegative(final Object value) {
+		if (value instanceof Double) {
+			return Double.doubleToRawLongBits((Double) value) < 0;
+		}
+		return value instanceof Number && ((Number) value).doubleValue() < 0;
+	}
+
+	/**
+	 * @return the Java source code of the expression
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		print(sb);
+		return sb.toString();
+	}
+
+	private void print(final StringBuilder sb) {
+		switch (kind) {
+		case LITERAL:
+			printLiteral(sb);
+			break;
+		case LOCAL:
+			sb.append(name);
+			break;
+		case FIELD:
+			if (target == null) {
+				sb.append("this");
+			} else {
+				target.printOperand(sb, PRIMARY);
+			}
+			sb.append('.').append(name);
+			break;
+		case STATIC_FIELD:
+			sb.append(type).append('.').append(name);
+			break;
+		case CALL:
+			if (target != null) {
+				target.printOperand(sb, PRIMARY);
+				sb.append('.');
+			}
+			sb.append(name);
+			printArguments(sb);
+			break;
+		case STATIC_CALL:
+			sb.append(type).append('.').append(name);
+			printArguments(sb);
+			break;
+		case NEW:
+			sb.append("new ").append(type);
+			printArguments(sb);
+			break;
+		case UNARY:
+			sb.append(operator.symbol);
+			// avoid printing "- -1" as "--1"
+			final JSCExpression operand = operands.get(0);
+			if (operand.precedence() == operator.precedence) {
+				sb.append('(');
+				operand.print(sb);
+				sb.append(')');
+			} else {
+				operand.printOperand(sb, operator.precedence);
+			}
+			break;
+		case BINARY:
+			operands.get(0).printOperand(sb, operator.precedence);
+			sb.append(' ').append(operator.symbol).append(' ');
+			operands.get(1).printOperand(sb, operator.precedence + 1);
+			break;
+		default:
+			throw new IllegalStateException("Unknown expression kind "
+					+ kind.name());
+		}
+	}
+
+	private void printOperand(final StringBuilder sb, final int precedence) {
+		if (precedence() < precedence) {
+			sb.append('(');
+			print(sb);
+			sb.append(')');
+		} else {
+			print(sb);
+		}
+	}
+
+	private void printArguments(final StringBuilder sb) {
+		sb.append('(');
+		String separator = "";
+		for (final JSCExpression argument : operands) {
+			sb.append(separator);
+			argument.print(sb);
+			separator = ", ";
+		}
+		sb.append(')');
+	}
+
+	private void printLiteral(final StringBuilder sb) {
+		if (value == null) {
+			sb.append("null");
+		} else if (value instanceof String) {
+			sb.append('"');
+			final String s = (String) value;
+			for (int i = 0; i < s.length(); i++) {
+				escape(sb, s.charAt(i));
+			}
+			sb.append('"');
+		} else if (value instanceof Long) {
+			sb.append(value).append('L');
+		} else if (value instanceof Double) {
+			final double d = (Double) value;
+			if (Double.isNaN(d)) {
+				sb.append("(0.0 / 0.0)");
+			} else if (Double.isInfinite(d)) {
+				sb.append(d > 0 ? "(1.0 / 0.0)" : "(-1.0 / 0.0)");
+			} else {
+				sb.append(value);
+			}
+		} else {
+			sb.append(value);
+		}
+	}
+
+	private static void escape(final StringBuilder sb, final char c) {
+		switch (c) {
+		case '"':
+			sb.append("\\\"");
+			break;
+		case '\\':
+			sb.append("\\\\");
+			break;
+		case '\n':
+			sb.append("\\n");
+			break;
+		case '\r':
+			sb.append("\\r");
+			break;
+		case '\t':
+			sb.append("\\t");
+			break;
+		case '\b':
+			sb.append("\\b");
+			break;
+		case '\f':
+			sb.append("\\f");
+			break;
+		default:
+			// unicode escapes of line terminators would break the literal,
+			// control characters are written as octal escapes
+			if (c < ' ' || c == 0x7f) {
+				sb.append(String.format("\\%03o", (int) c));
+			} else if (c > '~') {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.javax0.jscglib;
+
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of the {@link JSCListener}s. When there is no listener registered
+ * the printer and the compiler do not collect any statistics.
+ */
+public final class JSCInstrumentation {
+
+	private JSCInstrumentation() {
+	}
+
+	private static final CopyOnWriteArrayList<JSCListener> listeners = new CopyOnWriteArrayList<>();
+
+	static {
+		for (final JSCListener listener : ServiceLoader.load(
+				JSCListener.class, JSCInstrumentation.class.getClassLoader())) {
+			listeners.add(listener);
+		}
+	}
+
+	public static void addListener(final JSCListener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	public static void removeListener(final JSCListener listener) {
+		listeners.remove(listener);
+	}
+
+	static boolean isActive() {
+		return !listeners.isEmpty();
+	}
+
+	static void rendered(final JSC code, final RenderStatistics statistics) {
+		for (final JSCListener listener : listeners) {
+			listener.rendered(code, statistics);
+		}
+	}
+
+	static void compiled(final int classes, final long nanos,
+			final boolean successful) {
+		for (final JSCListener listener : listeners) {
+			listener.compiled(classes, nanos, successful);
+		}
+	}
+
+	static void cacheLookup(final boolean hit) {
+		for (final JSCListener listener : listeners) {
+			listener.cacheLookup(hit);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.javax0.jscglib;
+
+/**
+ * Receives the events of the code generation. Listeners are registered
+ * calling {@link JSCInstrumentation#addListener(JSCListener)} or by listing
+ * the implementing class in the file
+ * {@code META-INF/services/com.javax0.jscglib.JSCListener}, in which case the
+ * listener is created using {@link java.util.ServiceLoader} and registered
+ * automatically.
+ * <p>
+ * The methods are called on the thread that generates the code, possibly on
+ * many threads at the same time. They should return fast.
+ *
+ * @see JSCMetrics
+ */
+public interface JSCListener {
+
+	/**
+	 * Called after a JSC tree was printed by one of the public methods of
+	 * {@link JSCPrinter}.
+	 *
+	 * @param code
+	 *            the root of the printed tree
+	 * @param statistics
+	 *            what was rendered and how long it took
+	 */
+	void rendered(JSC code, RenderStatistics statistics);
+
+	/**
+	 * Called after the Java compiler was invoked by {@link JSCCompiler}.
+	 *
+	 * @param classes
+	 *            the number of the classes compiled together
+	 * @param nanos
+	 *            the time of the compilation in nanoseconds
+	 * @param successful
+	 *            {@code false} if the code could not be compiled
+	 */
+	void compiled(int classes, long nanos, boolean successful);
+
+	/**
+	 * Called after {@link JSCCompilerCache} looked up a compilation result.
+	 *
+	 * @param hit
+	 *            {@code true} if the byte code was found in the cache
+	 */
+	void cacheLookup(boolean hit);
+}
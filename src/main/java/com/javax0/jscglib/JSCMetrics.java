@@ -0,0 +1,279 @@
+package com.javax0.jscglib;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory collector of the code generation metrics. Register an instance
+ * with {@link JSCInstrumentation#addListener(JSCListener)} and call
+ * {@link #snapshot()} to get the values collected so far.
+ *
+ * <pre>
+ * JSCMetrics metrics = new JSCMetrics();
+ * JSCInstrumentation.addListener(metrics);
+ * ...
+ * System.out.println(metrics.snapshot());
+ * </pre>
+ */
+public class JSCMetrics implements JSCListener {
+	private final AtomicLongArray nodes = new AtomicLongArray(
+			JSCType.values().length);
+	private final AtomicLong renders = new AtomicLong();
+	private final AtomicLong characters = new AtomicLong();
+	private final AtomicLong renderNanos = new AtomicLong();
+	private final AtomicLong compilations = new AtomicLong();
+	private final AtomicLong failedCompilations = new AtomicLong();
+	private final AtomicLong compiledClasses = new AtomicLong();
+	private final AtomicLong compileNanos = new AtomicLong();
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
+	private final ConcurrentMap<String, ClassMetrics> classes = new ConcurrentHashMap<>();
+
+	@Override
+	public void rendered(final JSC code, final RenderStatistics statistics) {
+		for (final JSCType type : JSCType.values()) {
+			nodes.addAndGet(type.ordinal(), statistics.getNodes(type));
+		}
+		renders.incrementAndGet();
+		characters.addAndGet(statistics.getCharacters());
+		renderNanos.addAndGet(statistics.getNanos());
+		if (code.getJscType() == JSCType.CLASS && code.getIdentifier() != null) {
+			classMetrics(JSCCompiler.className(code)).add(statistics);
+		}
+	}
+
+	private ClassMetrics classMetrics(final String name) {
+		ClassMetrics metrics = classes.get(name);
+		if (metrics == null) {
+			final ClassMetrics newMetrics = new ClassMetrics();
+			metrics = classes.putIfAbsent(name, newMetrics);
+			if (metrics == null) {
+				metrics = newMetrics;
+			}
+		}
+		return metrics;
+	}
+
+	@Override
+	public void compiled(final int classes, final long nanos,
+			final boolean successful) {
+		compilations.incrementAndGet();
+		if (!successful) {
+			failedCompilations.incrementAndGet();
+		}
+		compiledClasses.addAndGet(classes);
+		compileNanos.addAndGet(nanos);
+	}
+
+	@Override
+	public void cacheLookup(final boolean hit) {
+		(hit ? cacheHits : cacheMisses).incrementAndGet();
+	}
+
+	/**
+	 * @return the values collected so far. Later events do not change the
+	 *         returned object.
+	 */
+	public Snapshot snapshot() {
+		final Map<JSCType, Long> nodeCounts = new EnumMap<>(JSCType.class);
+		for (final JSCType type : JSCType.values()) {
+			nodeCounts.put(type, nodes.get(type.ordinal()));
+		}
+		final Map<String, ClassSnapshot> classSnapshots = new TreeMap<>();
+		for (final Map.Entry<String, ClassMetrics> entry : classes.entrySet()) {
+			classSnapshots.put(entry.getKey(), entry.getValue().snapshot());
+		}
+		return new Snapshot(nodeCounts, renders.get(), characters.get(),
+				renderNanos.get(), compilations.get(),
+				failedCompilations.get(), compiledClasses.get(),
+				compileNanos.get(), cacheHits.get(), cacheMisses.get(),
+				classSnapshots);
+	}
+
+	private static class ClassMetrics {
+		private final AtomicLong renders = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+		private final AtomicLong characters = new AtomicLong();
+
+		void add(final RenderStatistics statistics) {
+			renders.incrementAndGet();
+			nanos.addAndGet(statistics.getNanos());
+			characters.addAndGet(statistics.getCharacters());
+		}
+
+		ClassSnapshot snapshot() {
+			return new ClassSnapshot(renders.get(), nanos.get(),
+					characters.get());
+		}
+	}
+
+	/**
+	 * The rendering metrics of one class.
+	 */
+	public static final class ClassSnapshot {
+		private final long renders;
+		private final long nanos;
+		private final long characters;
+
+		ClassSnapshot(final long renders, final long nanos,
+				final long characters) {
+			this.renders = renders;
+			this.nanos = nanos;
+			this.characters = characters;
+		}
+
+		public long getRenders() {
+			return renders;
+		}
+
+		/**
+		 * @return the total time spent rendering the class in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return the total number of the characters rendered for the class
+		 */
+		public long getCharacters() {
+			return characters;
+		}
+
+		@Override
+		public String toString() {
+			return "renders=" + renders + ", nanos=" + nanos
+					+ ", characters=" + characters;
+		}
+	}
+
+	/**
+	 * The metrics collected until the moment the snapshot was created.
+	 */
+	public static final class Snapshot {
+		private final Map<JSCType, Long> nodes;
+		private final long renders;
+		private final long characters;
+		private final long renderNanos;
+		private final long compilations;
+		private final long failedCompilations;
+		private final long compiledClasses;
+		private final long compileNanos;
+		private final long cacheHits;
+		private final long cacheMisses;
+		private final Map<String, ClassSnapshot> classes;
+
+		Snapshot(final Map<JSCType, Long> nodes, final long renders,
+				final long characters, final long renderNanos,
+				final long compilations, final long failedCompilations,
+				final long compiledClasses, final long compileNanos,
+				final long cacheHits, final long cacheMisses,
+				final Map<String, ClassSnapshot> classes) {
+			this.nodes = Collections.unmodifiableMap(nodes);
+			this.renders = renders;
+			this.characters = characters;
+			this.renderNanos = renderNanos;
+			this.compilations = compilations;
+			this.failedCompilations = failedCompilations;
+			this.compiledClasses = compiledClasses;
+			this.compileNanos = compileNanos;
+			this.cacheHits = cacheHits;
+			this.cacheMisses = cacheMisses;
+			this.classes = Collections.unmodifiableMap(classes);
+		}
+
+		/**
+		 * @return the number of the rendered nodes per type
+		 */
+		public Map<JSCType, Long> getNodes() {
+			return nodes;
+		}
+
+		public long getRenders() {
+			return renders;
+		}
+
+		public long getCharacters() {
+			return characters;
+		}
+
+		public long getRenderNanos() {
+			return renderNanos;
+		}
+
+		public long getCompilations() {
+			return compilations;
+		}
+
+		public long getFailedCompilations() {
+			return failedCompilations;
+		}
+
+		public long getCompiledClasses() {
+			return compiledClasses;
+		}
+
+		public long getCompileNanos() {
+			return compileNanos;
+		}
+
+		public long getCacheHits() {
+			return cacheHits;
+		}
+
+		public long getCacheMisses() {
+			return cacheMisses;
+		}
+
+		/**
+		 * @return the ratio of the cache hits to all cache lookups, or zero if
+		 *         there was no lookup
+		 */
+		public double getCacheHitRate() {
+			final long lookups = cacheHits + cacheMisses;
+			return lookups == 0 ? 0.0 : (double) cacheHits / lookups;
+		}
+
+		/**
+		 * @return the rendering metrics per fully qualified class name
+		 */
+		public Map<String, ClassSnapshot> getClasses() {
+			return classes;
+		}
+
+		/**
+		 * @return the metrics in a human readable multi line format
+		 */
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder();
+			sb.append("renders=").append(renders).append("\n");
+			sb.append("characters=").append(characters).append("\n");
+			sb.append("renderNanos=").append(renderNanos).append("\n");
+			for (final Map.Entry<JSCType, Long> entry : nodes.entrySet()) {
+				sb.append("nodes.").append(entry.getKey().name()).append("=")
+						.append(entry.getValue()).append("\n");
+			}
+			sb.append("compilations=").append(compilations).append("\n");
+			sb.append("failedCompilations=").append(failedCompilations)
+					.append("\n");
+			sb.append("compiledClasses=").append(compiledClasses)
+					.append("\n");
+			sb.append("compileNanos=").append(compileNanos).append("\n");
+			sb.append("cacheHits=").append(cacheHits).append("\n");
+			sb.append("cacheMisses=").append(cacheMisses).append("\n");
+			for (final Map.Entry<String, ClassSnapshot> entry : classes
+					.entrySet()) {
+				sb.append("class.").append(entry.getKey()).append(": ")
+						.append(entry.getValue()).append("\n");
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,463 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCModelWriter.BLOCK_COMMAND;
+import static com.javax0.jscglib.JSCModelWriter.CLASS_INDEX_ENTRY_SIZE;
+import static com.javax0.jscglib.JSCModelWriter.DOUBLE_VALUE;
+import static com.javax0.jscglib.JSCModelWriter.FALSE_VALUE;
+import static com.javax0.jscglib.JSCModelWriter.HEADER_SIZE;
+import static com.javax0.jscglib.JSCModelWriter.INT_VALUE;
+import static com.javax0.jscglib.JSCModelWriter.LONG_VALUE;
+import static com.javax0.jscglib.JSCModelWriter.MAGIC;
+import static com.javax0.jscglib.JSCModelWriter.MEMOIZING;
+import static com.javax0.jscglib.JSCModelWriter.NODE;
+import static com.javax0.jscglib.JSCModelWriter.NULL_VALUE;
+import static com.javax0.jscglib.JSCModelWriter.STATEMENT;
+import static com.javax0.jscglib.JSCModelWriter.STRING_VALUE;
+import static com.javax0.jscglib.JSCModelWriter.TRUE_VALUE;
+import static com.javax0.jscglib.JSCModelWriter.VERSION;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the classes written by {@link JSCModelWriter}. Only the header and
+ * the names of the classes are read when the reader is created. A class is
+ * decoded when it is requested and the strings are decoded when a class using
+ * them is read first, therefore a single class can be loaded from a large
+ * memory mapped model file quickly.
+ * <p>
+ * Every call to {@link #read(String)} builds a new tree that can be modified
+ * by the caller. The reader does not modify the buffer, the classes can be
+ * read by many threads at the same time.
+ */
+public class JSCModelReader {
+	private final ByteBuffer buffer;
+	private final int stringCount;
+	private final int stringIndex;
+	private final String[] strings;
+	private final Map<String, Integer> classes;
+
+	/**
+	 * @param buffer
+	 *            the encoded model from the position of the buffer to its
+	 *            limit
+	 * @throws IllegalArgumentException
+	 *             if the buffer does not contain a model
+	 */
+	public JSCModelReader(final ByteBuffer buffer) {
+		this.buffer = buffer.slice();
+		try {
+			if (this.buffer.getInt(0) != MAGIC) {
+				throw new IllegalArgumentException(
+						"The buffer does not contain a JSC model");
+			}
+			if (this.buffer.getInt(4) != VERSION) {
+				throw new IllegalArgumentException("The JSC model version "
+						+ this.buffer.getInt(4) + " is not supported");
+			}
+			final int classCount = this.buffer.getInt(8);
+			stringCount = this.buffer.getInt(12);
+			if (classCount < 0 || stringCount < 0
+					|| HEADER_SIZE + (long) classCount * CLASS_INDEX_ENTRY_SIZE
+							+ (long) stringCount * 4 > this.buffer.limit()) {
+				throw corrupt(null);
+			}
+			stringIndex = HEADER_SIZE + classCount * CLASS_INDEX_ENTRY_SIZE;
+			strings = new String[stringCount];
+			final Map<String, Integer> classes = new LinkedHashMap<>();
+			for (int i = 0; i < classCount; i++) {
+				final int entry = HEADER_SIZE + i * CLASS_INDEX_ENTRY_SIZE;
+				classes.put(string(this.buffer.getInt(entry)),
+						this.buffer.getInt(entry + 4));
+			}
+			this.classes = classes;
+		} catch (IndexOutOfBoundsException e) {
+			throw corrupt(e);
+		}
+	}
+
+	/**
+	 * Map the model file into the memory and create a reader on it.
+	 *
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static JSCModelReader open(final Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("The file '" + path
+						+ "' is too large to be a JSC model");
+			}
+			return new JSCModelReader(channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * @return the fully qualified names of the classes in the model in the
+	 *         order they were written
+	 */
+	public List<String> getClassNames() {
+		return Collections.unmodifiableList(new ArrayList<>(classes.keySet()));
+	}
+
+	/**
+	 * Decode a class.
+	 *
+	 * @param className
+	 *            the fully qualified name of the class
+	 * @return the class or {@code null} if the model does not contain it
+	 * @throws IllegalArgumentException
+	 *             if the model is corrupt
+	 */
+	public JSC read(final String className) {
+		final Integer offset = classes.get(className);
+		if (offset == null) {
+			return null;
+		}
+		try {
+			return node(new Cursor(offset));
+		} catch (IndexOutOfBoundsException e) {
+			throw corrupt(e);
+		}
+	}
+
+	/**
+	 * @return all the classes of the model in the order they were written
+	 */
+	public List<JSC> readAll() {
+		final List<JSC> klasses = new ArrayList<>(classes.size());
+		for (final String className : classes.keySet()) {
+			klasses.add(read(className));
+		}
+		return klasses;
+	}
+
+	private static IllegalArgumentException corrupt(final Throwable cause) {
+		return new IllegalArgumentException("The JSC model is corrupt", cause);
+	}
+
+	/**
+	 * Get a string from the string table, decoding it when it is first used.
+	 * Threads reading the same string at the same time may decode it more
+	 * than once, which does no harm.
+	 */
+	private String string(final int index) {
+		if (index < 0 || index >= stringCount) {
+			throw corrupt(null);
+		}
+		String string = strings[index];
+		if (string == null) {
+			final Cursor cursor = new Cursor(buffer.getInt(stringIndex + index
+					* 4));
+			final byte[] bytes = new byte[cursor.length()];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = buffer.get(cursor.position++);
+			}
+			string = new String(bytes, StandardCharsets.UTF_8);
+			strings[index] = string;
+		}
+		return string;
+	}
+
+	private String string(final Cursor in) {
+		final int index = in.varint();
+		return index == 0 ? null : string(index - 1);
+	}
+
+	private String[] strings(final Cursor in) {
+		final String[] list = new String[in.length()];
+		for (int i = 0; i < list.length; i++) {
+			list[i] = string(in);
+		}
+		return list;
+	}
+
+	private static <T> T value(final T[] values, final int ordinal) {
+		if (ordinal < 0 || ordinal >= values.length) {
+			throw corrupt(null);
+		}
+		return values[ordinal];
+	}
+
+	private JSC node(final Cursor in) {
+		final int tag = in.varint();
+		if (tag == STATEMENT) {
+			final JSCStatement statement = statement(in);
+			if (statement == null) {
+				throw corrupt(null);
+			}
+			return statement;
+		}
+		if (tag != NODE) {
+			throw corrupt(null);
+		}
+		final JSC node = new JSC();
+		final int type = in.varint();
+		if (type != 0) {
+			node.setJscType(value(JSCType.values(), type - 1));
+		}
+		node.modifier(in.varint());
+		final int flags = in.varint();
+		final String packge = string(in);
+		if (packge != null) {
+			node.inPackage(packge);
+		}
+		node.parent(string(in));
+		node.returnType(string(in));
+		node.identifier(string(in));
+		final String expression = string(in);
+		if (expression != null) {
+			node.initValue(expression);
+		}
+		node.simpleCommand = string(in);
+		final String[] intrfaces = strings(in);
+		if (intrfaces.length > 0) {
+			node.interfaces(intrfaces);
+		}
+		final String[] imports = strings(in);
+		if (imports.length > 0) {
+			node.imports(imports);
+		}
+		final String[] annotations = strings(in);
+		if (annotations.length > 0) {
+			node.annotations(annotations);
+		}
+		final String[] exceptions = strings(in);
+		if (exceptions.length > 0) {
+			node.exceptions(exceptions);
+		}
+		for (final JSC member : nodes(in)) {
+			node.add(member);
+		}
+		final JSC[] arguments = nodes(in);
+		if (arguments.length > 0) {
+			node.arguments(arguments);
+		}
+		final JSC[] commands = nodes(in);
+		if (commands.length > 0) {
+			node.commands(commands);
+		}
+		node.setBlockCommand((flags & BLOCK_COMMAND) != 0);
+		if ((flags & MEMOIZING) != 0) {
+			node.memoizeMembers();
+		}
+		return node;
+	}
+
+	private JSC[] nodes(final Cursor in) {
+		final JSC[] list = new JSC[in.length()];
+		for (int i = 0; i < list.length; i++) {
+			list[i] = node(in);
+		}
+		return list;
+	}
+
+	/**
+	 * Decode a statement using the factory methods, which check the
+	 * statement like they do when the statement is built by hand.
+	 */
+	private JSCStatement statement(final Cursor in) {
+		final int kind = in.varint();
+		if (kind == 0) {
+			return null;
+		}
+		final String declaredType = string(in);
+		final String declaredName = string(in);
+		final JSCExpression target = expression(in);
+		final JSCExpression value = expression(in);
+		final JSCStatement[] body = statements(in);
+		final JSCStatement[] elseBody = statements(in);
+		final JSCStatement init = statement(in);
+		final JSCStatement update = statement(in);
+		switch (value(JSCStatement.Kind.values(), kind - 1)) {
+		case EXPRESSION:
+			return JSCStatement.expression(value);
+		case DECLARE:
+			return JSCStatement.declare(declaredType, declaredName, value);
+		case ASSIGN:
+			return JSCStatement.assign(target, value);
+		case RETURN:
+			return value == null ? JSCStatement.returns() : JSCStatement
+					.returns(value);
+		case IF:
+			return elseBody.length == 0 ? JSCStatement.ifThen(value, body)
+					: JSCStatement.ifThen(value, body).orElse(elseBody);
+		case WHILE:
+			return JSCStatement.whileLoop(value, body);
+		case FOR:
+			return JSCStatement.forLoop(init, value, update, body);
+		default:
+			return JSCStatement.block(body);
+		}
+	}
+
+	private JSCStatement[] statements(final Cursor in) {
+		final JSCStatement[] list = new JSCStatement[in.length()];
+		for (int i = 0; i < list.length; i++) {
+			list[i] = statement(in);
+			if (list[i] == null) {
+				throw corrupt(null);
+			}
+		}
+		return list;
+	}
+
+	private JSCExpression expression(final Cursor in) {
+		final int kind = in.varint();
+		if (kind == 0) {
+			return null;
+		}
+		final int operator = in.varint();
+		final String type = string(in);
+		final String name = string(in);
+		final Object value = literal(in);
+		final JSCExpression target = expression(in);
+		final JSCExpression[] operands = new JSCExpression[in.length()];
+		for (int i = 0; i < operands.length; i++) {
+			operands[i] = expression(in);
+		}
+		switch (value(JSCExpression.Kind.values(), kind - 1)) {
+		case LITERAL:
+			return literal(value);
+		case LOCAL:
+			return JSCExpression.local(name);
+		case FIELD:
+			return target == null ? JSCExpression.field(name) : JSCExpression
+					.field(target, name);
+		case STATIC_FIELD:
+			return JSCExpression.staticField(type, name);
+		case CALL:
+			return target == null ? JSCExpression.call(name, operands)
+					: JSCExpression.call(target, name, operands);
+		case STATIC_CALL:
+			return JSCExpression.staticCall(type, name, operands);
+		case NEW:
+			return JSCExpression.newInstance(type, operands);
+		case BINARY:
+			if (operator == 0 || operands.length != 2) {
+				throw corrupt(null);
+			}
+			return JSCExpression.binary(
+					value(JSCExpression.Operator.values(), operator - 1),
+					operands[0], operands[1]);
+		default:
+			if (operands.length != 1) {
+				throw corrupt(null);
+			}
+			final JSCExpression.Operator unary = value(
+					JSCExpression.Operator.values(), operator - 1);
+			return unary == JSCExpression.Operator.NOT ? JSCExpression
+					.not(operands[0]) : JSCExpression.negate(operands[0]);
+		}
+	}
+
+	private static JSCExpression literal(final Object value) {
+		if (value == null) {
+			return JSCExpression.nullLiteral();
+		} else if (value instanceof Integer) {
+			return JSCExpression.literal((Integer) value);
+		} else if (value instanceof Long) {
+			return JSCExpression.literal((Long) value);
+		} else if (value instanceof Double) {
+			return JSCExpression.literal((Double) value);
+		} else if (value instanceof Boolean) {
+			return JSCExpression.literal((Boolean) value);
+		} else {
+			return JSCExpression.literal((String) value);
+		}
+	}
+
+	private Object literal(final Cursor in) {
+		switch (in.varint()) {
+		case NULL_VALUE:
+			return null;
+		case INT_VALUE:
+			return (int) unzigzag(in.varlong());
+		case LONG_VALUE:
+			return unzigzag(in.varlong());
+		case DOUBLE_VALUE:
+			final long high = in.fixed() & 0xFFFFFFFFL;
+			return Double.longBitsToDouble(high << 32 | in.fixed()
+					& 0xFFFFFFFFL);
+		case TRUE_VALUE:
+			return Boolean.TRUE;
+		case FALSE_VALUE:
+			return Boolean.FALSE;
+		case STRING_VALUE:
+			final String string = string(in);
+			if (string == null) {
+				throw corrupt(null);
+			}
+			return string;
+		default:
+			throw corrupt(null);
+		}
+	}
+
+	private static long unzigzag(final long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Reads the buffer from a position using absolute reads, so the cursors
+	 * of different threads do not interfere.
+	 */
+	private final class Cursor {
+		private int position;
+
+		Cursor(final int position) {
+			this.position = position;
+		}
+
+		int fixed() {
+			final int value = buffer.getInt(position);
+			position += 4;
+			return value;
+		}
+
+		int varint() {
+			final long value = varlong();
+			if (value < 0 || value > Integer.MAX_VALUE) {
+				throw corrupt(null);
+			}
+			return (int) value;
+		}
+
+		/**
+		 * Read the length of a list or a string. Every element takes at least
+		 * one byte, a length larger than the rest of the buffer is corrupt and
+		 * it is rejected before anything is allocated.
+		 */
+		int length() {
+			final int length = varint();
+			if (length < 0 || length > buffer.limit() - position) {
+				throw corrupt(null);
+			}
+			return length;
+		}
+
+		long varlong() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				final byte b = buffer.get(position++);
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw corrupt(null);
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package com.javax0.jscglib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes JSC classes in a compact binary format that {@link JSCModelReader}
+ * loads back. The models can be stored between the steps of a build or sent
+ * to generation workers without building them again.
+ * <p>
+ * The file starts with a header of fixed size integers:
+ *
+ * <pre>
+ * magic "JSCM", version, number of classes, number of strings
+ * class index:  name string id and offset of the class node, per class
+ * string index: offset of the string, per string
+ * strings:      varint length and UTF-8 bytes, per string
+ * nodes
+ * </pre>
+ *
+ * The identifiers, type names, command strings and all the other strings are
+ * stored only once in the string table and the nodes refer to them by their
+ * index. Inside the nodes all numbers, like the types and the modifiers, are
+ * unsigned varints. The fixed size indexes make it possible to read a class
+ * or a string without reading the ones before it.
+ * <p>
+ * The classes with lazy members can not be written. The nodes shared in a
+ * frozen tree are written as many times as they occur.
+ */
+public class JSCModelWriter {
+	static final int MAGIC = 0x4A53434D;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int CLASS_INDEX_ENTRY_SIZE = 8;
+
+	static final int NODE = 1;
+	static final int STATEMENT = 2;
+
+	static final int BLOCK_COMMAND = 1;
+	static final int MEMOIZING = 2;
+
+	static final int NULL_VALUE = 0;
+	static final int INT_VALUE = 1;
+	static final int LONG_VALUE = 2;
+	static final int DOUBLE_VALUE = 3;
+	static final int TRUE_VALUE = 4;
+	static final int FALSE_VALUE = 5;
+	static final int STRING_VALUE = 6;
+
+	private final Map<String, Integer> strings = new LinkedHashMap<>();
+	private final Map<String, Integer> classes = new LinkedHashMap<>();
+	private final Buffer nodes = new Buffer();
+
+	/**
+	 * Add a class to the model. The class is encoded when it is added, later
+	 * modifications are not written.
+	 *
+	 * @param klass
+	 *            a JSC of type {@link JSCType#CLASS}
+	 * @return
+	 */
+	public JSCModelWriter add(final JSC klass) {
+		final String name = JSCCompiler.className(klass);
+		if (klass.hasLazyMembers()) {
+			throw new IllegalArgumentException("The class '" + name
+					+ "' has lazy members, it can not be written");
+		}
+		if (classes.containsKey(name)) {
+			throw new IllegalArgumentException("The class '" + name
+					+ "' was already added");
+		}
+		final int offset = nodes.size();
+		node(klass);
+		classes.put(name, offset);
+		intern(name);
+		return this;
+	}
+
+	public JSCModelWriter addAll(final Iterable<JSC> klasses) {
+		for (final JSC klass : klasses) {
+			add(klass);
+		}
+		return this;
+	}
+
+	/**
+	 * @return the encoded model
+	 */
+	public byte[] toByteArray() {
+		final Buffer out = new Buffer();
+		final List<byte[]> encoded = new ArrayList<>(strings.size());
+		for (final String string : strings.keySet()) {
+			encoded.add(string.getBytes(StandardCharsets.UTF_8));
+		}
+		final int stringsStart = HEADER_SIZE + classes.size()
+				* CLASS_INDEX_ENTRY_SIZE + strings.size() * 4;
+		int stringsSize = 0;
+		for (final byte[] string : encoded) {
+			stringsSize += Buffer.varintSize(string.length) + string.length;
+		}
+		final int nodesStart = stringsStart + stringsSize;
+		out.fixed(MAGIC).fixed(VERSION).fixed(classes.size())
+				.fixed(strings.size());
+		for (final Map.Entry<String, Integer> entry : classes.entrySet()) {
+			out.fixed(strings.get(entry.getKey())).fixed(
+					nodesStart + entry.getValue());
+		}
+		int offset = stringsStart;
+		for (final byte[] string : encoded) {
+			out.fixed(offset);
+			offset += Buffer.varintSize(string.length) + string.length;
+		}
+		for (final byte[] string : encoded) {
+			out.varint(string.length).write(string, 0, string.length);
+		}
+		nodes.appendTo(out);
+		return out.toByteArray();
+	}
+
+	public void write(final OutputStream output) throws IOException {
+		output.write(toByteArray());
+	}
+
+	public void write(final Path path) throws IOException {
+		Files.write(path, toByteArray());
+	}
+
+	private void node(final JSC node) {
+		if (node instanceof LazyMembers) {
+			throw new IllegalArgumentException(
+					"Lazy members can not be written");
+		}
+		if (node instanceof JSCStatement) {
+			nodes.varint(STATEMENT);
+			statement((JSCStatement) node);
+			return;
+		}
+		nodes.varint(NODE);
+		nodes.varint(node.getJscType() == null ? 0 : node.getJscType()
+				.ordinal() + 1);
+		nodes.varint(node.getModifiers());
+		nodes.varint((node.isBlockCommand() ? BLOCK_COMMAND : 0)
+				| (node.isMemoizing() ? MEMOIZING : 0));
+		string(node.getPackge());
+		string(node.getParentClass());
+		string(node.getType());
+		string(node.getIdentifier());
+		string(node.getExpression());
+		string(node.getSimpleCommand());
+		strings(node.getIntrfaces());
+		strings(node.getImports());
+		strings(node.getAnnotations());
+		strings(node.getExceptions());
+		nodes(node.getDeclaredBlocks());
+		nodes(node.getArguments());
+		nodes(node.getCommands());
+	}
+
+	private void nodes(final List<JSC> list) {
+		nodes.varint(list.size());
+		for (final JSC node : list) {
+			node(node);
+		}
+	}
+
+	/**
+	 * Write the kind of the statement, or zero for {@code null}, and the
+	 * parts of the statement.
+	 */
+	private void statement(final JSCStatement statement) {
+		if (statement == null) {
+			nodes.varint(0);
+			return;
+		}
+		nodes.varint(statement.getKind().ordinal() + 1);
+		string(statement.getDeclaredType());
+		string(statement.getDeclaredName());
+		expression(statement.getTarget());
+		expression(statement.getValue());
+		statements(statement.getBody());
+		statements(statement.getElseBody());
+		statement(statement.getInit());
+		statement(statement.getUpdate());
+	}
+
+	private void statements(final List<JSCStatement> list) {
+		nodes.varint(list.size());
+		for (final JSCStatement statement : list) {
+			statement(statement);
+		}
+	}
+
+	/**
+	 * Write the kind of the expression, or zero for {@code null}, and the
+	 * parts of the expression.
+	 */
+	private void expression(final JSCExpression expression) {
+		if (expression == null) {
+			nodes.varint(0);
+			return;
+		}
+		nodes.varint(expression.getKind().ordinal() + 1);
+		nodes.varint(expression.getOperator() == null ? 0 : expression
+				.getOperator().ordinal() + 1);
+		string(expression.getType());
+		string(expression.getName());
+		value(expression.getValue());
+		expression(expression.getTarget());
+		nodes.varint(expression.getOperands().size());
+		for (final JSCExpression operand : expression.getOperands()) {
+			expression(operand);
+		}
+	}
+
+	private void value(final Object value) {
+		if (value == null) {
+			nodes.varint(NULL_VALUE);
+		} else if (value instanceof Integer) {
+			nodes.varint(INT_VALUE).varlong(zigzag((Integer) value));
+		} else if (value instanceof Long) {
+			nodes.varint(LONG_VALUE).varlong(zigzag((Long) value));
+		} else if (value instanceof Double) {
+			nodes.varint(DOUBLE_VALUE);
+			final long bits = Double.doubleToRawLongBits((Double) value);
+			nodes.fixed((int) (bits >>> 32)).fixed((int) bits);
+		} else if (value instanceof Boolean) {
+			nodes.varint((Boolean) value ? TRUE_VALUE : FALSE_VALUE);
+		} else if (value instanceof String) {
+			nodes.varint(STRING_VALUE);
+			string((String) value);
+		} else {
+			throw new IllegalArgumentException("The literal value '" + value
+					+ "' of type " + value.getClass().getName()
+					+ " can not be written");
+		}
+	}
+
+	private static long zigzag(final long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private void strings(final List<String> list) {
+		nodes.varint(list.size());
+		for (final String string : list) {
+			string(string);
+		}
+	}
+
+	/**
+	 * Write the index of the string in the string table plus one, or zero
+	 * for {@code null}.
+	 */
+	private void string(final String string) {
+		nodes.varint(string == null ? 0 : intern(string) + 1);
+	}
+
+	private int intern(final String string) {
+		Integer index = strings.get(string);
+		if (index == null) {
+			index = strings.size();
+			strings.put(string, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Byte array output stream with the encodings of the format.
+	 */
+	private static final class Buffer extends ByteArrayOutputStream {
+		Buffer fixed(final int value) {
+			write(value >>> 24);
+			write(value >>> 16);
+			write(value >>> 8);
+			write(value);
+			return this;
+		}
+
+		Buffer varint(final int value) {
+			return varlong(value & 0xFFFFFFFFL);
+		}
+
+		Buffer varlong(long value) {
+			while ((value & ~0x7FL) != 0) {
+				write((int) (value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write((int) value);
+			return this;
+		}
+
+		void appendTo(final Buffer out) {
+			out.write(buf, 0, count);
+		}
+
+		static int varintSize(int value) {
+			int size = 1;
+			while ((value & ~0x7F) != 0) {
+				size++;
+				value >>>= 7;
+			}
+			return size;
+		}
+	}
+}
@@ -1,109 +1,589 @@
 package com.javax0.jscglib;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Renders a {@link JSC} tree to Java source code. The tree is walked only once
+ * and every node writes its text into the same {@link CodeStringBuilder},
+ * which keeps track of the indentation.
+ */
 public class JSCPrinter {
+
+	/**
+	 * The size of the buffers used when the code is written to a
+	 * {@link Writer}, {@link OutputStream} or {@link WritableByteChannel}.
+	 */
+	static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Render the code into a string.
+	 *
+	 * @param code
+	 * @return the Java source code
+	 */
 	public static String pprint(JSC code) {
-		final String retval;
+		final CodeStringBuilder sb = new CodeStringBuilder();
+		final JSCEvents.Render event = startRendering(sb);
+		pprint(code, sb);
+		finishRendering(code, sb, event);
+		return sb.toString();
+	}
+
+	/**
+	 * Render the code into the {@code out} sink. The characters are appended
+	 * to the sink as the tree is walked, no intermediate string holding the
+	 * whole or part of the code is created.
+	 *
+	 * @param code
+	 * @param out
+	 * @throws IOException
+	 *             when the sink throws exception
+	 */
+	public static void pprint(JSC code, Appendable out) throws IOException {
+		pprintSink(code, new CodeStringBuilder(out));
+	}
+
+	/**
+	 * Render the code into the sink and flush it after the header of the
+	 * classes, so the consumer gets the beginning of the code before the
+	 * members are rendered.
+	 */
+	static void pprintFlushing(JSC code, Appendable out) throws IOException {
+		final CodeStringBuilder sb = new CodeStringBuilder(out);
+		sb.setFlushing(true);
+		pprintSink(code, sb);
+	}
+
+	private static void pprintSink(JSC code, CodeStringBuilder sb)
+			throws IOException {
+		final JSCEvents.Render event = startRendering(sb);
+		try {
+			pprint(code, sb);
+		} catch (CodeStringBuilder.SinkException e) {
+			throw e.getCause();
+		}
+		finishRendering(code, sb, event);
+	}
+
+	/**
+	 * Render the code into the writer. The characters are collected in a
+	 * buffer of bounded size and the writer is flushed at the end, but it is
+	 * not closed.
+	 *
+	 * @param code
+	 * @param writer
+	 * @throws IOException
+	 */
+	public static void pprint(JSC code, Writer writer) throws IOException {
+		final Writer out = new BufferedWriter(writer, BUFFER_SIZE);
+		pprint(code, (Appendable) out);
+		out.flush();
+	}
+
+	/**
+	 * Render the code into the output stream encoding the characters using
+	 * the given charset. The stream is flushed at the end, but it is not
+	 * closed.
+	 *
+	 * @param code
+	 * @param out
+	 * @param charset
+	 * @throws IOException
+	 */
+	public static void pprint(JSC code, OutputStream out, Charset charset)
+			throws IOException {
+		pprint(code, new OutputStreamWriter(out, charset));
+	}
+
+	/**
+	 * Render the code into the channel encoding the characters using the
+	 * given charset. The channel is not closed.
+	 *
+	 * @param code
+	 * @param channel
+	 * @param charset
+	 * @throws IOException
+	 */
+	public static void pprint(JSC code, WritableByteChannel channel,
+			Charset charset) throws IOException {
+		pprint(code, Channels.newWriter(channel, charset.newEncoder(),
+				BUFFER_SIZE));
+	}
+
+	/**
+	 * Publish the code as chunks of bytes encoded using the charset. Each
+	 * subscriber gets its own rendering, which runs on a thread of the
+	 * executor when the subscriber first requests chunks. The rendering
+	 * proceeds only as far as the subscriber requests chunks, the thread
+	 * waits while there is no demand, therefore the executor should not be a
+	 * pool shared with short tasks, like the common fork/join pool. The
+	 * package, the imports and the declaration of a class are published as
+	 * soon as they are rendered, before the members, even if they do not fill
+	 * a chunk.
+	 * <p>
+	 * A rendering error is signalled to the subscriber by
+	 * {@link java.util.concurrent.Flow.Subscriber#onError(Throwable)}.
+	 *
+	 * @param code
+	 * @param charset
+	 * @param chunkSize
+	 *            the maximal number of bytes in a chunk, at least 16
+	 * @param executor
+	 *            executes the rendering
+	 * @return the publisher
+	 */
+	public static Flow.Publisher<ByteBuffer> publish(JSC code,
+			Charset charset, int chunkSize, Executor executor) {
+		return new ChunkPublisher(code, charset, chunkSize, executor);
+	}
+
+	/**
+	 * Publish the code as chunks of bytes of at most {@value #BUFFER_SIZE}
+	 * bytes. See {@link #publish(JSC, Charset, int, Executor)}.
+	 *
+	 * @param code
+	 * @param charset
+	 * @param executor
+	 * @return the publisher
+	 */
+	public static Flow.Publisher<ByteBuffer> publish(JSC code,
+			Charset charset, Executor executor) {
+		return publish(code, charset, BUFFER_SIZE, executor);
+	}
+
+	/**
+	 * Render the code into a string rendering the members of the class in
+	 * parallel. The output is the same as the output of {@link #pprint(JSC)}.
+	 *
+	 * @param code
+	 * @param pool
+	 *            the fork/join pool that executes the rendering of the members
+	 * @param threshold
+	 *            the minimal number of members of the class to render them in
+	 *            parallel. Smaller classes and the classes with lazy members
+	 *            are rendered sequentially.
+	 * @return the Java source code
+	 */
+	public static String pprintParallel(JSC code, ForkJoinPool pool,
+			int threshold) {
+		final CodeStringBuilder sb = new CodeStringBuilder();
+		pprintParallel(code, sb, pool, threshold);
+		return sb.toString();
+	}
+
+	/**
+	 * Render the code into the {@code out} sink rendering the members of the
+	 * class in parallel. The members are rendered into separate strings that
+	 * are written to the sink in the order of the declaration, thus the output
+	 * is the same as the output of {@link #pprint(JSC, Appendable)}.
+	 *
+	 * @param code
+	 * @param out
+	 * @param pool
+	 *            the fork/join pool that executes the rendering of the members
+	 * @param threshold
+	 *            the minimal number of members of the class to render them in
+	 *            parallel. Smaller classes are rendered sequentially.
+	 * @throws IOException
+	 *             when the sink throws exception
+	 */
+	public static void pprintParallel(JSC code, Appendable out,
+			ForkJoinPool pool, int threshold) throws IOException {
+		try {
+			pprintParallel(code, new CodeStringBuilder(out), pool, threshold);
+		} catch (CodeStringBuilder.SinkException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static void pprintParallel(JSC code, CodeStringBuilder sb,
+			ForkJoinPool pool, int threshold) {
+		final JSCEvents.Render event = startRendering(sb);
+		final List<JSC> members = code.getDeclaredBlocks();
+		if (code.getJscType() != JSCType.CLASS || members.size() < threshold
+				|| code.hasLazyMembers()) {
+			pprint(code, sb);
+			finishRendering(code, sb, event);
+			return;
+		}
+		count(code, sb);
+		pprintClassHead(code, sb);
+		sb.flush();
+		final JSC[] memberArray = members.toArray(new JSC[members.size()]);
+		final String[] fragments = new String[memberArray.length];
+		final int leafSize = Math.max(1, memberArray.length
+				/ (4 * pool.getParallelism()));
+		pool.invoke(new MemberRenderer(code.isMemoizing(), memberArray,
+				fragments, 0, memberArray.length, sb.getTabs(), leafSize, sb
+						.getStatistics()));
+		for (final String fragment : fragments) {
+			sb.appendFragment(fragment);
+		}
+		sb.end();
+		finishRendering(code, sb, event);
+	}
+
+	/**
+	 * Switch on the counting in the code builder if there is any
+	 * {@link JSCListener} registered or the JFR render event is enabled.
+	 *
+	 * @return the begun JFR event
+	 */
+	private static JSCEvents.Render startRendering(CodeStringBuilder sb) {
+		final JSCEvents.Render event = new JSCEvents.Render();
+		if (JSCInstrumentation.isActive() || event.isEnabled()) {
+			final RenderStatistics statistics = new RenderStatistics();
+			sb.setStatistics(statistics);
+			statistics.start();
+		}
+		event.begin();
+		return event;
+	}
+
+	private static void finishRendering(JSC code, CodeStringBuilder sb,
+			JSCEvents.Render event) {
+		event.end();
+		final RenderStatistics statistics = sb.getStatistics();
+		if (statistics == null) {
+			return;
+		}
+		statistics.stop();
+		if (event.shouldCommit()) {
+			event.name = JSCEvents.name(code);
+			event.type = code.getJscType().name();
+			event.characters = statistics.getCharacters();
+			event.nodes = statistics.getNodes();
+			event.commit();
+		}
+		JSCInstrumentation.rendered(code, statistics);
+	}
+
+	private static void count(JSC code, CodeStringBuilder sb) {
+		if (sb.getStatistics() != null) {
+			sb.getStatistics().node(code.getJscType());
+		}
+	}
+
+	/**
+	 * Renders a range of the members of a class into separate strings,
+	 * splitting the range into halves until it is not larger than the leaf
+	 * size.
+	 */
+	private static class MemberRenderer extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final boolean memoizing;
+		private final JSC[] members;
+		private final String[] fragments;
+		private final int from, to, tabs, leafSize;
+		private final RenderStatistics statistics;
+
+		MemberRenderer(boolean memoizing, JSC[] members, String[] fragments,
+				int from, int to, int tabs, int leafSize,
+				RenderStatistics statistics) {
+			this.memoizing = memoizing;
+			this.members = members;
+			this.fragments = fragments;
+			this.from = from;
+			this.to = to;
+			this.tabs = tabs;
+			this.leafSize = leafSize;
+			this.statistics = statistics;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= leafSize) {
+				for (int i = from; i < to; i++) {
+					fragments[i] = memoizing ? memoized(members[i], tabs,
+							statistics) : render(members[i], tabs, statistics);
+				}
+			} else {
+				final int middle = (from + to) >>> 1;
+				invokeAll(new MemberRenderer(memoizing, members, fragments,
+						from, middle, tabs, leafSize, statistics),
+						new MemberRenderer(memoizing, members, fragments,
+								middle, to, tabs, leafSize, statistics));
+			}
+		}
+	}
+
+	static void pprint(JSC code, CodeStringBuilder sb) {
 		switch (code.getJscType()) {
 		case CLASS:
-			retval = pprintClass(code);
+			pprintClass(code, sb);
 			break;
 		case METHOD:
-			retval = pprintMethod(code);
+			pprintMethod(code, sb);
 			break;
 		case FIELD:
-			retval = pprintField(code);
+			pprintField(code, sb);
 			break;
 		case ARGUMENT:
-			retval = pprintArgument(code);
+			pprintArgument(code, sb);
 			break;
 		case COMMAND:
-			retval = pprintCommand(code);
+			pprintCommand(code, sb);
 			break;
 		case CONSTRUCTOR:
-			retval = pprintConstructor(code);
+			pprintConstructor(code, sb);
 			break;
 		default:
 			throw new IllegalArgumentException("The type of the JSC object '"
 					+ code.getJscType().name() + "' can not be printed");
 		}
-		return retval;
 	}
 
 	public static String pprintCommand(JSC code) {
-		CodeStringBuilder sb = new CodeStringBuilder().append(code
-				.getSimpleCommand());
-		if (!code.isBlockCommand()) {
-			sb.sc();
-		}
+		final CodeStringBuilder sb = new CodeStringBuilder();
+		final JSCEvents.Render event = startRendering(sb);
+		pprintCommand(code, sb);
+		finishRendering(code, sb, event);
 		return sb.toString();
 	}
 
 	public static String pprintConstructor(JSC code) {
-		CodeStringBuilder sb = new CodeStringBuilder()
-				.appendLines(code.getAnnotations())
-				.append(null, Modifier.toString(code.getModifiers()), " ")
-				.append(code.getIdentifier())
-				.append("(").appendList(code.getArguments()).append(")")
-				.appendList("throws ", code.getExceptions(), null).begin();
-		for (JSC command : code.getCommands()) {
-			sb.append(command.toString());
-		}
-		sb.end();
+		final CodeStringBuilder sb = new CodeStringBuilder();
+		final JSCEvents.Render event = startRendering(sb);
+		pprintConstructor(code, sb);
+		finishRendering(code, sb, event);
 		return sb.toString();
 	}
 
 	public static String pprintMethod(JSC code) {
-		CodeStringBuilder sb = new CodeStringBuilder()
-				.appendLines(code.getAnnotations())
-				.append(null, Modifier.toString(code.getModifiers()), " ")
-				.append(code.getType()).space().append(code.getIdentifier())
-				.append("(").appendList(code.getArguments()).append(")")
-				.appendList("throws ", code.getExceptions(), null).begin();
-		for (JSC command : code.getCommands()) {
-			sb.append(command.toString());
-		}
-		sb.end();
+		final CodeStringBuilder sb = new CodeStringBuilder();
+		final JSCEvents.Render event = startRendering(sb);
+		pprintMethod(code, sb);
+		finishRendering(code, sb, event);
 		return sb.toString();
 	}
 
 	public static String pprintField(JSC code) {
-		CodeStringBuilder sb = new CodeStringBuilder()
-				.appendLines(code.getAnnotations())
-				.append(" ",Modifier.toString(code.getModifiers())," ")
-				.append(code.getType())
-				.space()
-				.append(code.getIdentifier())
-				.append(code.getExpression() == null ? "" : (" = " + code
-						.getExpression()))//
-				.sc();
+		final CodeStringBuilder sb = new CodeStringBuilder();
+		final JSCEvents.Render event = startRendering(sb);
+		pprintField(code, sb);
+		finishRendering(code, sb, event);
 		return sb.toString();
 	}
 
 	public static String pprintArgument(JSC code) {
-		CodeStringBuilder sb = new CodeStringBuilder().append(code.getType())
-				.space().append(code.getIdentifier());
+		final CodeStringBuilder sb = new CodeStringBuilder();
+		final JSCEvents.Render event = startRendering(sb);
+		pprintArgument(code, sb);
+		finishRendering(code, sb, event);
 		return sb.toString();
 	}
 
 	public static String pprintClass(JSC code) {
-		CodeStringBuilder sb = new CodeStringBuilder().append("package ",
-				code.getPackge(), ";\n");
+		final CodeStringBuilder sb = new CodeStringBuilder();
+		final JSCEvents.Render event = startRendering(sb);
+		pprintClass(code, sb);
+		finishRendering(code, sb, event);
+		return sb.toString();
+	}
+
+	static void pprintCommand(JSC code, CodeStringBuilder sb) {
+		count(code, sb);
+		if (code instanceof JSCStatement) {
+			pprintStatement((JSCStatement) code, sb);
+			return;
+		}
+		sb.append(code.getSimpleCommand());
+		if (code.isBlockCommand()) {
+			sb.nl();
+		} else {
+			sb.sc();
+		}
+	}
+
+	private static void pprintStatement(JSCStatement statement,
+			CodeStringBuilder sb) {
+		switch (statement.getKind()) {
+		case RETURN:
+			final JSCExpression value = statement.getValue();
+			sb.append("return")
+					.append(" ", value == null ? null : value.toString(), null)
+					.sc();
+			break;
+		case IF:
+			sb.append("if (").append(statement.getCondition().toString())
+					.append(") ");
+			statements(statement.getBody(), sb);
+			if (!statement.getElseBody().isEmpty()) {
+				sb.append("else ");
+				statements(statement.getElseBody(), sb);
+			}
+			break;
+		case WHILE:
+			sb.append("while (").append(statement.getCondition().toString())
+					.append(") ");
+			statements(statement.getBody(), sb);
+			break;
+		case FOR:
+			final JSCExpression condition = statement.getCondition();
+			sb.append("for (")
+					.append(statement.getInit() == null ? "" : statement
+							.getInit().inline())
+					.append("; ")
+					.append(condition == null ? "" : condition.toString())
+					.append("; ")
+					.append(statement.getUpdate() == null ? "" : statement
+							.getUpdate().inline()).append(") ");
+			statements(statement.getBody(), sb);
+			break;
+		case BLOCK:
+			statements(statement.getBody(), sb);
+			break;
+		default:
+			sb.append(statement.inline()).sc();
+		}
+	}
+
+	private static void statements(List<JSCStatement> statements,
+			CodeStringBuilder sb) {
+		sb.begin();
+		for (JSCStatement statement : statements) {
+			pprint(statement, sb);
+		}
+		sb.end();
+	}
+
+	static void pprintConstructor(JSC code, CodeStringBuilder sb) {
+		count(code, sb);
+		sb.appendLines(code.getAnnotations());
+		modifiers(code, sb);
+		sb.append(code.getIdentifier());
+		arguments(code, sb);
+		body(code, sb);
+	}
+
+	static void pprintMethod(JSC code, CodeStringBuilder sb) {
+		count(code, sb);
+		sb.appendLines(code.getAnnotations());
+		modifiers(code, sb);
+		sb.append(code.getType()).space().append(code.getIdentifier());
+		arguments(code, sb);
+		body(code, sb);
+	}
+
+	static void pprintField(JSC code, CodeStringBuilder sb) {
+		count(code, sb);
+		sb.appendLines(code.getAnnotations());
+		modifiers(code, sb);
+		sb.append(code.getType()).space().append(code.getIdentifier())
+				.append(" = ", code.getExpression(), null).sc();
+	}
+
+	static void pprintArgument(JSC code, CodeStringBuilder sb) {
+		count(code, sb);
+		sb.append(code.getType()).space().append(code.getIdentifier());
+	}
+
+	static void pprintClass(JSC code, CodeStringBuilder sb) {
+		count(code, sb);
+		pprintClassHead(code, sb);
+		sb.flush();
+		for (JSC jsc : code.getDeclaredBlocks()) {
+			if (jsc instanceof LazyMembers) {
+				final Iterator<? extends JSC> members = ((LazyMembers) jsc)
+						.consume();
+				while (members.hasNext()) {
+					pprint(members.next(), sb);
+				}
+			} else if (code.isMemoizing() && !jsc.hasLazyMembers()) {
+				sb.appendFragment(memoized(jsc, sb.getTabs(),
+						sb.getStatistics()));
+			} else {
+				pprint(jsc, sb);
+			}
+		}
+		sb.end();
+	}
+
+	/**
+	 * Print everything of the class before the members: the package, the
+	 * imports, the declaration and the opening brace.
+	 */
+	private static void pprintClassHead(JSC code, CodeStringBuilder sb) {
+		if (code.getPackge() != null) {
+			sb.append("package ").append(code.getPackge()).sc();
+		}
 		for (String importPackage : code.getImports()) {
 			sb.append("import ").append(importPackage).sc();
 		}
-		sb.appendLines(code.getAnnotations())
-				.append(Modifier.toString(code.getModifiers()))
-				.append(" class ").append(code.getIdentifier())
+		sb.appendLines(code.getAnnotations());
+		modifiers(code, sb);
+		sb.append("class ").append(code.getIdentifier())
 				.append(" extends ", code.getParentClass(), null)
 				.appendList(" implements ", code.getIntrfaces(), null).begin();
-		//
-		for (JSC jsc : code.getDeclaredBlocks()) {
-			sb.append(jsc.toString());
+	}
+
+	/**
+	 * Get the rendered code cached in the node, or render it and store it in
+	 * the cache if the node was modified since the last time it was printed.
+	 */
+	private static String memoized(JSC code, int tabs,
+			RenderStatistics statistics) {
+		String rendered = code.getRendered(tabs);
+		if (rendered == null) {
+			rendered = render(code, tabs, statistics);
+			code.setRendered(tabs, rendered);
+		}
+		return rendered;
+	}
+
+	/**
+	 * Render the node into a string as a fragment to be spliced into the
+	 * output of a code builder at the indentation depth {@code tabs}. The
+	 * rendered nodes are counted into {@code statistics} unless it is
+	 * {@code null}.
+	 */
+	static String render(JSC code, int tabs, RenderStatistics statistics) {
+		final CodeStringBuilder fragment = new CodeStringBuilder(tabs);
+		if (statistics != null) {
+			fragment.setStatistics(new RenderStatistics());
+		}
+		pprint(code, fragment);
+		if (statistics != null) {
+			statistics.merge(fragment.getStatistics());
+		}
+		return fragment.toString();
+	}
+
+	private static void modifiers(JSC code, CodeStringBuilder sb) {
+		if (code.getModifiers() != 0) {
+			sb.append(Modifier.toString(code.getModifiers())).space();
+		}
+	}
+
+	private static void arguments(JSC code, CodeStringBuilder sb) {
+		sb.append("(").startList();
+		for (JSC argument : code.getArguments()) {
+			sb.separator();
+			pprint(argument, sb);
+		}
+		sb.append(")").appendList(" throws ", code.getExceptions(), null);
+	}
+
+	private static void body(JSC code, CodeStringBuilder sb) {
+		sb.begin();
+		for (JSC command : code.getCommands()) {
+			pprint(command, sb);
 		}
-		//
 		sb.end();
-		return sb.toString();
 	}
 }
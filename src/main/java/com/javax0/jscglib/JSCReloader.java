@@ -0,0 +1,189 @@
+package com.javax0.jscglib;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the current version of a generated class that is regenerated while
+ * the application runs, for example when the configuration changes.
+ * <p>
+ * Every {@link #reload(JSC)} compiles the class, loads it in a new class
+ * loader, or defines it as a hidden class if the compiler is configured so,
+ * see {@link JSCCompiler#hiddenClasses(java.lang.invoke.MethodHandles.Lookup)},
+ * creates an instance using the constructor without arguments and publishes
+ * it atomically. The callers get the current instance calling {@link #get()}.
+ * The reloader keeps no reference to the former versions, a former version
+ * is garbage collected as soon as the callers drop the instances and the
+ * classes they got from it. The number of the versions not collected yet and
+ * the size of the metaspace can be monitored to detect callers holding on to
+ * old versions.
+ *
+ * <pre>
+ * JSCReloader&lt;Strategy&gt; strategy = new JSCReloader&lt;&gt;(Strategy.class);
+ * strategy.reload(generate(configuration));
+ * ...
+ * strategy.get().apply(order);
+ * </pre>
+ *
+ * @param <T>
+ *            the type the generated class implements or extends
+ */
+public class JSCReloader<T> {
+	private final Class<T> type;
+	private JSCCompiler compiler = new JSCCompiler();
+	private final AtomicReference<Version<T>> current = new AtomicReference<>();
+	private long reloads = 0;
+
+	/**
+	 * The weak references to the classes of the versions. A reference is
+	 * removed when the garbage collector enqueues it. The classes are tracked
+	 * and not their loaders, because the hidden classes share the loader of
+	 * the host.
+	 */
+	private final ReferenceQueue<Class<?>> collected = new ReferenceQueue<>();
+	private final Set<Reference<Class<?>>> versions = ConcurrentHashMap
+			.newKeySet();
+
+	/**
+	 * A loaded class with its instance, published together.
+	 */
+	private static final class Version<T> {
+		private final Class<? extends T> klass;
+		private final T instance;
+
+		Version(final Class<? extends T> klass, final T instance) {
+			this.klass = klass;
+			this.instance = instance;
+		}
+	}
+
+	/**
+	 * @param type
+	 *            the type the generated class implements or extends
+	 */
+	public JSCReloader(final Class<T> type) {
+		if (type == null) {
+			throw new IllegalArgumentException("The type can not be null");
+		}
+		this.type = type;
+	}
+
+	/**
+	 * Compile the classes using the compiler. The compiler has to load the
+	 * classes in a new class loader for every compilation, like
+	 * {@link JSCCompiler} does. The parent loader of the compiler has to see
+	 * the type.
+	 *
+	 * @param compiler
+	 * @return
+	 */
+	public JSCReloader<T> compiler(final JSCCompiler compiler) {
+		if (compiler == null) {
+			throw new IllegalArgumentException("The compiler can not be null");
+		}
+		this.compiler = compiler;
+		return this;
+	}
+
+	/**
+	 * Compile and load a new version of the class and publish an instance of
+	 * it. If the class can not be compiled or instantiated then the current
+	 * version stays.
+	 *
+	 * @param klass
+	 *            a JSC of type {@link JSCType#CLASS}
+	 * @return the new instance
+	 * @throws JSCCompilationException
+	 *             when the code can not be compiled
+	 * @throws IllegalArgumentException
+	 *             when the class does not extend or implement the type or it
+	 *             can not be instantiated
+	 */
+	public synchronized T reload(final JSC klass) {
+		final Class<?> loaded = compiler.compile(klass);
+		if (!type.isAssignableFrom(loaded)) {
+			throw new IllegalArgumentException("The class '"
+					+ loaded.getName() + "' is not a " + type.getName());
+		}
+		final Class<? extends T> subclass = loaded.asSubclass(type);
+		final T instance;
+		try {
+			instance = subclass.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("The class '"
+					+ loaded.getName() + "' can not be instantiated", e);
+		}
+		expunge();
+		versions.add(new WeakReference<Class<?>>(subclass, collected));
+		current.set(new Version<T>(subclass, instance));
+		reloads++;
+		return instance;
+	}
+
+	/**
+	 * @return the instance of the current version or {@code null} if no class
+	 *         was loaded yet
+	 */
+	public T get() {
+		final Version<T> version = current.get();
+		return version == null ? null : version.instance;
+	}
+
+	/**
+	 * @return the current version of the class or {@code null} if no class
+	 *         was loaded yet
+	 */
+	public Class<? extends T> getLoadedClass() {
+		final Version<T> version = current.get();
+		return version == null ? null : version.klass;
+	}
+
+	/**
+	 * @return the number of successful reloads
+	 */
+	public synchronized long getReloads() {
+		return reloads;
+	}
+
+	/**
+	 * Get the number of the versions loaded by this reloader that were not
+	 * garbage collected yet, including the current version. Every version
+	 * that is not a hidden class has its own class loader, which is collected
+	 * together with the class. The number is expected to drop to one after a
+	 * garbage collection. If it keeps growing then some code holds references
+	 * to old versions.
+	 *
+	 * @return
+	 */
+	public int getLiveVersions() {
+		expunge();
+		return versions.size();
+	}
+
+	private void expunge() {
+		Reference<? extends Class<?>> reference;
+		while ((reference = collected.poll()) != null) {
+			versions.remove(reference);
+		}
+	}
+
+	/**
+	 * @return the number of bytes used in the metaspace of the JVM where the
+	 *         class metadata is stored, or -1 if the JVM has no metaspace
+	 */
+	public static long getMetaspaceUsed() {
+		for (final MemoryPoolMXBean pool : ManagementFactory
+				.getMemoryPoolMXBeans()) {
+			if ("Metaspace".equals(pool.getName())) {
+				return pool.getUsage().getUsed();
+			}
+		}
+		return -1;
+	}
+}
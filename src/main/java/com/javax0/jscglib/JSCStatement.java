@@ -0,0 +1,483 @@
+package com.javax0.jscglib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A typed statement that can be used as a command of a method or a
+ * constructor instead of a command string:
+ *
+ * <pre>
+ * method(int.class, &quot;sum&quot;).argument(int.class, &quot;n&quot;).commands(
+ * 		declare(int.class, &quot;s&quot;, literal(0)),
+ * 		forLoop(declare(int.class, &quot;i&quot;, literal(1)),
+ * 				le(local(&quot;i&quot;), local(&quot;n&quot;)),
+ * 				assign(local(&quot;i&quot;), plus(local(&quot;i&quot;), literal(1))),
+ * 				assign(local(&quot;s&quot;), plus(local(&quot;s&quot;), local(&quot;i&quot;)))),
+ * 		returns(local(&quot;s&quot;)));
+ * </pre>
+ *
+ * Statements are nodes of type {@link JSCType#COMMAND}. They are immutable,
+ * like the nodes of a frozen snapshot, therefore the same statement can be
+ * used in many methods. The structure of the statements is known, thus they
+ * can be checked by {@link #validate(JSC)} before the code is compiled,
+ * simplified by {@link #fold()} and the methods built only from statements
+ * can be translated to byte code without the Java compiler, see
+ * {@link JSCCompiler#directBytecode(boolean)}.
+ */
+public final class JSCStatement extends JSC {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The kind of the statement.
+	 */
+	public enum Kind {
+		EXPRESSION, DECLARE, ASSIGN, RETURN, IF, WHILE, FOR, BLOCK
+	}
+
+	private final Kind kind;
+	private final String declaredType;
+	private final String declaredName;
+	private final JSCExpression target;
+	private final JSCExpression expression;
+	private final List<JSCStatement> body;
+	private final List<JSCStatement> elseBody;
+	private final JSCStatement init;
+	private final JSCStatement update;
+
+	private JSCStatement(final Kind kind, final String declaredType,
+			final String declaredName, final JSCExpression target,
+			final JSCExpression expression, final List<JSCStatement> body,
+			final List<JSCStatement> elseBody, final JSCStatement init,
+			final JSCStatement update) {
+		super(JSCType.COMMAND);
+		this.kind = kind;
+		this.declaredType = declaredType;
+		this.declaredName = declaredName;
+		this.target = target;
+		this.expression = expression;
+		this.body = copy(body);
+		this.elseBody = copy(elseBody);
+		this.init = init;
+		this.update = update;
+	}
+
+	private static List<JSCStatement> copy(final List<JSCStatement> statements) {
+		if (statements == null || statements.isEmpty()) {
+			return Collections.emptyList();
+		}
+		for (final JSCStatement statement : statements) {
+			if (statement == null) {
+				throw new IllegalArgumentException(
+						"The body of a statement can not contain null");
+			}
+		}
+		return Collections.unmodifiableList(new ArrayList<>(statements));
+	}
+
+	private static JSCStatement simple(final Kind kind,
+			final JSCExpression target, final JSCExpression expression) {
+		return new JSCStatement(kind, null, null, target, expression, null,
+				null, null, null);
+	}
+
+	private static <T> T notNull(final T value, final String what) {
+		if (value == null) {
+			throw new IllegalArgumentException(what + " can not be null");
+		}
+		return value;
+	}
+
+	/**
+	 * An expression evaluated for its side effect. Java allows only method
+	 * calls and object creation as expression statements.
+	 *
+	 * @param expression
+	 * @return
+	 */
+	public static JSCStatement expression(final JSCExpression expression) {
+		final JSCExpression.Kind kind = notNull(expression, "The expression")
+				.getKind();
+		if (kind != JSCExpression.Kind.CALL
+				&& kind != JSCExpression.Kind.STATIC_CALL
+				&& kind != JSCExpression.Kind.NEW) {
+			throw new IllegalArgumentException("'" + expression
+					+ "' is not a statement");
+		}
+		return simple(Kind.EXPRESSION, null, expression);
+	}
+
+	/**
+	 * Declare a local variable without initial value.
+	 *
+	 * @param type
+	 * @param name
+	 * @return
+	 */
+	public static JSCStatement declare(final String type, final String name) {
+		return declare(type, name, null);
+	}
+
+	public static JSCStatement declare(final Class<?> type, final String name) {
+		return declare(TypeNames.of(type), name, null);
+	}
+
+	/**
+	 * Declare a local variable.
+	 *
+	 * @param type
+	 * @param name
+	 * @param value
+	 *            the initial value or {@code null}
+	 * @return
+	 */
+	public static JSCStatement declare(final String type, final String name,
+			final JSCExpression value) {
+		if (!BytecodeBackend.isIdentifier(name)) {
+			throw new IllegalArgumentException("'" + name
+					+ "' is not a valid Java identifier");
+		}
+		return new JSCStatement(Kind.DECLARE, notNull(type, "The type"), name,
+				null, value, null, null, null, null);
+	}
+
+	public static JSCStatement declare(final Class<?> type, final String name,
+			final JSCExpression value) {
+		return declare(TypeNames.of(type), name, value);
+	}
+
+	/**
+	 * @param target
+	 *            a local variable, a field or a static field
+	 * @param value
+	 * @return
+	 */
+	public static JSCStatement assign(final JSCExpression target,
+			final JSCExpression value) {
+		final JSCExpression.Kind kind = notNull(target, "The target")
+				.getKind();
+		if (kind != JSCExpression.Kind.LOCAL
+				&& kind != JSCExpression.Kind.FIELD
+				&& kind != JSCExpression.Kind.STATIC_FIELD) {
+			throw new IllegalArgumentException("'" + target
+					+ "' can not be assigned");
+		}
+		return simple(Kind.ASSIGN, target, notNull(value, "The value"));
+	}
+
+	/**
+	 * @return a {@code return} statement without value
+	 */
+	public static JSCStatement returns() {
+		return simple(Kind.RETURN, null, null);
+	}
+
+	public static JSCStatement returns(final JSCExpression value) {
+		return simple(Kind.RETURN, null, notNull(value, "The value"));
+	}
+
+	/**
+	 * Create an {@code if} statement without {@code else}. Use
+	 * {@link #orElse(JSCStatement...)} to add the {@code else} branch.
+	 *
+	 * @param condition
+	 * @param then
+	 * @return
+	 */
+	public static JSCStatement ifThen(final JSCExpression condition,
+			final JSCStatement... then) {
+		return new JSCStatement(Kind.IF, null, null, null, notNull(condition,
+				"The condition"), Arrays.asList(then), null, null, null);
+	}
+
+	/**
+	 * @param otherwise
+	 *            the statements of the {@code else} branch
+	 * @return a new {@code if} statement that has the same condition and
+	 *         {@code then} branch as this one and the {@code else} branch
+	 */
+	public JSCStatement orElse(final JSCStatement... otherwise) {
+		if (kind != Kind.IF) {
+			throw new IllegalStateException(
+					"Only an if statement can have an else branch");
+		}
+		return new JSCStatement(Kind.IF, null, null, null, expression, body,
+				Arrays.asList(otherwise), null, null);
+	}
+
+	public static JSCStatement whileLoop(final JSCExpression condition,
+			final JSCStatement... body) {
+		return new JSCStatement(Kind.WHILE, null, null, null, notNull(
+				condition, "The condition"), Arrays.asList(body), null, null,
+				null);
+	}
+
+	/**
+	 * @param init
+	 *            a declaration, an assignment or an expression statement, or
+	 *            {@code null}
+	 * @param condition
+	 *            the condition or {@code null} for an infinite loop
+	 * @param update
+	 *            an assignment or an expression statement, or {@code null}
+	 * @param body
+	 * @return
+	 */
+	public static JSCStatement forLoop(final JSCStatement init,
+			final JSCExpression condition, final JSCStatement update,
+			final JSCStatement... body) {
+		if (init != null && !init.isSimple() || update != null
+				&& (!update.isSimple() || update.kind == Kind.DECLARE)) {
+			throw new IllegalArgumentException(
+					"The init and the update of a for loop has to be a simple statement");
+		}
+		return new JSCStatement(Kind.FOR, null, null, null, condition,
+				Arrays.asList(body), null, init, update);
+	}
+
+	public static JSCStatement block(final JSCStatement... body) {
+		return new JSCStatement(Kind.BLOCK, null, null, null, null,
+				Arrays.asList(body), null, null, null);
+	}
+
+	/**
+	 * @return {@code true} for the statements that fit on one line and end
+	 *         with a semicolon
+	 */
+	boolean isSimple() {
+		return kind == Kind.EXPRESSION || kind == Kind.DECLARE
+				|| kind == Kind.ASSIGN;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the type of the declared local variable
+	 */
+	public String getDeclaredType() {
+		return declaredType;
+	}
+
+	/**
+	 * @return the name of the declared local variable
+	 */
+	public String getDeclaredName() {
+		return declaredName;
+	}
+
+	/**
+	 * @return the target of the assignment
+	 */
+	public JSCExpression getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return the value of a declaration, an assignment or a return, or the
+	 *         expression of an expression statement. {@code null} if there
+	 *         is no value.
+	 */
+	public JSCExpression getValue() {
+		return expression;
+	}
+
+	/**
+	 * @return the condition of an {@code if}, {@code while} or {@code for}
+	 *         statement
+	 */
+	public JSCExpression getCondition() {
+		return expression;
+	}
+
+	/**
+	 * @return the statements of the loop, of the {@code then} branch or of
+	 *         the block
+	 */
+	public List<JSCStatement> getBody() {
+		return body;
+	}
+
+	/**
+	 * @return the statements of the {@code else} branch
+	 */
+	public List<JSCStatement> getElseBody() {
+		return elseBody;
+	}
+
+	public JSCStatement getInit() {
+		return init;
+	}
+
+	public JSCStatement getUpdate() {
+		return update;
+	}
+
+	/**
+	 * Fold the constant sub expressions of the statement. An {@code if}
+	 * statement with constant condition is replaced by the block of the
+	 * branch that is executed, unless the replacement would change which
+	 * statements are reachable, which the Java compiler checks. For the same
+	 * reason a loop condition is folded to a constant only if it is a
+	 * constant expression of the language.
+	 *
+	 * @return the folded statement, or {@code this} if there is nothing to
+	 *         fold
+	 */
+	public JSCStatement fold() {
+		JSCExpression folded = expression == null ? null : expression.fold();
+		final List<JSCStatement> foldedBody = fold(body);
+		final List<JSCStatement> foldedElse = fold(elseBody);
+		if (kind == Kind.IF && folded.isConstant()
+				&& folded.getValue() instanceof Boolean) {
+			final List<JSCStatement> taken = (Boolean) folded.getValue() ? foldedBody
+					: foldedElse;
+			if (canCompleteNormally(taken) == canCompleteNormally()) {
+				return new JSCStatement(Kind.BLOCK, null, null, null, null,
+						taken, null, null, null);
+			}
+		}
+		if ((kind == Kind.WHILE || kind == Kind.FOR) && folded != null
+				&& folded.isConstant()
+				&& !expression.isConstantExpression(true)
+				&& !expression.isConstantExpression(false)) {
+			folded = expression;
+		}
+		final JSCStatement foldedInit = init == null ? null : init.fold();
+		final JSCStatement foldedUpdate = update == null ? null : update.fold();
+		final JSCExpression foldedTarget = target == null ? null : target
+				.fold();
+		if (folded == expression && foldedBody == body
+				&& foldedElse == elseBody && foldedInit == init
+				&& foldedUpdate == update && foldedTarget == target) {
+			return this;
+		}
+		return new JSCStatement(kind, declaredType, declaredName,
+				foldedTarget, folded, foldedBody, foldedElse, foldedInit,
+				foldedUpdate);
+	}
+
+	/**
+	 * Decide if the execution can continue after the statement following the
+	 * rules of the Java language. There is no {@code break} statement, thus
+	 * a loop with constant {@code true} condition never completes.
+	 */
+	boolean canCompleteNormally() {
+		switch (kind) {
+		case RETURN:
+			return false;
+		case IF:
+			return elseBody.isEmpty() || canCompleteNormally(body)
+					|| canCompleteNormally(elseBody);
+		case WHILE:
+		case FOR:
+			return expression != null && !expression.isConstantExpression(true);
+		case BLOCK:
+			return canCompleteNormally(body);
+		default:
+			return true;
+		}
+	}
+
+	static boolean canCompleteNormally(final List<JSCStatement> statements) {
+		for (final JSCStatement statement : statements) {
+			if (!statement.canCompleteNormally()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List<JSCStatement> fold(final List<JSCStatement> statements) {
+		List<JSCStatement> folded = statements;
+		for (int i = 0; i < statements.size(); i++) {
+			final JSCStatement statement = statements.get(i).fold();
+			if (statement != statements.get(i)) {
+				if (folded == statements) {
+					folded = new ArrayList<>(statements);
+				}
+				folded.set(i, statement);
+			}
+		}
+		return folded;
+	}
+
+	/**
+	 * Check the typed statements of a class, a method or a constructor. The
+	 * check finds the errors the Java compiler would report, like the use of
+	 * an undeclared local variable, a non boolean condition, a missing or
+	 * superfluous return value or a missing return statement, without
+	 * invoking the compiler. The command strings are not checked. When a body
+	 * also contains command strings, the local variables are not checked,
+	 * because a command string may declare them.
+	 *
+	 * @param code
+	 *            a JSC of type {@link JSCType#CLASS}, {@link JSCType#METHOD}
+	 *            or {@link JSCType#CONSTRUCTOR}
+	 * @throws IllegalArgumentException
+	 *             describing the first error found
+	 */
+	public static void validate(final JSC code) {
+		StatementValidator.validate(code);
+	}
+
+	@Override
+	Fingerprint calculateFingerprint() {
+		final Fingerprint.Hasher hasher = new Fingerprint.Hasher()
+				.put(JSCType.COMMAND.name()).put(kind.name()).put(declaredType)
+				.put(declaredName);
+		put(hasher, target);
+		put(hasher, expression);
+		put(hasher, init);
+		put(hasher, update);
+		put(hasher, body);
+		put(hasher, elseBody);
+		return hasher.fingerprint();
+	}
+
+	private static void put(final Fingerprint.Hasher hasher,
+			final JSCExpression expression) {
+		hasher.put(expression != null);
+		if (expression != null) {
+			hasher.put(expression.fingerprint());
+		}
+	}
+
+	private static void put(final Fingerprint.Hasher hasher,
+			final JSCStatement statement) {
+		hasher.put(statement != null);
+		if (statement != null) {
+			hasher.put(statement.fingerprint());
+		}
+	}
+
+	private static void put(final Fingerprint.Hasher hasher,
+			final List<JSCStatement> statements) {
+		hasher.put(statements.size());
+		for (final JSCStatement statement : statements) {
+			hasher.put(statement.fingerprint());
+		}
+	}
+
+	/**
+	 * @return the code of a simple statement without the closing semicolon,
+	 *         the way it appears in the head of a {@code for} loop
+	 */
+	String inline() {
+		switch (kind) {
+		case EXPRESSION:
+			return expression.toString();
+		case DECLARE:
+			return declaredType + " " + declaredName
+					+ (expression == null ? "" : " = " + expression);
+		case ASSIGN:
+			return target + " = " + expression;
+		default:
+			throw new IllegalStateException("The statement " + kind.name()
+					+ " can not be written inline");
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.javax0.jscglib;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A class shape rendered once with placeholders, that can be instantiated
+ * many times binding different values to the placeholders. The constant text
+ * of the code is rendered when the template is created, an instantiation only
+ * copies the constant fragments and the bound values one after the other.
+ * <p>
+ * Placeholders are created by {@link #param(String)} and can be used wherever
+ * a string goes into the JSC tree, for example as an identifier, a type, an
+ * init value or a command:
+ *
+ * <pre>
+ * JSCTemplate template = JSCTemplate.of(klass(param(&quot;name&quot;)).add(
+ * 		field(param(&quot;type&quot;), &quot;value&quot;).initValue(param(&quot;init&quot;))));
+ * Map&lt;String, Object&gt; values = new HashMap&lt;&gt;();
+ * values.put(&quot;name&quot;, &quot;Answer&quot;);
+ * values.put(&quot;type&quot;, &quot;int&quot;);
+ * values.put(&quot;init&quot;, 42);
+ * String code = template.instantiate(values);
+ * </pre>
+ *
+ * Templates are immutable and can be used from many threads.
+ */
+public final class JSCTemplate {
+	/**
+	 * Placeholders are enclosed between two characters of the Unicode private
+	 * use area, which do not appear in ordinary Java source code.
+	 */
+	private static final char START = '\uE000';
+	private static final char END = '\uE001';
+
+	private final String[] fragments;
+	private final String[] parameters;
+	private final int constantLength;
+
+	private JSCTemplate(final List<String> fragments,
+			final List<String> parameters) {
+		this.fragments = fragments.toArray(new String[fragments.size()]);
+		this.parameters = parameters.toArray(new String[parameters.size()]);
+		int length = 0;
+		for (final String fragment : fragments) {
+			length += fragment.length();
+		}
+		this.constantLength = length;
+	}
+
+	/**
+	 * Create a placeholder.
+	 *
+	 * @param name
+	 *            the name of the placeholder used when the template is
+	 *            instantiated
+	 * @return a string to be used in the JSC tree in place of a value
+	 */
+	public static String param(final String name) {
+		if (name == null || name.length() == 0
+				|| name.indexOf(START) != -1 || name.indexOf(END) != -1) {
+			throw new IllegalArgumentException("'" + name
+					+ "' can not be used as a template parameter name");
+		}
+		return START + name + END;
+	}
+
+	/**
+	 * Render the JSC tree that contains placeholders and create a template
+	 * from it.
+	 *
+	 * @param code
+	 * @return
+	 */
+	public static JSCTemplate of(final JSC code) {
+		final String rendered = JSCPrinter.pprint(code);
+		final List<String> fragments = new ArrayList<>();
+		final List<String> parameters = new ArrayList<>();
+		int from = 0;
+		for (int start = rendered.indexOf(START); start != -1; start = rendered
+				.indexOf(START, from)) {
+			final int end = rendered.indexOf(END, start);
+			if (end == -1) {
+				throw new IllegalArgumentException(
+						"The code contains an unterminated template parameter");
+			}
+			fragments.add(rendered.substring(from, start));
+			parameters.add(rendered.substring(start + 1, end));
+			from = end + 1;
+		}
+		fragments.add(rendered.substring(from));
+		return new JSCTemplate(fragments, parameters);
+	}
+
+	/**
+	 * @return the names of the parameters used in the template
+	 */
+	public Set<String> getParameters() {
+		final Set<String> names = new LinkedHashSet<>();
+		Collections.addAll(names, parameters);
+		return Collections.unmodifiableSet(names);
+	}
+
+	/**
+	 * Create the code binding the values to the parameters.
+	 *
+	 * @param values
+	 *            the values of the parameters. The string representation of
+	 *            the values are inserted into the code.
+	 * @return the code
+	 * @throws IllegalArgumentException
+	 *             if there is no value for a parameter
+	 */
+	public String instantiate(final Map<String, ?> values) {
+		final String[] bound = bind(values);
+		int length = constantLength;
+		for (final String value : bound) {
+			length += value.length();
+		}
+		final StringBuilder sb = new StringBuilder(length);
+		try {
+			instantiate(bound, sb);
+		} catch (IOException e) {
+			throw new IllegalStateException(
+					"StringBuilder should not throw IOException", e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Write the code binding the values to the parameters into the sink.
+	 *
+	 * @param values
+	 *            the values of the parameters. The string representation of
+	 *            the values are inserted into the code.
+	 * @param out
+	 * @throws IOException
+	 *             when the sink throws exception
+	 * @throws IllegalArgumentException
+	 *             if there is no value for a parameter
+	 */
+	public void instantiate(final Map<String, ?> values, final Appendable out)
+			throws IOException {
+		instantiate(bind(values), out);
+	}
+
+	private void instantiate(final String[] bound, final Appendable out)
+			throws IOException {
+		for (int i = 0; i < bound.length; i++) {
+			out.append(fragments[i]).append(bound[i]);
+		}
+		out.append(fragments[bound.length]);
+	}
+
+	private String[] bind(final Map<String, ?> values) {
+		final String[] bound = new String[parameters.length];
+		for (int i = 0; i < parameters.length; i++) {
+			final Object value = values.get(parameters[i]);
+			if (value == null) {
+				throw new IllegalArgumentException("There is no value for the template parameter '"
+						+ parameters[i] + "'");
+			}
+			bound[i] = value.toString();
+		}
+		return bound;
+	}
+}
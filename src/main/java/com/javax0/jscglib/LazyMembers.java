@@ -0,0 +1,100 @@
+package com.javax0.jscglib;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * Placeholder in the members of a class for the members that are created only
+ * when the class is rendered, see {@link JSC#add(Iterator)}. The printer pulls
+ * the members one by one, writes them and drops them, thus the members do not
+ * need to be in the memory at the same time.
+ * <p>
+ * The source can be consumed only once. The placeholder has no fingerprint,
+ * the class containing it can not be frozen or serialized and it is not
+ * cached by the compiler.
+ */
+final class LazyMembers extends JSC {
+	private static final long serialVersionUID = 1L;
+	private Iterator<? extends JSC> source;
+
+	LazyMembers(final Iterator<? extends JSC> source) {
+		super(null);
+		if (source == null) {
+			throw new IllegalArgumentException(
+					"The source of the members can not be null");
+		}
+		this.source = source;
+	}
+
+	/**
+	 * Create an iterator that calls the supplier until it returns
+	 * {@code null}.
+	 */
+	static Iterator<JSC> iterator(final Supplier<? extends JSC> supplier) {
+		if (supplier == null) {
+			throw new IllegalArgumentException(
+					"The source of the members can not be null");
+		}
+		return new Iterator<JSC>() {
+			private JSC next = null;
+			private boolean end = false;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null && !end) {
+					next = supplier.get();
+					end = next == null;
+				}
+				return !end;
+			}
+
+			@Override
+			public JSC next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				final JSC member = next;
+				next = null;
+				return member;
+			}
+		};
+	}
+
+	/**
+	 * Get the source of the members. The placeholder forgets the source, so
+	 * the members pulled from it can be garbage collected as soon as the
+	 * caller drops them.
+	 *
+	 * @return the members
+	 * @throws IllegalStateException
+	 *             if the members were already consumed
+	 */
+	synchronized Iterator<? extends JSC> consume() {
+		if (source == null) {
+			throw new IllegalStateException(
+					"The lazy members were already rendered, they can be rendered only once");
+		}
+		final Iterator<? extends JSC> members = source;
+		source = null;
+		return members;
+	}
+
+	/**
+	 * The members do not exist before they are rendered, there is nothing to
+	 * serialize.
+	 */
+	private void writeObject(final ObjectOutputStream out) throws IOException {
+		throw new NotSerializableException(
+				"The lazy members can not be serialized");
+	}
+
+	@Override
+	Fingerprint calculateFingerprint() {
+		throw new IllegalStateException(
+				"The lazy members are not known until they are rendered, they have no fingerprint");
+	}
+}
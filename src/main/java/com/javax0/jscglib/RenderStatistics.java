@@ -0,0 +1,77 @@
+package com.javax0.jscglib;
+
+/**
+ * Counts what was rendered during one printing of a {@link JSC} tree: the
+ * number of the nodes of each {@link JSCType}, the number of characters
+ * written and the time it took. Instances are created by the printer and
+ * passed to the {@link JSCListener}s.
+ */
+public final class RenderStatistics {
+	private final int[] nodes = new int[JSCType.values().length];
+	private long characters = 0;
+	private long nanos = 0;
+
+	RenderStatistics() {
+	}
+
+	void node(final JSCType type) {
+		nodes[type.ordinal()]++;
+	}
+
+	void characters(final int n) {
+		characters += n;
+	}
+
+	void start() {
+		nanos = System.nanoTime();
+	}
+
+	void stop() {
+		nanos = System.nanoTime() - nanos;
+	}
+
+	/**
+	 * Add the node counters of the other statistics to this one. Used to
+	 * collect the statistics of members rendered into separate fragments,
+	 * possibly on different threads. The characters are not added, because
+	 * they are counted when the fragment is spliced into the output.
+	 */
+	synchronized void merge(final RenderStatistics other) {
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] += other.nodes[i];
+		}
+	}
+
+	/**
+	 * @param type
+	 * @return the number of the rendered nodes of the type
+	 */
+	public int getNodes(final JSCType type) {
+		return nodes[type.ordinal()];
+	}
+
+	/**
+	 * @return the number of the rendered nodes of all types
+	 */
+	public int getNodes() {
+		int sum = 0;
+		for (final int n : nodes) {
+			sum += n;
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the number of the characters written
+	 */
+	public long getCharacters() {
+		return characters;
+	}
+
+	/**
+	 * @return the time of the rendering in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+}
@@ -0,0 +1,504 @@
+package com.javax0.jscglib;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the typed statements of a class, a method or a constructor. The types
+ * are known only as the strings used in the code, thus only the errors that
+ * are certain are reported: a value of an unknown type, like the return value
+ * of a method call, is accepted everywhere.
+ *
+ * @see JSCStatement#validate(JSC)
+ */
+final class StatementValidator {
+	private static final String BOOLEAN = "boolean";
+	private static final String STRING = "String";
+	private static final String NULL = "null";
+	private static final List<String> NUMERIC = java.util.Arrays.asList("byte",
+			"short", "char", "int", "long", "float", "double");
+
+	private final JSC klass;
+	private final JSC code;
+	private final boolean isStatic;
+	private final boolean hasCommandStrings;
+	private final Map<String, String> locals = new HashMap<>();
+	private final Deque<List<String>> scopes = new ArrayDeque<>();
+
+	private StatementValidator(final JSC klass, final JSC code) {
+		this.klass = klass;
+		this.code = code;
+		this.isStatic = Modifier.isStatic(code.getModifiers());
+		boolean strings = false;
+		for (final JSC command : code.getCommands()) {
+			strings |= !(command instanceof JSCStatement);
+		}
+		this.hasCommandStrings = strings;
+	}
+
+	static void validate(final JSC code) {
+		switch (code.getJscType()) {
+		case CLASS:
+			for (final JSC member : code.getDeclaredBlocks()) {
+				if ((member.getJscType() == JSCType.METHOD || member
+						.getJscType() == JSCType.CONSTRUCTOR)
+						&& hasStatements(member)) {
+					new StatementValidator(code, member).validate();
+				}
+			}
+			break;
+		case METHOD:
+		case CONSTRUCTOR:
+			new StatementValidator(null, code).validate();
+			break;
+		default:
+			throw new IllegalArgumentException("The type of the JSC object '"
+					+ code.getJscType().name() + "' has no statements");
+		}
+	}
+
+	private static boolean hasStatements(final JSC code) {
+		for (final JSC command : code.getCommands()) {
+			if (command instanceof JSCStatement) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void validate() {
+		scopes.push(new ArrayList<String>());
+		for (final JSC argument : code.getArguments()) {
+			declare(argument.getIdentifier(), argument.getType());
+		}
+		final List<JSC> commands = code.getCommands();
+		boolean completes = true;
+		for (final JSC command : commands) {
+			if (!completes) {
+				throw error("unreachable statement " + command);
+			}
+			if (command instanceof JSCStatement) {
+				completes = statement((JSCStatement) command);
+			}
+		}
+		if (completes && !hasCommandStrings && isNonVoidMethod()) {
+			throw error("missing return statement");
+		}
+	}
+
+	private boolean isNonVoidMethod() {
+		return code.getJscType() == JSCType.METHOD
+				&& !"void".equals(code.getType())
+				&& !Modifier.isAbstract(code.getModifiers())
+				&& !Modifier.isNative(code.getModifiers());
+	}
+
+	private IllegalArgumentException error(final String message) {
+		final StringBuilder sb = new StringBuilder();
+		if (klass != null) {
+			sb.append(klass.getIdentifier()).append('.');
+		}
+		sb.append(code.getIdentifier()).append(": ").append(message);
+		return new IllegalArgumentException(sb.toString());
+	}
+
+	private void declare(final String name, final String type) {
+		if (locals.containsKey(name)) {
+			throw error("variable " + name + " is already defined");
+		}
+		locals.put(name, type);
+		scopes.peek().add(name);
+	}
+
+	/**
+	 * Check the statement.
+	 *
+	 * @return {@code true} if the statement can complete normally
+	 */
+	private boolean statement(final JSCStatement statement) {
+		switch (statement.getKind()) {
+		case EXPRESSION:
+			type(statement.getValue());
+			return true;
+		case DECLARE:
+			if ("void".equals(statement.getDeclaredType())) {
+				throw error("a variable can not be void");
+			}
+			if (statement.getValue() != null) {
+				assignable(statement.getDeclaredType(), statement.getValue());
+			}
+			declare(statement.getDeclaredName(), statement.getDeclaredType());
+			return true;
+		case ASSIGN:
+			assignable(type(statement.getTarget()), statement.getValue());
+			return true;
+		case RETURN:
+			returns(statement.getValue());
+			return false;
+		case IF: {
+			condition(statement.getCondition());
+			final boolean then = block(statement.getBody());
+			final boolean otherwise = block(statement.getElseBody());
+			return statement.getElseBody().isEmpty() || then || otherwise;
+		}
+		case WHILE: {
+			final JSCExpression condition = condition(statement
+					.getCondition());
+			if (condition.isConstantExpression(false)) {
+				throw error("unreachable statement, the condition of the while loop is false");
+			}
+			block(statement.getBody());
+			return !condition.isConstantExpression(true);
+		}
+		case FOR: {
+			scopes.push(new ArrayList<String>());
+			try {
+				if (statement.getInit() != null) {
+					statement(statement.getInit());
+				}
+				final JSCExpression condition = statement.getCondition() == null ? null
+						: condition(statement.getCondition());
+				if (condition != null && condition.isConstantExpression(false)) {
+					throw error("unreachable statement, the condition of the for loop is false");
+				}
+				if (statement.getUpdate() != null) {
+					statement(statement.getUpdate());
+				}
+				block(statement.getBody());
+				return condition != null && !condition.isConstantExpression(true);
+			} finally {
+				closeScope();
+			}
+		}
+		case BLOCK:
+			return block(statement.getBody());
+		default:
+			throw new IllegalStateException("Unknown statement kind "
+					+ statement.getKind().name());
+		}
+	}
+
+	private boolean block(final List<JSCStatement> statements) {
+		scopes.push(new ArrayList<String>());
+		try {
+			boolean completes = true;
+			for (final JSCStatement statement : statements) {
+				if (!completes) {
+					throw error("unreachable statement " + statement);
+				}
+				completes = statement(statement);
+			}
+			return completes;
+		} finally {
+			closeScope();
+		}
+	}
+
+	private void closeScope() {
+		for (final String name : scopes.pop()) {
+			locals.remove(name);
+		}
+	}
+
+	private JSCExpression condition(final JSCExpression condition) {
+		final String type = type(condition);
+		if (type != null && !BOOLEAN.equals(type)) {
+			throw error("the condition '" + condition + "' is " + type
+					+ " and not boolean");
+		}
+		return condition;
+	}
+
+	private void returns(final JSCExpression value) {
+		if (code.getJscType() == JSCType.CONSTRUCTOR) {
+			if (value != null) {
+				throw error("a constructor can not return a value");
+			}
+			return;
+		}
+		if ("void".equals(code.getType())) {
+			if (value != null) {
+				throw error("a void method can not return a value");
+			}
+			return;
+		}
+		if (value == null) {
+			throw error("the return statement has to return a value");
+		}
+		assignable(code.getType(), value);
+	}
+
+	/**
+	 * Report the assignments that are certainly wrong: mixing boolean,
+	 * numeric and string values, narrowing a non constant numeric value and
+	 * assigning {@code null} to a primitive.
+	 */
+	private void assignable(final String target, final JSCExpression value) {
+		final String type = type(value);
+		final String to = primitive(target);
+		if (to == null || type == null) {
+			return;
+		}
+		final String from = primitive(type);
+		if (NULL.equals(type)) {
+			if (isPrimitive(target)) {
+				throw error("null can not be assigned to " + target);
+			}
+			return;
+		}
+		if (from == null) {
+			if (isString(type) && (BOOLEAN.equals(to) || NUMERIC.contains(to))) {
+				throw error("'" + value + "' is String and not " + target);
+			}
+			return;
+		}
+		if (BOOLEAN.equals(to) != BOOLEAN.equals(from) || isString(target)) {
+			throw error("'" + value + "' is " + type + " and not " + target);
+		}
+		if (NUMERIC.contains(to) && NUMERIC.contains(from)
+				&& !widens(from, to) && !isConstantNarrowing(value, to)) {
+			throw error("'" + value + "' is " + type
+					+ ", it can not be assigned to " + target
+					+ " without a cast");
+		}
+	}
+
+	private static boolean widens(final String from, final String to) {
+		if (from.equals(to)) {
+			return true;
+		}
+		if ("char".equals(from)) {
+			return NUMERIC.indexOf(to) >= NUMERIC.indexOf("int");
+		}
+		if ("char".equals(to)) {
+			return false;
+		}
+		return NUMERIC.indexOf(from) < NUMERIC.indexOf(to);
+	}
+
+	private static boolean isConstantNarrowing(final JSCExpression value,
+			final String to) {
+		final JSCExpression folded = value.fold();
+		if (!folded.isConstant() || !(folded.getValue() instanceof Integer)) {
+			return false;
+		}
+		final int v = (Integer) folded.getValue();
+		switch (to) {
+		case "byte":
+			return v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE;
+		case "short":
+			return v >= Short.MIN_VALUE && v <= Short.MAX_VALUE;
+		case "char":
+			return v >= Character.MIN_VALUE && v <= Character.MAX_VALUE;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isString(final String type) {
+		return STRING.equals(type) || "java.lang.String".equals(type);
+	}
+
+	private static boolean isPrimitive(final String type) {
+		return BOOLEAN.equals(type) || NUMERIC.contains(type);
+	}
+
+	/**
+	 * @return the primitive type of a primitive or boxed type, the type
+	 *         itself for {@code String} and {@code null}, and {@code null}
+	 *         for the other types
+	 */
+	private static String primitive(final String type) {
+		if (type == null || isPrimitive(type) || NULL.equals(type)) {
+			return type;
+		}
+		if (isString(type)) {
+			return STRING;
+		}
+		final String simple = type.startsWith("java.lang.") ? type
+				.substring("java.lang.".length()) : type;
+		switch (simple) {
+		case "Boolean":
+			return BOOLEAN;
+		case "Byte":
+			return "byte";
+		case "Short":
+			return "short";
+		case "Character":
+			return "char";
+		case "Integer":
+			return "int";
+		case "Long":
+			return "long";
+		case "Float":
+			return "float";
+		case "Double":
+			return "double";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @return the type of the expression, or {@code null} if it is not known
+	 */
+	private String type(final JSCExpression expression) {
+		switch (expression.getKind()) {
+		case LITERAL:
+			return literalType(expression.getValue());
+		case LOCAL:
+			if (locals.containsKey(expression.getName())) {
+				return locals.get(expression.getName());
+			}
+			if (hasCommandStrings) {
+				return null;
+			}
+			throw error("the variable " + expression.getName()
+					+ " is not declared");
+		case FIELD:
+			if (expression.getTarget() != null) {
+				type(expression.getTarget());
+				return null;
+			}
+			if (isStatic) {
+				throw error("this." + expression.getName()
+						+ " can not be used in a static method");
+			}
+			return fieldType(expression.getName());
+		case CALL:
+			if (expression.getTarget() != null) {
+				type(expression.getTarget());
+			}
+			operandTypes(expression);
+			return null;
+		case STATIC_FIELD:
+			return null;
+		case STATIC_CALL:
+			operandTypes(expression);
+			return null;
+		case NEW:
+			operandTypes(expression);
+			return expression.getType();
+		case UNARY:
+			return unaryType(expression);
+		case BINARY:
+			return binaryType(expression);
+		default:
+			throw new IllegalStateException("Unknown expression kind "
+					+ expression.getKind().name());
+		}
+	}
+
+	private void operandTypes(final JSCExpression expression) {
+		for (final JSCExpression operand : expression.getOperands()) {
+			type(operand);
+		}
+	}
+
+	private static String literalType(final Object value) {
+		if (value == null) {
+			return NULL;
+		}
+		if (value instanceof Integer) {
+			return "int";
+		}
+		if (value instanceof Long) {
+			return "long";
+		}
+		if (value instanceof Double) {
+			return "double";
+		}
+		if (value instanceof Boolean) {
+			return BOOLEAN;
+		}
+		return STRING;
+	}
+
+	private String fieldType(final String name) {
+		if (klass != null) {
+			for (final JSC member : klass.getDeclaredBlocks()) {
+				if (member.getJscType() == JSCType.FIELD
+						&& name.equals(member.getIdentifier())) {
+					return member.getType();
+				}
+			}
+		}
+		return null;
+	}
+
+	private String unaryType(final JSCExpression expression) {
+		final JSCExpression operand = expression.getOperands().get(0);
+		final String type = primitive(type(operand));
+		if (type == null) {
+			return expression.getOperator() == JSCExpression.Operator.NOT ? BOOLEAN
+					: null;
+		}
+		if (expression.getOperator() == JSCExpression.Operator.NOT) {
+			if (!BOOLEAN.equals(type)) {
+				throw error("the operand of ! is " + type + " and not boolean");
+			}
+			return BOOLEAN;
+		}
+		if (!NUMERIC.contains(type)) {
+			throw error("the operand of - is " + type + " and not numeric");
+		}
+		return promote(type, "int");
+	}
+
+	private String binaryType(final JSCExpression expression) {
+		final JSCExpression.Operator operator = expression.getOperator();
+		final String left = primitive(type(expression.getOperands().get(0)));
+		final String right = primitive(type(expression.getOperands().get(1)));
+		if (operator == JSCExpression.Operator.PLUS
+				&& (STRING.equals(left) || STRING.equals(right))) {
+			return STRING;
+		}
+		if (operator.isLogical()) {
+			checkOperand(operator, left, BOOLEAN.equals(left));
+			checkOperand(operator, right, BOOLEAN.equals(right));
+			return BOOLEAN;
+		}
+		if (operator == JSCExpression.Operator.EQ
+				|| operator == JSCExpression.Operator.NE) {
+			if (left != null && right != null
+					&& isPrimitive(left) != isPrimitive(right)
+					&& !NULL.equals(left) && !NULL.equals(right)
+					|| BOOLEAN.equals(left) && NUMERIC.contains(right)
+					|| NUMERIC.contains(left) && BOOLEAN.equals(right)
+					|| NULL.equals(left) && isPrimitive(right)
+					|| isPrimitive(left) && NULL.equals(right)) {
+				throw error("the operands of '" + expression
+						+ "' can not be compared");
+			}
+			return BOOLEAN;
+		}
+		checkOperand(operator, left, NUMERIC.contains(left));
+		checkOperand(operator, right, NUMERIC.contains(right));
+		if (operator.isComparison()) {
+			return BOOLEAN;
+		}
+		return left == null || right == null ? null : promote(left, right);
+	}
+
+	private void checkOperand(final JSCExpression.Operator operator,
+			final String type, final boolean valid) {
+		if (type != null && !valid) {
+			throw error("the operator " + operator.getSymbol()
+					+ " can not be applied to " + type);
+		}
+	}
+
+	/**
+	 * @return the type of the binary numeric promotion of the two types
+	 */
+	private static String promote(final String left, final String right) {
+		final int l = Math.max(NUMERIC.indexOf(left), NUMERIC.indexOf("int"));
+		final int r = Math.max(NUMERIC.indexOf(right), NUMERIC.indexOf("int"));
+		return NUMERIC.get(Math.max(l, r));
+	}
+}
@@ -0,0 +1,36 @@
+package com.javax0.jscglib;
+
+/**
+ * Symbol table of the type names used in the generated code. The name of
+ * each class is calculated only once and every node referencing the same
+ * class shares the same string instance.
+ * <p>
+ * The names are the canonical names, the way the types are written in Java
+ * source code: nested classes are separated with a dot and arrays end with
+ * {@code []}. Local and anonymous classes have no canonical name, for those
+ * the binary name is used.
+ */
+final class TypeNames {
+
+	private TypeNames() {
+	}
+
+	private static final ClassValue<String> NAMES = new ClassValue<String>() {
+		@Override
+		protected String computeValue(final Class<?> type) {
+			if (type.isArray()) {
+				return of(type.getComponentType()) + "[]";
+			}
+			final String canonicalName = type.getCanonicalName();
+			return canonicalName == null ? type.getName() : canonicalName;
+		}
+	};
+
+	/**
+	 * @param type
+	 * @return the name of the type as it is used in the generated code
+	 */
+	static String of(final Class<?> type) {
+		return NAMES.get(type);
+	}
+}
@@ -0,0 +1,150 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCBuilder.argument;
+import static com.javax0.jscglib.JSCBuilder.constructor;
+import static com.javax0.jscglib.JSCBuilder.field;
+import static com.javax0.jscglib.JSCBuilder.klass;
+import static com.javax0.jscglib.JSCBuilder.method;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BytecodeBackendTest {
+
+	private static JSC holder() {
+		JSC klass = klass("Holder").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).interfaces(Serializable.class)
+				.imports("java.util.*");
+		klass.add(field(int.class, "i").modifier(Modifier.PUBLIC)
+				.initValue(-42));
+		klass.add(field(long.class, "l").modifier(Modifier.PUBLIC)
+				.initValue("1L"));
+		klass.add(field(double.class, "d").modifier(Modifier.PUBLIC)
+				.initValue("2.5"));
+		klass.add(field(float.class, "f").modifier(Modifier.PUBLIC)
+				.initValue("0.5f"));
+		klass.add(field(char.class, "c").modifier(Modifier.PUBLIC)
+				.initValue("'\\n'"));
+		klass.add(field(byte.class, "b").modifier(Modifier.PUBLIC)
+				.initValue(100));
+		klass.add(field(boolean.class, "z").modifier(Modifier.PUBLIC)
+				.initValue(true));
+		klass.add(field(String.class, "s").modifier(Modifier.PUBLIC)
+				.initValue("\"a\\tb\""));
+		klass.add(field("List", "list").modifier(Modifier.PUBLIC).initNull());
+		klass.add(field(String.class, "CONSTANT")
+				.modifier(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+				.initValue("\"constant\""));
+		klass.add(field(int.class, "counter")
+				.modifier(Modifier.PUBLIC, Modifier.STATIC).initValue(100000));
+		klass.add(field(int[].class, "array").modifier(Modifier.PROTECTED));
+		klass.add(constructor(klass).modifier(Modifier.PUBLIC));
+		klass.add(constructor(klass).modifier(Modifier.PUBLIC)
+				.arguments(argument(long.class, "x"), argument("String", "y"))
+				.exceptions(new Class<?>[] { IOException.class }));
+		klass.add(method("void", "nothing").modifier(Modifier.PUBLIC,
+				Modifier.SYNCHRONIZED));
+		klass.add(method("void", "statically").modifier(Modifier.STATIC)
+				.arguments(argument(double.class, "x")));
+		return klass;
+	}
+
+	private static Set<String> describe(Class<?> klass) {
+		Set<String> members = new TreeSet<>();
+		members.add("class " + Modifier.toString(klass.getModifiers()) + " "
+				+ klass.getName() + " extends " + klass.getSuperclass()
+				+ " implements " + Arrays.toString(klass.getInterfaces()));
+		for (Field field : klass.getDeclaredFields()) {
+			members.add(field.toString());
+		}
+		for (Constructor<?> constructor : klass.getDeclaredConstructors()) {
+			members.add(constructor.toString());
+		}
+		for (Method method : klass.getDeclaredMethods()) {
+			members.add(method.toString());
+		}
+		return members;
+	}
+
+	private static String values(Object object) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (Field field : object.getClass().getDeclaredFields()) {
+			field.setAccessible(true);
+			sb.append(field.getName()).append("=")
+					.append(field.get(object)).append(";");
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void given_AClassWithoutCommands_when_CompilingDirectly_then_TheClassIsTheSameAsCompiledByJavac()
+			throws Exception {
+		Assert.assertNotNull(BytecodeBackend.compile(Arrays.asList(holder()),
+				getClass().getClassLoader()));
+		Class<?> direct = new JSCCompiler().directBytecode(true).compile(
+				holder());
+		Class<?> javac = new JSCCompiler().compile(holder());
+		Assert.assertEquals(describe(javac), describe(direct));
+		Assert.assertEquals(
+				values(javac.getDeclaredConstructor().newInstance()),
+				values(direct.getDeclaredConstructor().newInstance()));
+		Assert.assertEquals(values(javac.getConstructor(long.class,
+				String.class).newInstance(1L, "")), values(direct
+				.getConstructor(long.class, String.class).newInstance(1L, "")));
+	}
+
+	@Test
+	public void given_AClassWithCommands_when_CompilingDirectly_then_FallsBackToJavac()
+			throws Exception {
+		JSC klass = klass("Commands").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).interfaces(Callable.class)
+				.add(method(Object.class, "call").modifier(Modifier.PUBLIC)
+						.command("return 1"));
+		Assert.assertNull(BytecodeBackend.compile(Arrays.asList(klass),
+				getClass().getClassLoader()));
+		Class<?> compiled = new JSCCompiler().directBytecode(true).compile(
+				klass);
+		Assert.assertEquals(1, ((Callable<?>) compiled
+				.getDeclaredConstructor().newInstance()).call());
+	}
+
+	@Test
+	public void given_ClassesJavacWouldReject_when_CompilingDirectly_then_TheyAreNotTranslated() {
+		ClassLoader loader = getClass().getClassLoader();
+		JSC missingMethod = klass("Missing").interfaces(Callable.class);
+		JSC expression = klass("Expression");
+		expression.add(field(int.class, "i").initValue("1 + 2"));
+		JSC narrowing = klass("Narrowing");
+		narrowing.add(field(byte.class, "b").initValue(300));
+		JSC uninitializedFinal = klass("Final");
+		uninitializedFinal.add(field(int.class, "i")
+				.modifier(Modifier.FINAL));
+		JSC unknownType = klass("Unknown");
+		unknownType.add(field("NoSuchType", "x"));
+		for (JSC klass : Arrays.asList(missingMethod, expression, narrowing,
+				uninitializedFinal, unknownType)) {
+			Assert.assertNull(klass.getIdentifier(),
+					BytecodeBackend.compile(Arrays.asList(klass), loader));
+		}
+	}
+
+	@Test
+	public void given_AStaticFinalConstant_when_CompilingDirectly_then_TheValueIsAConstant()
+			throws Exception {
+		Class<?> direct = new JSCCompiler().directBytecode(true).compile(
+				holder());
+		Assert.assertEquals("constant", direct.getField("CONSTANT").get(null));
+		Assert.assertEquals(100000, direct.getField("counter").get(null));
+	}
+}
@@ -0,0 +1,161 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCBuilder.field;
+import static com.javax0.jscglib.JSCBuilder.klass;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChunkPublisherTest {
+	private static final Object COMPLETE = new Object();
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Puts the chunks, the error or {@link #COMPLETE} into a queue.
+	 */
+	private static class Collector implements Flow.Subscriber<ByteBuffer> {
+		final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+		Flow.Subscription subscription;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(ByteBuffer item) {
+			events.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			events.add(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			events.add(COMPLETE);
+		}
+
+		Object next() throws InterruptedException {
+			Object event = events.poll(10, TimeUnit.SECONDS);
+			Assert.assertNotNull("no signal from the publisher", event);
+			return event;
+		}
+	}
+
+	private static JSC constants(int n) {
+		JSC klass = klass("Constants").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).imports("java.util.*");
+		for (int i = 0; i < n; i++) {
+			klass.add(field(String.class, "C" + i).modifier(Modifier.PUBLIC)
+					.initValue("\"été " + i + "\""));
+		}
+		return klass;
+	}
+
+	@Test
+	public void given_UnboundedDemand_when_Publishing_then_ChunksContainTheCode()
+			throws Exception {
+		JSC klass = constants(500);
+		Collector collector = new Collector();
+		JSCPrinter.publish(klass, StandardCharsets.UTF_8, 17, executor)
+				.subscribe(collector);
+		collector.subscription.request(Long.MAX_VALUE);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (Object event = collector.next(); event != COMPLETE; event = collector
+				.next()) {
+			ByteBuffer chunk = (ByteBuffer) event;
+			Assert.assertTrue(chunk.remaining() > 0);
+			Assert.assertTrue(chunk.remaining() <= 17);
+			out.write(chunk.array(), chunk.position(), chunk.remaining());
+		}
+		Assert.assertEquals(JSCPrinter.pprint(klass),
+				new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void given_ADemandOfOneChunk_when_Publishing_then_TheHeaderIsSentAndRenderingWaits()
+			throws Exception {
+		final int[] pulled = new int[1];
+		JSC klass = klass("Constants").inPackage("com.javax0.jscglib.test")
+				.imports("java.util.*").add(new Supplier<JSC>() {
+					@Override
+					public JSC get() {
+						return pulled[0] < 100000 ? field(int.class,
+								"C" + pulled[0]++).initValue(0) : null;
+					}
+				});
+		Collector collector = new Collector();
+		JSCPrinter.publish(klass, StandardCharsets.UTF_8, executor).subscribe(
+				collector);
+		collector.subscription.request(1);
+		ByteBuffer header = (ByteBuffer) collector.next();
+		Assert.assertEquals("package com.javax0.jscglib.test;\n"
+				+ "import java.util.*;\n" + "class Constants{\n", new String(
+				header.array(), header.position(), header.remaining(),
+				StandardCharsets.UTF_8));
+		Assert.assertNull(collector.events.poll(100, TimeUnit.MILLISECONDS));
+		collector.subscription.request(1);
+		Assert.assertEquals(JSCPrinter.BUFFER_SIZE,
+				((ByteBuffer) collector.next()).remaining());
+		collector.subscription.cancel();
+		Assert.assertNull(collector.events.poll(100, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(pulled[0] < 10000);
+	}
+
+	@Test
+	public void given_ANonPositiveRequest_when_Publishing_then_AnErrorIsSignalled()
+			throws Exception {
+		Collector collector = new Collector();
+		JSCPrinter.publish(constants(10), StandardCharsets.UTF_8, executor)
+				.subscribe(collector);
+		collector.subscription.request(0);
+		Assert.assertTrue(collector.next() instanceof IllegalArgumentException);
+	}
+
+	@Test
+	public void given_TwoSubscribers_when_Publishing_then_BothGetTheWholeCode()
+			throws Exception {
+		JSC klass = constants(50).freeze();
+		Flow.Publisher<ByteBuffer> publisher = JSCPrinter.publish(klass,
+				StandardCharsets.UTF_8, executor);
+		for (int i = 0; i < 2; i++) {
+			Collector collector = new Collector();
+			publisher.subscribe(collector);
+			collector.subscription.request(Long.MAX_VALUE);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			for (Object event = collector.next(); event != COMPLETE; event = collector
+					.next()) {
+				ByteBuffer chunk = (ByteBuffer) event;
+				out.write(chunk.array(), chunk.position(), chunk.remaining());
+			}
+			Assert.assertEquals(klass.toString(),
+					new String(out.toByteArray(), StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_ATooSmallChunkSize_when_CreatingThePublisher_then_ThrowsException() {
+		JSCPrinter.publish(constants(1), StandardCharsets.UTF_8, 4, executor);
+	}
+}
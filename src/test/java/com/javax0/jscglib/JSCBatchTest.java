@@ -0,0 +1,75 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCBuilder.klass;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JSCBatchTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<JSC> classes(int n) {
+		List<JSC> classes = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			classes.add(klass("C" + i).inPackage("com.javax0.p" + (i % 3))
+					.field(int.class, "f"));
+		}
+		return classes;
+	}
+
+	@Test
+	public void given_ClassesInPackages_when_WritingBatch_then_FilesAreInThePackageDirectories()
+			throws Exception {
+		List<JSC> classes = classes(20);
+		Path root = folder.getRoot().toPath();
+		List<JSCBatch.Result> results = new JSCBatch(root).add(classes)
+				.threads(4).write();
+		Assert.assertEquals(20, results.size());
+		for (int i = 0; i < 20; i++) {
+			Path expected = root.resolve("com/javax0/p" + (i % 3) + "/C" + i
+					+ ".java");
+			Assert.assertEquals(expected, results.get(i).getFile());
+			Assert.assertEquals(classes.get(i).toString(), new String(
+					Files.readAllBytes(expected), Charset.forName("UTF-8")));
+		}
+	}
+
+	@Test
+	public void given_AWrittenBatch_when_WritingAgainWithOneChangedClass_then_OnlyThatFileIsWritten()
+			throws Exception {
+		List<JSC> classes = classes(5);
+		Path root = folder.getRoot().toPath();
+		new JSCBatch(root).add(classes).write();
+		classes.get(2).field(int.class, "g");
+		List<JSCBatch.Result> results = new JSCBatch(root).add(classes)
+				.write();
+		for (int i = 0; i < 5; i++) {
+			Assert.assertEquals(i == 2, results.get(i).isChanged());
+		}
+		Assert.assertEquals(classes.get(2).toString(), new String(
+				Files.readAllBytes(results.get(2).getFile()),
+				Charset.forName("UTF-8")));
+	}
+
+	@Test
+	public void given_ALargeFile_when_ComparingContent_then_ComparesInChunks()
+			throws Exception {
+		byte[] content = new byte[100 * 1024];
+		content[content.length - 1] = 1;
+		Path file = folder.newFile().toPath();
+		Files.write(file, content);
+		Assert.assertTrue(JSCBatch.hasContent(file, content));
+		content[content.length - 1] = 2;
+		Assert.assertFalse(JSCBatch.hasContent(file, content));
+	}
+}
@@ -0,0 +1,179 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCBuilder.klass;
+import static com.javax0.jscglib.JSCBuilder.method;
+
+import java.io.File;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JSCCompilerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static JSC callable(String name, String value) {
+		return klass(name).inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).interfaces(Callable.class)
+				.add(method(Object.class, "call").modifier(Modifier.PUBLIC)
+						.command("return " + value));
+	}
+
+	@Test
+	public void given_AClass_when_Compiling_then_ReturnsLoadedClass()
+			throws Exception {
+		Class<?> klass = new JSCCompiler().compile(callable("TestClass",
+				"\"hello\""));
+		Assert.assertEquals("com.javax0.jscglib.test.TestClass",
+				klass.getName());
+		Assert.assertEquals("hello",
+				((Callable<?>) klass.getDeclaredConstructor().newInstance())
+						.call());
+	}
+
+	@Test
+	public void given_ClassesReferencingEachOther_when_CompilingTogether_then_ReturnsAllClasses()
+			throws Exception {
+		List<Class<?>> classes = new JSCCompiler().compile(Arrays.asList(
+				callable("A", "new B().call()"), callable("B", "\"B\"")));
+		Assert.assertEquals(2, classes.size());
+		Assert.assertEquals("B",
+				((Callable<?>) classes.get(0).getDeclaredConstructor()
+						.newInstance()).call());
+	}
+
+	@Test(expected = JSCCompilationException.class)
+	public void given_AClassWithError_when_Compiling_then_ThrowsException() {
+		new JSCCompiler().compile(callable("TestClass", "nonExistent"));
+	}
+
+	@Test
+	public void given_TheSameClassTwice_when_CompilingWithCache_then_SecondCompilationIsACacheHit()
+			throws Exception {
+		JSCCompilerCache cache = new JSCCompilerCache(10);
+		JSCCompiler compiler = new JSCCompiler().cache(cache);
+		compiler.compile(callable("TestClass", "\"hello\""));
+		Class<?> klass = compiler.compile(callable("TestClass", "\"hello\""));
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals("hello",
+				((Callable<?>) klass.getDeclaredConstructor().newInstance())
+						.call());
+	}
+
+	@Test
+	public void given_AClassCompiledBefore_when_CompilingWithNewDirectoryCache_then_LoadsFromDisk()
+			throws Exception {
+		new JSCCompiler().cache(
+				new JSCCompilerCache(10, folder.getRoot().toPath())).compile(
+				callable("TestClass", "\"hello\""));
+		JSCCompilerCache cache = new JSCCompilerCache(10, folder.getRoot()
+				.toPath());
+		Class<?> klass = new JSCCompiler().cache(cache).compile(
+				callable("TestClass", "\"hello\""));
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals("hello",
+				((Callable<?>) klass.getDeclaredConstructor().newInstance())
+						.call());
+	}
+
+	@Test
+	public void given_AClassCompiledBefore_when_CompilingWithOtherClasspath_then_ItIsACacheMiss()
+			throws Exception {
+		JSCCompilerCache cache = new JSCCompilerCache(10);
+		new JSCCompiler().cache(cache).compile(callable("TestClass", "\"hello\""));
+		new JSCCompiler().cache(cache)
+				.options("-classpath", folder.getRoot().getPath())
+				.compile(callable("TestClass", "\"hello\""));
+		Assert.assertEquals(0, cache.getHits());
+		Assert.assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void given_AFileChangedInAClasspathDirectory_when_CompilingAgain_then_ItIsACacheMiss()
+			throws Exception {
+		JSCCompilerCache cache = new JSCCompilerCache(10);
+		File dependency = new File(folder.newFolder("classes"),
+				"Dependency.class");
+		Files.write(dependency.toPath(), new byte[] { 1 });
+		JSCCompiler compiler = new JSCCompiler().cache(cache).options(
+				"-classpath", dependency.getParent());
+		compiler.compile(callable("TestClass", "\"hello\""));
+		Files.write(dependency.toPath(), new byte[] { 1, 2 });
+		compiler.compile(callable("TestClass", "\"hello\""));
+		Assert.assertEquals(0, cache.getHits());
+		Assert.assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void given_TwoClassesDifferingInACommand_when_Fingerprinting_then_FingerprintsDiffer() {
+		Assert.assertEquals(callable("A", "1").fingerprint(),
+				callable("A", "1").fingerprint());
+		Assert.assertNotEquals(callable("A", "1").fingerprint(),
+				callable("A", "2").fingerprint());
+	}
+
+	private static JSC hostCallable(String name, String value) {
+		return klass(name).inPackage("com.javax0.jscglib")
+				.modifier(Modifier.PUBLIC).interfaces(Callable.class)
+				.add(method(Object.class, "call").modifier(Modifier.PUBLIC)
+						.command("return " + value));
+	}
+
+	@Test
+	public void given_AHost_when_CompilingHidden_then_ReturnsHiddenClassesThatDoNotClash()
+			throws Exception {
+		JSCCompiler compiler = new JSCCompiler()
+				.hiddenClasses(MethodHandles.lookup());
+		Class<?> first = compiler.compile(hostCallable("Hidden", "\"first\""));
+		Class<?> second = compiler
+				.compile(hostCallable("Hidden", "\"second\""));
+		Assert.assertTrue(first.isHidden());
+		Assert.assertNotSame(first, second);
+		Assert.assertSame(getClass().getClassLoader(), first.getClassLoader());
+		Assert.assertEquals("first", ((Callable<?>) first
+				.getDeclaredConstructor().newInstance()).call());
+		Assert.assertEquals("second", ((Callable<?>) second
+				.getDeclaredConstructor().newInstance()).call());
+	}
+
+	@Test
+	public void given_AHiddenClass_when_NotReferenced_then_ItIsUnloaded()
+			throws Exception {
+		WeakReference<Class<?>> hidden = new WeakReference<Class<?>>(
+				new JSCCompiler().hiddenClasses(MethodHandles.lookup())
+						.compile(hostCallable("Hidden", "\"hello\"")));
+		for (int i = 0; i < 100 && hidden.get() != null; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		Assert.assertNull(hidden.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_AClassInOtherPackage_when_CompilingHidden_then_ThrowsException() {
+		new JSCCompiler().hiddenClasses(MethodHandles.lookup()).compile(
+				callable("TestClass", "\"hello\""));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_AnAnonymousClass_when_CompilingHidden_then_ThrowsException() {
+		new JSCCompiler().hiddenClasses(MethodHandles.lookup()).compile(
+				hostCallable("Hidden", "new Object(){}"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_APublicLookup_when_SettingHost_then_ThrowsException() {
+		new JSCCompiler().hiddenClasses(MethodHandles.publicLookup());
+	}
+}
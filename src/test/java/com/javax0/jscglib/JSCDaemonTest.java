@@ -0,0 +1,207 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCBuilder.klass;
+import static com.javax0.jscglib.JSCBuilder.method;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JSCDaemonTest {
+	private final JSCCompilerCache cache = new JSCCompilerCache(10);
+	private JSCDaemon daemon;
+
+	@Before
+	public void start() throws Exception {
+		daemon = new JSCDaemon().cache(cache).start(0);
+	}
+
+	@After
+	public void stop() throws Exception {
+		daemon.close();
+	}
+
+	private static JSC callable(String name, String value) {
+		return klass(name).inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).interfaces(Callable.class)
+				.add(method(Object.class, "call").modifier(Modifier.PUBLIC)
+						.command("return " + value));
+	}
+
+	private JSCDaemonClient client() throws Exception {
+		return new JSCDaemonClient(daemon.getPort(), daemon.getToken());
+	}
+
+	@Test
+	public void given_Classes_when_RenderingInTheDaemon_then_ReturnsTheSameSourcesAsRenderedLocally()
+			throws Exception {
+		JSC a = callable("A", "\"a\"");
+		JSC b = callable("B", "\"b\"");
+		try (JSCDaemonClient client = client()) {
+			Map<String, String> sources = client.render(Arrays.asList(a, b));
+			Assert.assertEquals(2, sources.size());
+			Assert.assertEquals(JSCPrinter.pprint(a),
+					sources.get("com.javax0.jscglib.test.A"));
+			Assert.assertEquals(JSCPrinter.pprint(b),
+					sources.get("com.javax0.jscglib.test.B"));
+		}
+	}
+
+	@Test
+	public void given_AClass_when_CompilingInTheDaemon_then_TheByteCodeCanBeLoaded()
+			throws Exception {
+		try (JSCDaemonClient client = client()) {
+			Map<String, byte[]> bytecodes = client.compile(Arrays
+					.asList(callable("A", "\"hello\"")));
+			Class<?> klass = new JSCCompiler.ByteCodeClassLoader(getClass()
+					.getClassLoader(), bytecodes)
+					.loadClass("com.javax0.jscglib.test.A");
+			Assert.assertEquals("hello",
+					((Callable<?>) klass.getDeclaredConstructor()
+							.newInstance()).call());
+		}
+	}
+
+	@Test
+	public void given_TheSameClassTwice_when_CompilingInTheDaemon_then_SecondCompilationIsACacheHit()
+			throws Exception {
+		try (JSCDaemonClient client = client()) {
+			client.compile(Arrays.asList(callable("A", "\"hello\"")));
+		}
+		try (JSCDaemonClient client = client()) {
+			client.compile(Arrays.asList(callable("A", "\"hello\"")));
+		}
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(1, cache.getHits());
+	}
+
+	@Test(expected = JSCCompilationException.class)
+	public void given_AClassWithError_when_CompilingInTheDaemon_then_ThrowsException()
+			throws Exception {
+		try (JSCDaemonClient client = client()) {
+			client.compile(Arrays.asList(callable("A", "nonExistent")));
+		}
+	}
+
+	@Test
+	public void given_ACompilationError_when_CompilingInTheDaemon_then_TheConnectionCanBeUsedFurther()
+			throws Exception {
+		try (JSCDaemonClient client = client()) {
+			try {
+				client.compile(Arrays.asList(callable("A", "nonExistent")));
+				Assert.fail();
+			} catch (JSCCompilationException e) {
+				Assert.assertTrue(e.getMessage().contains("nonExistent"));
+			}
+			Assert.assertEquals(1,
+					client.render(Arrays.asList(callable("A", "1"))).size());
+		}
+	}
+
+	@Test(expected = UncheckedIOException.class)
+	public void given_AWrongToken_when_Connecting_then_RequestsFail()
+			throws Exception {
+		String wrong = daemon.getToken().startsWith("0") ? "1" : "0";
+		wrong += daemon.getToken().substring(1);
+		try (JSCDaemonClient client = new JSCDaemonClient(daemon.getPort(),
+				wrong)) {
+			client.render(Arrays.asList(callable("A", "1")));
+		}
+	}
+
+	@Test
+	public void given_ParallelClients_when_Compiling_then_AllGetTheirClasses()
+			throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Object>> results = new java.util.ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				final String name = "C" + i;
+				results.add(executor.submit(() -> {
+					try (JSCDaemonClient client = client()) {
+						Map<String, byte[]> bytecodes = client.compile(Arrays
+								.asList(callable(name, "\"" + name + "\"")));
+						return ((Callable<?>) new JSCCompiler.ByteCodeClassLoader(
+								getClass().getClassLoader(), bytecodes)
+								.loadClass("com.javax0.jscglib.test." + name)
+								.getDeclaredConstructor().newInstance()).call();
+					}
+				}));
+			}
+			for (int i = 0; i < 8; i++) {
+				Assert.assertEquals("C" + i, results.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_AShortToken_when_Connecting_then_ThrowsException()
+			throws Exception {
+		new JSCDaemonClient(daemon.getPort(), "wrong");
+	}
+
+	/**
+	 * Connect without a client, present the token and send the frame.
+	 *
+	 * @return the first byte the daemon answers or -1 if it closed the
+	 *         connection
+	 */
+	private int sendRaw(String token, byte[] frame) throws Exception {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+				daemon.getPort())) {
+			DataOutputStream out = new DataOutputStream(
+					socket.getOutputStream());
+			out.write(token.getBytes(StandardCharsets.US_ASCII));
+			out.write(frame);
+			out.flush();
+			socket.setSoTimeout(10000);
+			return socket.getInputStream().read();
+		}
+	}
+
+	@Test
+	public void given_AHugeFrameSize_when_Sent_then_TheDaemonClosesTheConnection()
+			throws Exception {
+		Assert.assertEquals(-1, sendRaw(daemon.getToken(), new byte[] { 0x7F,
+				-1, -1, -1 }));
+	}
+
+	@Test
+	public void given_AnObjectThatIsNotPartOfTheModel_when_Sent_then_TheDaemonClosesTheConnection()
+			throws Exception {
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		JSCDaemon.writeFrame(new DataOutputStream(frame),
+				new java.util.HashMap<String, String>());
+		Assert.assertEquals(-1,
+				sendRaw(daemon.getToken(), frame.toByteArray()));
+	}
+
+	@Test
+	public void given_AClosedDaemon_when_StartedAgain_then_ItServesRequests()
+			throws Exception {
+		daemon.close();
+		daemon.start(0);
+		try (JSCDaemonClient client = client()) {
+			Assert.assertEquals(1,
+					client.render(Arrays.asList(callable("A", "1"))).size());
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCBuilder.klass;
+import static com.javax0.jscglib.JSCBuilder.method;
+
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JSCEventsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static JSC sample() {
+		return klass("Recorded").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).interfaces(Callable.class)
+				.add(method(Object.class, "call").modifier(Modifier.PUBLIC)
+						.command("return 1"));
+	}
+
+	private static RecordedEvent find(List<RecordedEvent> events, String name) {
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals(name)) {
+				return event;
+			}
+		}
+		Assert.fail("There is no event '" + name + "' in the recording");
+		return null;
+	}
+
+	@Test
+	public void given_ARecording_when_RenderingAndCompiling_then_EventsAreRecorded()
+			throws Exception {
+		Path file = folder.newFile("recording.jfr").toPath();
+		String code;
+		try (Recording recording = new Recording()) {
+			recording.enable("com.javax0.jscglib.Render");
+			recording.enable("com.javax0.jscglib.Compile");
+			recording.enable("com.javax0.jscglib.CacheLookup");
+			recording.enable("com.javax0.jscglib.DefineClass");
+			recording.start();
+			code = JSCPrinter.pprint(sample());
+			new JSCCompiler().cache(new JSCCompilerCache(1)).compile(sample());
+			recording.stop();
+			recording.dump(file);
+		}
+		List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+		RecordedEvent render = find(events, "com.javax0.jscglib.Render");
+		Assert.assertEquals("com.javax0.jscglib.test.Recorded",
+				render.getString("name"));
+		Assert.assertEquals(code.length(), render.getLong("characters"));
+		RecordedEvent compile = find(events, "com.javax0.jscglib.Compile");
+		Assert.assertEquals("com.javax0.jscglib.test.Recorded",
+				compile.getString("classes"));
+		Assert.assertTrue(compile.getBoolean("successful"));
+		RecordedEvent lookup = find(events, "com.javax0.jscglib.CacheLookup");
+		Assert.assertFalse(lookup.getBoolean("hit"));
+		Assert.assertEquals("none", lookup.getString("tier"));
+		RecordedEvent define = find(events, "com.javax0.jscglib.DefineClass");
+		Assert.assertEquals("com.javax0.jscglib.test.Recorded",
+				define.getString("className"));
+	}
+}
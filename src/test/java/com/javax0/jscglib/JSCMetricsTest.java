@@ -0,0 +1,102 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCBuilder.klass;
+import static com.javax0.jscglib.JSCBuilder.method;
+
+import java.lang.reflect.Modifier;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JSCMetricsTest {
+
+	private static JSC sample() {
+		return klass("Sample").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).interfaces(Callable.class)
+				.field(int.class, "a").field(int.class, "b")
+				.add(method(Object.class, "call").modifier(Modifier.PUBLIC)
+						.command("return a + b"));
+	}
+
+	@Test
+	public void given_ARegisteredListener_when_Rendering_then_NodesAndCharactersAreCounted() {
+		JSCMetrics metrics = new JSCMetrics();
+		JSCInstrumentation.addListener(metrics);
+		try {
+			String code = JSCPrinter.pprint(sample());
+			JSCMetrics.Snapshot snapshot = metrics.snapshot();
+			Assert.assertEquals(1, snapshot.getRenders());
+			Assert.assertEquals(code.length(), snapshot.getCharacters());
+			Assert.assertEquals(1L, (long) snapshot.getNodes().get(JSCType.CLASS));
+			Assert.assertEquals(2L, (long) snapshot.getNodes().get(JSCType.FIELD));
+			Assert.assertEquals(1L, (long) snapshot.getNodes().get(JSCType.METHOD));
+			Assert.assertEquals(1L, (long) snapshot.getNodes().get(JSCType.COMMAND));
+			Assert.assertEquals(1, snapshot.getClasses()
+					.get("com.javax0.jscglib.test.Sample").getRenders());
+		} finally {
+			JSCInstrumentation.removeListener(metrics);
+		}
+	}
+
+	@Test
+	public void given_ARegisteredListener_when_RenderingInParallel_then_CountsAreTheSameAsSequential() {
+		JSCMetrics sequential = new JSCMetrics();
+		JSCMetrics parallel = new JSCMetrics();
+		JSC code = sample();
+		JSCInstrumentation.addListener(sequential);
+		try {
+			JSCPrinter.pprint(code);
+		} finally {
+			JSCInstrumentation.removeListener(sequential);
+		}
+		ForkJoinPool pool = new ForkJoinPool(2);
+		JSCInstrumentation.addListener(parallel);
+		try {
+			JSCPrinter.pprintParallel(code, pool, 1);
+		} finally {
+			JSCInstrumentation.removeListener(parallel);
+			pool.shutdown();
+		}
+		Assert.assertEquals(sequential.snapshot().getNodes(), parallel
+				.snapshot().getNodes());
+		Assert.assertEquals(sequential.snapshot().getCharacters(), parallel
+				.snapshot().getCharacters());
+	}
+
+	@Test
+	public void given_AnInvalidOption_when_Compiling_then_AFailedCompilationIsCounted() {
+		JSCMetrics metrics = new JSCMetrics();
+		JSCInstrumentation.addListener(metrics);
+		try {
+			new JSCCompiler().options("-no-such-option").compile(sample());
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals(1, metrics.snapshot().getFailedCompilations());
+		} finally {
+			JSCInstrumentation.removeListener(metrics);
+		}
+	}
+
+	@Test
+	public void given_ARegisteredListener_when_CompilingWithCache_then_CompilationsAndCacheLookupsAreCounted() {
+		JSCMetrics metrics = new JSCMetrics();
+		JSCInstrumentation.addListener(metrics);
+		try {
+			JSCCompiler compiler = new JSCCompiler()
+					.cache(new JSCCompilerCache(10));
+			compiler.compile(sample());
+			compiler.compile(sample());
+			JSCMetrics.Snapshot snapshot = metrics.snapshot();
+			Assert.assertEquals(1, snapshot.getCompilations());
+			Assert.assertEquals(0, snapshot.getFailedCompilations());
+			Assert.assertEquals(1, snapshot.getCompiledClasses());
+			Assert.assertEquals(1, snapshot.getCacheHits());
+			Assert.assertEquals(1, snapshot.getCacheMisses());
+			Assert.assertEquals(0.5, snapshot.getCacheHitRate(), 0.0);
+		} finally {
+			JSCInstrumentation.removeListener(metrics);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCBuilder.argument;
+import static com.javax0.jscglib.JSCBuilder.field;
+import static com.javax0.jscglib.JSCBuilder.klass;
+import static com.javax0.jscglib.JSCBuilder.method;
+import static com.javax0.jscglib.JSCExpression.call;
+import static com.javax0.jscglib.JSCExpression.le;
+import static com.javax0.jscglib.JSCExpression.literal;
+import static com.javax0.jscglib.JSCExpression.local;
+import static com.javax0.jscglib.JSCExpression.negate;
+import static com.javax0.jscglib.JSCExpression.newInstance;
+import static com.javax0.jscglib.JSCExpression.not;
+import static com.javax0.jscglib.JSCExpression.nullLiteral;
+import static com.javax0.jscglib.JSCExpression.plus;
+import static com.javax0.jscglib.JSCExpression.staticCall;
+import static com.javax0.jscglib.JSCExpression.staticField;
+import static com.javax0.jscglib.JSCStatement.assign;
+import static com.javax0.jscglib.JSCStatement.block;
+import static com.javax0.jscglib.JSCStatement.declare;
+import static com.javax0.jscglib.JSCStatement.expression;
+import static com.javax0.jscglib.JSCStatement.forLoop;
+import static com.javax0.jscglib.JSCStatement.ifThen;
+import static com.javax0.jscglib.JSCStatement.returns;
+import static com.javax0.jscglib.JSCStatement.whileLoop;
+
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JSCModelTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static JSC sample(String name) {
+		JSC klass = klass(name).inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).imports("java.util.*")
+				.interfaces(Callable.class).parent(Object.class)
+				.annotation("@Deprecated").memoizeMembers();
+		klass.add(field(String.class, "name").modifier(Modifier.PRIVATE)
+				.initValue("\"héllo\""));
+		klass.add(field(long.class, "total").modifier(Modifier.PUBLIC));
+		klass.add(method(Object.class, "call").modifier(Modifier.PUBLIC)
+				.exception("Exception").command("return name")
+				.commandBlock("{ total++; }"));
+		klass.add(method(long.class, "sum")
+				.modifier(Modifier.PUBLIC)
+				.arguments(argument(int.class, "n"))
+				.commands(
+						declare(long.class, "s", literal(-5L)),
+						declare(double.class, "d", negate(literal(1.5))),
+						declare(String.class, "t", literal("x\n")),
+						declare(Object.class, "o", nullLiteral()),
+						declare(boolean.class, "b", not(literal(false))),
+						forLoop(declare(int.class, "i", literal(-1)),
+								le(local("i"), local("n")),
+								assign(local("i"), plus(local("i"), literal(1))),
+								assign(local("s"), plus(local("s"), local("i")))),
+						whileLoop(local("b"), assign(local("b"), literal(true))),
+						ifThen(local("b"), returns(local("s"))).orElse(
+								block(expression(call(local("o"), "hashCode")))),
+						expression(staticCall(System.class, "gc")),
+						expression(newInstance(Object.class)),
+						assign(JSCExpression.field("total"),
+								staticField("Long", "MAX_VALUE")),
+						returns(JSCExpression.field(call("self"), "total"))));
+		return klass;
+	}
+
+	@Test
+	public void given_AClass_when_WritingAndReading_then_ReturnsTheSameClass() {
+		JSC klass = sample("A");
+		JSC read = new JSCModelReader(ByteBuffer.wrap(new JSCModelWriter()
+				.add(klass).toByteArray())).read("com.javax0.jscglib.test.A");
+		Assert.assertEquals(klass.fingerprint(), read.fingerprint());
+		Assert.assertEquals(JSCPrinter.pprint(klass), JSCPrinter.pprint(read));
+		Assert.assertTrue(read.isMemoizing());
+		Assert.assertFalse(read.isFrozen());
+	}
+
+	@Test
+	public void given_AModelFile_when_Mapping_then_ClassesAreReadByName()
+			throws Exception {
+		Path file = folder.newFile("model.jscm").toPath();
+		new JSCModelWriter().addAll(Arrays.asList(sample("A"), sample("B")))
+				.write(file);
+		JSCModelReader reader = JSCModelReader.open(file);
+		Assert.assertEquals(
+				Arrays.asList("com.javax0.jscglib.test.A",
+						"com.javax0.jscglib.test.B"), reader.getClassNames());
+		Assert.assertEquals(sample("B").fingerprint(),
+				reader.read("com.javax0.jscglib.test.B").fingerprint());
+		Assert.assertNull(reader.read("com.javax0.jscglib.test.C"));
+		Assert.assertEquals(2, reader.readAll().size());
+	}
+
+	@Test
+	public void given_AReadClass_when_Compiling_then_ItWorks() throws Exception {
+		JSC klass = klass("Adder").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).add(method(int.class, "add")
+						.modifier(Modifier.PUBLIC, Modifier.STATIC)
+						.arguments(argument(int.class, "a"),
+								argument(int.class, "b"))
+						.commands(returns(plus(local("a"), local("b")))));
+		JSC read = new JSCModelReader(ByteBuffer.wrap(new JSCModelWriter()
+				.add(klass).toByteArray())).readAll().get(0);
+		Assert.assertEquals(5, new JSCCompiler().compile(read)
+				.getMethod("add", int.class, int.class).invoke(null, 2, 3));
+	}
+
+	@Test
+	public void given_RepeatedNames_when_Writing_then_TheyAreStoredOnce() {
+		byte[] model = new JSCModelWriter().add(sample("A")).add(sample("B"))
+				.toByteArray();
+		String text = new String(model, StandardCharsets.ISO_8859_1);
+		Assert.assertEquals(text.indexOf("java.lang.Object"),
+				text.lastIndexOf("java.lang.Object"));
+		Assert.assertEquals(text.indexOf("java.util.concurrent.Callable"),
+				text.lastIndexOf("java.util.concurrent.Callable"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_NotAModel_when_Reading_then_ThrowsException() {
+		new JSCModelReader(ByteBuffer.wrap("not a model at all"
+				.getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_ATruncatedModel_when_Reading_then_ThrowsException() {
+		byte[] model = new JSCModelWriter().add(sample("A")).toByteArray();
+		new JSCModelReader(ByteBuffer.wrap(Arrays.copyOf(model,
+				model.length - 10))).read("com.javax0.jscglib.test.A");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_AHugeStringCount_when_Reading_then_ThrowsException() {
+		ByteBuffer model = ByteBuffer.wrap(new JSCModelWriter().add(
+				sample("A")).toByteArray());
+		model.putInt(12, Integer.MAX_VALUE);
+		new JSCModelReader(model);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_AHugeStringLength_when_Reading_then_ThrowsException() {
+		ByteBuffer model = ByteBuffer.wrap(new JSCModelWriter().add(
+				sample("A")).toByteArray());
+		int firstString = model.getInt(JSCModelWriter.HEADER_SIZE
+				+ model.getInt(8) * JSCModelWriter.CLASS_INDEX_ENTRY_SIZE);
+		model.position(firstString);
+		model.put(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+				(byte) 0xFF, 0x07 });
+		model.position(0);
+		new JSCModelReader(model).read("com.javax0.jscglib.test.A");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_ANegativeStringLength_when_Reading_then_ThrowsException() {
+		ByteBuffer model = ByteBuffer.wrap(new JSCModelWriter().add(
+				sample("A")).toByteArray());
+		int firstString = model.getInt(JSCModelWriter.HEADER_SIZE
+				+ model.getInt(8) * JSCModelWriter.CLASS_INDEX_ENTRY_SIZE);
+		model.position(firstString);
+		for (int i = 0; i < 9; i++) {
+			model.put((byte) 0xFF);
+		}
+		model.put((byte) 0x01);
+		model.position(0);
+		new JSCModelReader(model).read("com.javax0.jscglib.test.A");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_AClassWithLazyMembers_when_Writing_then_ThrowsException() {
+		new JSCModelWriter().add(klass("A").add(
+				Arrays.asList(field(int.class, "x")).iterator()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_TheSameClassTwice_when_Writing_then_ThrowsException() {
+		new JSCModelWriter().add(sample("A")).add(sample("A"));
+	}
+}
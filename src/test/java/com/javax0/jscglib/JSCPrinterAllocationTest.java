@@ -0,0 +1,162 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCBuilder.argument;
+import static com.javax0.jscglib.JSCBuilder.command;
+import static com.javax0.jscglib.JSCBuilder.constructor;
+import static com.javax0.jscglib.JSCBuilder.field;
+import static com.javax0.jscglib.JSCBuilder.klass;
+import static com.javax0.jscglib.JSCBuilder.method;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that rendering does not allocate more memory per character of the
+ * generated code than the budget stored in
+ * {@code allocation-budget.properties}. The allocated bytes are measured by
+ * the {@link com.sun.management.ThreadMXBean} of the current thread, the
+ * test is skipped on JVMs that do not support it.
+ */
+public class JSCPrinterAllocationTest {
+
+	private static final int REPEAT = 20;
+
+	private com.sun.management.ThreadMXBean threadMXBean;
+	private Properties budget;
+
+	@Before
+	public void setUp() throws IOException {
+		final java.lang.management.ThreadMXBean bean = ManagementFactory
+				.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		threadMXBean = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+		threadMXBean.setThreadAllocatedMemoryEnabled(true);
+		budget = new Properties();
+		try (InputStream is = getClass().getResourceAsStream(
+				"allocation-budget.properties")) {
+			budget.load(is);
+		}
+	}
+
+	@Test
+	public void given_RepresentativeModels_when_RenderingToString_then_AllocationIsWithinBudget() {
+		final double limit = Double.parseDouble(budget
+				.getProperty("string.bytesPerChar"));
+		for (final JSC model : models()) {
+			final int length = model.toString().length();
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < REPEAT; i++) {
+				final long start = allocated();
+				model.toString();
+				best = Math.min(best, allocated() - start);
+			}
+			assertWithinBudget(model, best, length, limit);
+		}
+	}
+
+	@Test
+	public void given_RepresentativeModels_when_RenderingToSink_then_AllocationIsWithinBudget()
+			throws IOException {
+		final double limit = Double.parseDouble(budget
+				.getProperty("sink.bytesPerChar"));
+		final Appendable sink = new NullAppendable();
+		for (final JSC model : models()) {
+			final int length = model.toString().length();
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < REPEAT; i++) {
+				final long start = allocated();
+				JSCPrinter.pprint(model, sink);
+				best = Math.min(best, allocated() - start);
+			}
+			assertWithinBudget(model, best, length, limit);
+		}
+	}
+
+	//
+	// A U X M E T H O D S
+	//
+	private long allocated() {
+		return threadMXBean.getThreadAllocatedBytes(Thread.currentThread()
+				.getId());
+	}
+
+	private static void assertWithinBudget(JSC model, long bytes, int length,
+			double limit) {
+		final double bytesPerChar = (double) bytes / length;
+		Assert.assertTrue("Rendering " + model.getIdentifier() + " allocated "
+				+ bytesPerChar + " bytes per character, the budget is "
+				+ limit, bytesPerChar <= limit);
+	}
+
+	/**
+	 * The models of the JSCTest source files and synthetic large classes.
+	 */
+	private static List<JSC> models() {
+		final List<JSC> models = new ArrayList<>();
+		models.add(klass("EmptyClass").inPackage("com.javax0.jscglib.test"));
+		models.add(klass("FieldClass").inPackage("com.javax0.jscglib")
+				.add(field(Integer.class, "name").initValue(53)));
+		models.add(klass("MethodClass").inPackage("com.javax0.jscglib")
+				.add(method(Object.class, "name").argument(Object.class, "arg")
+						.command("System.out.println(\"hello\")")));
+		final JSC complex = klass("ComplexClass");
+		complex.add(
+				constructor(complex).argument(Long.class, "lng")
+						.argument(Integer.class, "inti")
+						.modifier(Modifier.PROTECTED)
+						.command(command("this.lng = lng"))
+						.command(command("that.lng = lng")))
+				.add(method("myMethod")
+						.returnType("String")
+						.arguments(argument("int", "i"),
+								argument("String", "s")).command("return s"))
+				.field("Object", "object").field(Object.class, "object2")
+				.add(field("object3").modifier(Modifier.FINAL).initValue("55")
+						.returnType("Object"));
+		models.add(complex);
+		models.add(large("LargeClass", 1000));
+		models.add(large("HugeClass", 20000));
+		return models;
+	}
+
+	private static JSC large(String name, int members) {
+		final JSC klass = klass(name).inPackage("com.javax0.jscglib.test");
+		for (int i = 0; i < members; i++) {
+			klass.add(
+					method(int.class, "m" + i).modifier(Modifier.PUBLIC)
+							.argument(int.class, "a").command("a++")
+							.commandBlock("if (a > 0) { a--; }")
+							.command("return a + " + i)).add(
+					field(int.class, "f" + i).initValue(i));
+		}
+		return klass;
+	}
+
+	private static class NullAppendable implements Appendable {
+		@Override
+		public Appendable append(CharSequence csq) {
+			return this;
+		}
+
+		@Override
+		public Appendable append(CharSequence csq, int start, int end) {
+			return this;
+		}
+
+		@Override
+		public Appendable append(char c) {
+			return this;
+		}
+	}
+}
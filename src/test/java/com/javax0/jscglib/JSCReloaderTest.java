@@ -0,0 +1,103 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCBuilder.klass;
+import static com.javax0.jscglib.JSCBuilder.method;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Modifier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JSCReloaderTest {
+
+	public interface Strategy {
+		Object call();
+	}
+
+	private static JSC strategy(String value) {
+		return klass("Strategy").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).interfaces(Strategy.class)
+				.add(method(Object.class, "call").modifier(Modifier.PUBLIC)
+						.command("return " + value));
+	}
+
+	@Test
+	public void given_AReloadedClass_when_Getting_then_ReturnsTheNewVersion()
+			throws Exception {
+		JSCReloader<Strategy> reloader = new JSCReloader<>(Strategy.class);
+		Assert.assertNull(reloader.get());
+		reloader.reload(strategy("\"first\""));
+		Class<?> first = reloader.getLoadedClass();
+		Assert.assertEquals("first", reloader.get().call());
+		reloader.reload(strategy("\"second\""));
+		Assert.assertEquals("second", reloader.get().call());
+		Assert.assertNotSame(first, reloader.getLoadedClass());
+		Assert.assertNotSame(first.getClassLoader(), reloader
+				.getLoadedClass().getClassLoader());
+		Assert.assertEquals(2, reloader.getReloads());
+	}
+
+	@Test
+	public void given_ManyReloads_when_GarbageCollecting_then_OnlyTheCurrentVersionIsAlive()
+			throws Exception {
+		JSCReloader<Strategy> reloader = new JSCReloader<>(Strategy.class)
+				.compiler(new JSCCompiler().cache(new JSCCompilerCache(10)));
+		for (int i = 0; i < 50; i++) {
+			reloader.reload(strategy("\"" + i % 2 + "\""));
+		}
+		Assert.assertEquals("1", reloader.get().call());
+		for (int i = 0; i < 100 && reloader.getLiveVersions() > 1; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		Assert.assertEquals(1, reloader.getLiveVersions());
+		Assert.assertEquals("1", reloader.get().call());
+	}
+
+	@Test
+	public void given_HiddenClasses_when_ReloadingAndGarbageCollecting_then_OnlyTheCurrentVersionIsAlive()
+			throws Exception {
+		JSCReloader<Strategy> reloader = new JSCReloader<>(Strategy.class)
+				.compiler(new JSCCompiler().hiddenClasses(MethodHandles
+						.lookup()));
+		for (int i = 0; i < 20; i++) {
+			reloader.reload(klass("Strategy").inPackage("com.javax0.jscglib")
+					.modifier(Modifier.PUBLIC).interfaces(Strategy.class)
+					.add(method(Object.class, "call").modifier(Modifier.PUBLIC)
+							.command("return " + i)));
+		}
+		Assert.assertTrue(reloader.getLoadedClass().isHidden());
+		Assert.assertEquals(19, reloader.get().call());
+		for (int i = 0; i < 100 && reloader.getLiveVersions() > 1; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		Assert.assertEquals(1, reloader.getLiveVersions());
+	}
+
+	@Test
+	public void given_AClassWithError_when_Reloading_then_TheCurrentVersionStays()
+			throws Exception {
+		JSCReloader<Strategy> reloader = new JSCReloader<>(Strategy.class);
+		reloader.reload(strategy("\"first\""));
+		try {
+			reloader.reload(strategy("nonExistent"));
+			Assert.fail();
+		} catch (JSCCompilationException e) {
+			// expected
+		}
+		Assert.assertEquals("first", reloader.get().call());
+		Assert.assertEquals(1, reloader.getReloads());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_AClassOfOtherType_when_Reloading_then_ThrowsException() {
+		new JSCReloader<>(Runnable.class).reload(strategy("null"));
+	}
+
+	@Test
+	public void given_AHotSpotJvm_when_QueryingMetaspace_then_ReturnsPositive() {
+		Assert.assertTrue(JSCReloader.getMetaspaceUsed() > 0);
+	}
+}
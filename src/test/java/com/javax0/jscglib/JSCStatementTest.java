@@ -0,0 +1,281 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCBuilder.argument;
+import static com.javax0.jscglib.JSCBuilder.field;
+import static com.javax0.jscglib.JSCBuilder.klass;
+import static com.javax0.jscglib.JSCBuilder.method;
+import static com.javax0.jscglib.JSCExpression.and;
+import static com.javax0.jscglib.JSCExpression.call;
+import static com.javax0.jscglib.JSCExpression.divide;
+import static com.javax0.jscglib.JSCExpression.gt;
+import static com.javax0.jscglib.JSCExpression.le;
+import static com.javax0.jscglib.JSCExpression.literal;
+import static com.javax0.jscglib.JSCExpression.local;
+import static com.javax0.jscglib.JSCExpression.lt;
+import static com.javax0.jscglib.JSCExpression.minus;
+import static com.javax0.jscglib.JSCExpression.not;
+import static com.javax0.jscglib.JSCExpression.or;
+import static com.javax0.jscglib.JSCExpression.plus;
+import static com.javax0.jscglib.JSCExpression.remainder;
+import static com.javax0.jscglib.JSCExpression.times;
+import static com.javax0.jscglib.JSCStatement.assign;
+import static com.javax0.jscglib.JSCStatement.declare;
+import static com.javax0.jscglib.JSCStatement.expression;
+import static com.javax0.jscglib.JSCStatement.forLoop;
+import static com.javax0.jscglib.JSCStatement.ifThen;
+import static com.javax0.jscglib.JSCStatement.returns;
+import static com.javax0.jscglib.JSCStatement.whileLoop;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JSCStatementTest {
+
+	private static JSC sum() {
+		return method(int.class, "sum")
+				.modifier(Modifier.PUBLIC, Modifier.STATIC)
+				.arguments(argument(int.class, "n"))
+				.commands(
+						declare(int.class, "s", literal(0)),
+						forLoop(declare(int.class, "i", literal(1)),
+								le(local("i"), local("n")),
+								assign(local("i"), plus(local("i"), literal(1))),
+								assign(local("s"), plus(local("s"), local("i")))),
+						returns(local("s")));
+	}
+
+	private static JSC calculator() {
+		JSC klass = klass("Calculator").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC);
+		klass.add(field(long.class, "total").modifier(Modifier.PUBLIC));
+		klass.add(sum());
+		klass.add(method(long.class, "add")
+				.modifier(Modifier.PUBLIC)
+				.arguments(argument(int.class, "x"))
+				.commands(
+						assign(JSCExpression.field("total"),
+								plus(JSCExpression.field("total"), local("x"))),
+						returns(JSCExpression.field("total"))));
+		klass.add(method(double.class, "mean")
+				.modifier(Modifier.PUBLIC, Modifier.STATIC)
+				.arguments(argument(double.class, "a"),
+						argument(long.class, "b"))
+				.commands(returns(divide(plus(local("a"), local("b")),
+						literal(2)))));
+		klass.add(method(boolean.class, "between")
+				.modifier(Modifier.PUBLIC, Modifier.STATIC)
+				.arguments(argument(double.class, "x"),
+						argument(double.class, "low"),
+						argument(double.class, "high"))
+				.commands(returns(and(not(lt(local("x"), local("low"))),
+						le(local("x"), local("high"))))));
+		klass.add(method(int.class, "collatz")
+				.modifier(Modifier.PUBLIC, Modifier.STATIC)
+				.arguments(argument(long.class, "n"))
+				.commands(
+						declare(int.class, "steps", literal(0)),
+						whileLoop(
+								gt(local("n"), literal(1)),
+								ifThen(JSCExpression.eq(
+										remainder(local("n"), literal(2)),
+										literal(0)),
+										assign(local("n"),
+												divide(local("n"), literal(2))))
+										.orElse(assign(
+												local("n"),
+												plus(times(literal(3),
+														local("n")), literal(1)))),
+								assign(local("steps"),
+										plus(local("steps"), literal(1)))),
+						returns(local("steps"))));
+		klass.add(method(int.class, "sign")
+				.modifier(Modifier.PUBLIC, Modifier.STATIC)
+				.arguments(argument(int.class, "x"))
+				.commands(
+						ifThen(or(lt(local("x"), literal(0)),
+								JSCExpression.eq(local("x"), literal(0))),
+								ifThen(lt(local("x"), literal(0)),
+										returns(literal(-1))),
+								returns(literal(0))),
+						returns(literal(1))));
+		return klass;
+	}
+
+	@Test
+	public void given_TypedStatements_when_Printing_then_ReturnsJavaCode() {
+		Assert.assertEquals("public static int sum(int n){\n"
+				+ "  int s = 0;\n"
+				+ "  for (int i = 1; i <= n; i = i + 1) {\n"
+				+ "    s = s + i;\n" + "  }\n" + "  return s;\n" + "}\n",
+				JSCPrinter.pprint(sum()));
+	}
+
+	@Test
+	public void given_AnIfWithConstantCondition_when_Folding_then_TheTakenBranchRemains() {
+		JSCStatement statement = ifThen(lt(literal(1), literal(2)),
+				assign(local("x"), literal(1))).orElse(
+				assign(local("x"), literal(2)));
+		Assert.assertEquals(JSCStatement.Kind.BLOCK, statement.fold()
+				.getKind());
+		Assert.assertEquals(1, statement.fold().getBody().size());
+		Assert.assertEquals(assign(local("x"), literal(1)).fingerprint(),
+				statement.fold().getBody().get(0).fingerprint());
+	}
+
+	@Test
+	public void given_AnIfWithConstantCondition_when_FoldingChangesReachability_then_ItIsNotFolded() {
+		JSCStatement statement = ifThen(literal(true), returns(literal(1)));
+		Assert.assertSame(statement, statement.fold());
+	}
+
+	@Test
+	public void given_EqualStatements_when_Fingerprinting_then_FingerprintsAreEqual() {
+		Assert.assertEquals(sum().fingerprint(), sum().fingerprint());
+		Assert.assertNotEquals(sum().fingerprint(),
+				sum().command(returns(literal(0))).fingerprint());
+	}
+
+	@Test
+	public void given_ANegatedNegativeLiteral_when_Printing_then_TheLiteralIsParenthesized() {
+		Assert.assertEquals("-(-0.0)",
+				JSCExpression.negate(literal(-0.0)).toString());
+		Assert.assertEquals("-(-1)", JSCExpression.negate(literal(-1))
+				.toString());
+	}
+
+	@Test
+	public void given_TwoExpressions_when_Comparing_then_ThePartsAreCompared() {
+		Assert.assertEquals(plus(local("a"), literal(1)),
+				plus(local("a"), literal(1)));
+		Assert.assertEquals(plus(local("a"), literal(1)).hashCode(),
+				plus(local("a"), literal(1)).hashCode());
+		Assert.assertNotEquals(plus(local("a"), literal(1)),
+				plus(local("a"), literal(1L)));
+		Assert.assertNotEquals(plus(local("a"), literal(1)),
+				plus(local("b"), literal(1)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_AnUndeclaredVariable_when_Validating_then_ThrowsException() {
+		JSCStatement.validate(method(int.class, "f").commands(
+				returns(local("x"))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_ANonBooleanCondition_when_Validating_then_ThrowsException() {
+		JSCStatement.validate(method("void", "f").arguments(
+				argument(int.class, "x")).commands(
+				whileLoop(local("x"), returns())));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_AMissingReturn_when_Validating_then_ThrowsException() {
+		JSCStatement.validate(method(int.class, "f").arguments(
+				argument(int.class, "x")).commands(
+				ifThen(lt(local("x"), literal(0)), returns(literal(0)))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_AVoidMethodReturningAValue_when_Validating_then_ThrowsException() {
+		JSCStatement.validate(method("void", "f").commands(
+				returns(literal(0))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_AnUnreachableStatement_when_Validating_then_ThrowsException() {
+		JSCStatement.validate(method(int.class, "f").commands(
+				returns(literal(0)), returns(literal(1))));
+	}
+
+	@Test(expected = JSCCompilationException.class)
+	public void given_InvalidStatements_when_Compiling_then_ThrowsExceptionBeforeJavac() {
+		new JSCCompiler().compile(klass("Invalid").add(
+				method(long.class, "f").commands(
+						returns(literal(true)))));
+	}
+
+	@Test
+	public void given_ValidStatements_when_Validating_then_NoException() {
+		JSCStatement.validate(calculator());
+	}
+
+	@Test
+	public void given_TypedStatements_when_CompilingDirectly_then_BehaveAsCompiledByJavac()
+			throws Exception {
+		Map<String, byte[]> direct = BytecodeBackend.compile(
+				Arrays.asList(calculator()), getClass().getClassLoader());
+		Assert.assertNotNull(direct);
+		Class<?> byBackend = new JSCCompiler().directBytecode(true).compile(
+				calculator());
+		Class<?> byJavac = new JSCCompiler().compile(calculator());
+		for (int n : new int[] { 0, 1, 10, 1000 }) {
+			Assert.assertEquals(invoke(byJavac, "sum", n),
+					invoke(byBackend, "sum", n));
+		}
+		for (long n : new long[] { 1, 7, 27, 837799 }) {
+			Assert.assertEquals(invoke(byJavac, "collatz", n),
+					invoke(byBackend, "collatz", n));
+		}
+		for (int x : new int[] { -5, 0, 5 }) {
+			Assert.assertEquals(invoke(byJavac, "sign", x),
+					invoke(byBackend, "sign", x));
+		}
+		Assert.assertEquals(invoke(byJavac, "mean", 1.5, 4L),
+				invoke(byBackend, "mean", 1.5, 4L));
+		for (double x : new double[] { -1, 0, 0.5, 1, 2, Double.NaN }) {
+			Assert.assertEquals(invoke(byJavac, "between", x, 0.0, 1.0),
+					invoke(byBackend, "between", x, 0.0, 1.0));
+		}
+		Object calculator = byBackend.getConstructor().newInstance();
+		byBackend.getMethod("add", int.class).invoke(calculator, 40);
+		Assert.assertEquals(42L,
+				byBackend.getMethod("add", int.class).invoke(calculator, 2));
+	}
+
+	@Test
+	public void given_AMethodCallStatement_when_Compiling_then_FallsBackToJavac()
+			throws Exception {
+		JSC klass = klass("Caller").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC);
+		klass.add(method("void", "run").modifier(Modifier.PUBLIC).commands(
+				expression(call("toString"))));
+		Assert.assertNull(BytecodeBackend.compile(Arrays.asList(klass),
+				getClass().getClassLoader()));
+		Assert.assertNotNull(new JSCCompiler().directBytecode(true)
+				.compile(klass).getMethod("run"));
+	}
+
+	@Test
+	public void given_ALoopWithNegativeStep_when_CompilingDirectly_then_Works()
+			throws Exception {
+		JSC klass = klass("Countdown").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC);
+		klass.add(method(long.class, "product")
+				.modifier(Modifier.PUBLIC, Modifier.STATIC)
+				.arguments(argument(int.class, "n"))
+				.commands(
+						declare(long.class, "p", literal(1)),
+						whileLoop(gt(local("n"), literal(0)),
+								assign(local("p"), times(local("p"), local("n"))),
+								assign(local("n"), minus(local("n"), literal(1)))),
+						returns(local("p"))));
+		Class<?> countdown = new JSCCompiler().directBytecode(true).compile(
+				klass);
+		Assert.assertEquals(3628800L, invoke(countdown, "product", 10));
+	}
+
+	private static Object invoke(Class<?> klass, String name, Object... args)
+			throws Exception {
+		for (Method method : klass.getMethods()) {
+			if (method.getName().equals(name)) {
+				return method.invoke(null, args);
+			}
+		}
+		throw new NoSuchMethodException(name);
+	}
+}
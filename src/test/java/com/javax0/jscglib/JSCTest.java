@@ -7,11 +7,17 @@ import static com.javax0.jscglib.JSCBuilder.field;
 import static com.javax0.jscglib.JSCBuilder.klass;
 import static com.javax0.jscglib.JSCBuilder.method;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Modifier;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Assert;
 import org.junit.Rule;
@@ -188,6 +194,195 @@ public class JSCTest {
 		assertSourceIsOK(actual);
 	}
 
+	@Test
+	public void given_AComplexClass_when_RenderingIntoAppendable_then_ReturnsTheSameAsToString()
+			throws Exception {
+		JSC klass = klass("TestClass");
+		klass.add(constructor(klass).argument(Long.class, "lng")
+				.command("this.lng = lng")).field(Object.class, "object");
+		StringBuilder sb = new StringBuilder();
+		JSCPrinter.pprint(klass, sb);
+		Assert.assertEquals(klass.toString(), sb.toString());
+	}
+
+	@Test
+	public void given_AComplexClass_when_RenderingIntoStreamAndChannel_then_WritesTheSameAsToString()
+			throws Exception {
+		JSC klass = klass("TestClass").add(
+				method("String", "name").command("return \"\u00e1rv\u00edzt\u0171r\u0151\""));
+		Charset utf8 = Charset.forName("utf-8");
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		JSCPrinter.pprint(klass, stream, utf8);
+		Assert.assertEquals(klass.toString(), new String(stream.toByteArray(),
+				utf8));
+		ByteArrayOutputStream channelTarget = new ByteArrayOutputStream();
+		JSCPrinter.pprint(klass, Channels.newChannel(channelTarget), utf8);
+		Assert.assertEquals(klass.toString(), new String(
+				channelTarget.toByteArray(), utf8));
+	}
+
+	@Test
+	public void given_AMethodWithCommands_when_GeneratingCode_then_CommandsAreIndentedByNestingDepth()
+			throws Exception {
+		String actual = klass("TestClass").add(
+				method("void", "name").command("a()").commandBlock("if(b){}"))
+				.toString();
+		Assert.assertEquals("class TestClass{\n" //
+				+ "  void name(){\n" //
+				+ "    a();\n" //
+				+ "    if(b){}\n" //
+				+ "  }\n" //
+				+ "}\n", actual);
+	}
+
+	@Test
+	public void given_AFingerprintedClass_when_ModifyingAMethod_then_OnlyThePathToTheRootIsRecalculated() {
+		JSC changed = method("void", "changed");
+		JSC unchanged = method("void", "unchanged").command("a()");
+		JSC klass = klass("TestClass").add(changed).add(unchanged);
+		Fingerprint before = klass.fingerprint();
+		Fingerprint unchangedBefore = unchanged.fingerprint();
+		changed.command("b()");
+		Assert.assertNotEquals(before, klass.fingerprint());
+		Assert.assertSame(unchangedBefore, unchanged.fingerprint());
+		Assert.assertEquals(
+				klass("TestClass")
+						.add(method("void", "changed").command("b()"))
+						.add(method("void", "unchanged").command("a()"))
+						.fingerprint(), klass.fingerprint());
+	}
+
+	@Test
+	public void given_AFieldSharedByTwoClasses_when_ModifyingTheField_then_BothClassesChange() {
+		JSC shared = field(int.class, "x").initValue(1);
+		JSC a = klass("A").memoizeMembers().add(shared);
+		JSC b = klass("B").memoizeMembers().add(shared);
+		Fingerprint fingerprintA = a.fingerprint();
+		Fingerprint fingerprintB = b.fingerprint();
+		a.toString();
+		b.toString();
+		shared.initValue(2);
+		Assert.assertNotEquals(fingerprintA, a.fingerprint());
+		Assert.assertNotEquals(fingerprintB, b.fingerprint());
+		Assert.assertTrue(a.toString().contains("x = 2"));
+		Assert.assertTrue(b.toString().contains("x = 2"));
+	}
+
+	@Test
+	public void given_AMemoizingClass_when_ModifyingAMethodAndPrintingAgain_then_OnlyTheModifiedMethodIsRendered() {
+		JSC changed = method("void", "changed");
+		JSC unchanged = method("void", "unchanged").command("a()");
+		JSC klass = klass("TestClass").memoizeMembers().add(changed)
+				.add(unchanged);
+		String first = klass.toString();
+		String unchangedRendered = unchanged.getRendered(2);
+		Assert.assertNotNull(unchangedRendered);
+		changed.command("b()");
+		Assert.assertNull(changed.getRendered(2));
+		String second = klass.toString();
+		Assert.assertSame(unchangedRendered, unchanged.getRendered(2));
+		Assert.assertNotEquals(first, second);
+		Assert.assertEquals(
+				klass("TestClass").add(method("void", "changed").command("b()"))
+						.add(method("void", "unchanged").command("a()"))
+						.toString(), second);
+	}
+
+	@Test
+	public void given_ALargeClass_when_PrintingInParallel_then_ReturnsTheSameAsSequentialPrinting() {
+		JSC klass = klass("TestClass").inPackage("com.javax0.jscglib.test")
+				.imports("java.util.List");
+		for (int i = 0; i < 1000; i++) {
+			klass.add(method("int", "m" + i).command("return " + i)).field(
+					int.class, "f" + i);
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Assert.assertEquals(klass.toString(),
+					JSCPrinter.pprintParallel(klass, pool, 100));
+			Assert.assertEquals(klass.toString(), JSCPrinter.pprintParallel(
+					klass.memoizeMembers(), pool, 100));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void given_AClassWithInterfacesGivenAsStrings_when_AddingInterfacesAsClasses_then_AllInterfacesAreListed() {
+		String actual = klass("TestClass").interfaces("a.A")
+				.interfaces(Runnable.class).toString();
+		Assert.assertEquals("class TestClass implements a.A,java.lang.Runnable{\n}\n",
+				actual);
+	}
+
+	@Test
+	public void given_AClass_when_Freezing_then_SnapshotPrintsTheSameAndSharesIdenticalSubtrees() {
+		JSC klass = klass("TestClass")
+				.add(method("void", "a").command("x()"))
+				.add(method("void", "b").command("x()"));
+		JSC frozen = klass.freeze();
+		Assert.assertTrue(frozen.isFrozen());
+		Assert.assertEquals(klass.toString(), frozen.toString());
+		Assert.assertEquals(klass.fingerprint(), frozen.fingerprint());
+		Assert.assertSame(frozen.getDeclaredBlocks().get(0).getCommands()
+				.get(0), frozen.getDeclaredBlocks().get(1).getCommands().get(0));
+		Assert.assertSame(frozen, frozen.freeze());
+		klass.field(int.class, "f");
+		Assert.assertNotEquals(klass.toString(), frozen.toString());
+	}
+
+	@Test
+	public void given_ASnapshotWithTheSameFingerprintButOtherCode_when_Freezing_then_ItIsNotShared() {
+		JSC klass = klass("TestClass").add(method("void", "a").command("x()"));
+		Map<Fingerprint, JSC> shared = new HashMap<>();
+		shared.put(klass.fingerprint(), klass("OtherClass").freeze());
+		JSC frozen = klass.freeze(shared);
+		Assert.assertEquals(klass.toString(), frozen.toString());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void given_AFrozenClass_when_Modifying_then_ThrowsException() {
+		klass("TestClass").freeze().field(int.class, "f");
+	}
+
+	@Test
+	public void given_ATemplate_when_Instantiating_then_ReturnsTheSameAsTheDirectlyBuiltClass() {
+		JSCTemplate template = JSCTemplate.of(klass(JSCTemplate.param("name"))
+				.add(field(JSCTemplate.param("type"), "value").initValue(
+						JSCTemplate.param("init"))));
+		Map<String, Object> values = new HashMap<>();
+		values.put("name", "Answer");
+		values.put("type", "int");
+		values.put("init", 42);
+		Assert.assertEquals(klass("Answer").add(
+				field("int", "value").initValue(42)).toString(),
+				template.instantiate(values));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_ATemplate_when_InstantiatingWithMissingValue_then_ThrowsException() {
+		JSCTemplate.of(klass(JSCTemplate.param("name"))).instantiate(
+				new HashMap<String, Object>());
+	}
+
+	public static class NestedException extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	@Test
+	public void given_NestedAndArrayTypes_when_UsedInTheCode_then_TheNamesAreCanonicalAndShared() {
+		JSC method = method(Map.Entry[].class, "name")
+				.argument(Map.Entry.class, "a")
+				.argument(Map.Entry.class, "b")
+				.exceptions(new Class<?>[] { NestedException.class });
+		Assert.assertEquals("java.util.Map.Entry[]", method.getType());
+		Assert.assertEquals(
+				"com.javax0.jscglib.JSCTest.NestedException",
+				method.getExceptions().get(0));
+		Assert.assertSame(method.getArguments().get(0).getType(), method
+				.getArguments().get(1).getType());
+	}
+
 	//
 	// A U X M E T H O D S
 	//
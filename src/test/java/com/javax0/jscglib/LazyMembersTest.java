@@ -0,0 +1,223 @@
+package com.javax0.jscglib;
+
+import static com.javax0.jscglib.JSCBuilder.field;
+import static com.javax0.jscglib.JSCBuilder.klass;
+import static com.javax0.jscglib.JSCBuilder.method;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LazyMembersTest {
+
+	private static JSC constant(int i) {
+		return field(int.class, "C" + i).modifier(Modifier.PUBLIC,
+				Modifier.STATIC, Modifier.FINAL).initValue(i);
+	}
+
+	/**
+	 * Supplies {@code n} constants and counts how many were pulled.
+	 */
+	private static class Constants implements Supplier<JSC> {
+		private final int n;
+		int pulled = 0;
+
+		Constants(int n) {
+			this.n = n;
+		}
+
+		@Override
+		public JSC get() {
+			return pulled < n ? constant(pulled++) : null;
+		}
+	}
+
+	private static JSC eager(int n) {
+		JSC klass = klass("Constants").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC);
+		klass.add(method("void", "before"));
+		for (int i = 0; i < n; i++) {
+			klass.add(constant(i));
+		}
+		klass.add(method("void", "after"));
+		return klass;
+	}
+
+	private static JSC lazy(Supplier<JSC> constants) {
+		return klass("Constants").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).add(method("void", "before"))
+				.add(constants).add(method("void", "after"));
+	}
+
+	@Test
+	public void given_LazyMembers_when_Rendering_then_ReturnsTheSameAsMembersAddedOneByOne() {
+		Assert.assertEquals(JSCPrinter.pprint(eager(100)),
+				JSCPrinter.pprint(lazy(new Constants(100))));
+	}
+
+	@Test
+	public void given_AnIteratorOfMembers_when_Rendering_then_MembersAreInTheOutput() {
+		List<JSC> members = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			members.add(constant(i));
+		}
+		JSC klass = klass("Constants").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).add(method("void", "before"))
+				.add(members.iterator()).add(method("void", "after"));
+		Assert.assertEquals(JSCPrinter.pprint(eager(100)),
+				JSCPrinter.pprint(klass));
+	}
+
+	@Test
+	public void given_LazyMembers_when_Streaming_then_MembersArePulledWhileWriting()
+			throws IOException {
+		final Constants constants = new Constants(1000);
+		final JSC klass = lazy(constants);
+		Assert.assertEquals(0, constants.pulled);
+		final StringBuilder out = new StringBuilder();
+		final int[] written = new int[1];
+		JSCPrinter.pprint(klass, new Appendable() {
+			@Override
+			public Appendable append(CharSequence csq) {
+				String s = csq.toString();
+				if (s.matches("C\\d+")) {
+					Assert.assertEquals(Integer.parseInt(s.substring(1)) + 1,
+							constants.pulled);
+					written[0]++;
+				}
+				out.append(csq);
+				return this;
+			}
+
+			@Override
+			public Appendable append(CharSequence csq, int start, int end) {
+				return append(csq.subSequence(start, end));
+			}
+
+			@Override
+			public Appendable append(char c) {
+				out.append(c);
+				return this;
+			}
+		});
+		Assert.assertEquals(1000, constants.pulled);
+		Assert.assertEquals(1000, written[0]);
+		Assert.assertTrue(out.toString().contains("C999 = 999;"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void given_LazyMembers_when_RenderingTwice_then_ThrowsException() {
+		JSC klass = lazy(new Constants(10));
+		JSCPrinter.pprint(klass);
+		JSCPrinter.pprint(klass);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void given_LazyMembers_when_Fingerprinting_then_ThrowsException() {
+		lazy(new Constants(10)).fingerprint();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void given_LazyMembers_when_Freezing_then_ThrowsException() {
+		lazy(new Constants(10)).freeze();
+	}
+
+	@Test
+	public void given_LazyMembers_when_CompilingWithCacheAndDirectBackend_then_JavacCompilesThemOnce()
+			throws Exception {
+		Constants constants = new Constants(1000);
+		JSCCompilerCache cache = new JSCCompilerCache(10);
+		Class<?> klass = new JSCCompiler().cache(cache).directBytecode(true)
+				.compile(lazy(constants));
+		Assert.assertEquals(1000, constants.pulled);
+		Assert.assertEquals(999, klass.getField("C999").get(null));
+		Assert.assertEquals(0, cache.getHits() + cache.getMisses());
+	}
+
+	@Test
+	public void given_AnEmptySupplier_when_Rendering_then_OnlyTheOtherMembersArePrinted() {
+		Assert.assertEquals(JSCPrinter.pprint(eager(0)),
+				JSCPrinter.pprint(lazy(new Constants(0))));
+	}
+
+	@Test
+	public void given_LazyMembers_when_RenderingParallel_then_RendersSequentially() {
+		Assert.assertEquals(JSCPrinter.pprint(eager(100)), JSCPrinter
+				.pprintParallel(lazy(new Constants(100)),
+						java.util.concurrent.ForkJoinPool.commonPool(), 1));
+	}
+
+	private static JSC outer(JSC inner) {
+		return klass("Outer").inPackage("com.javax0.jscglib.test")
+				.modifier(Modifier.PUBLIC).memoizeMembers().add(inner);
+	}
+
+	private static JSC inner() {
+		return klass("Inner").modifier(Modifier.PUBLIC, Modifier.STATIC);
+	}
+
+	@Test
+	public void given_ANestedClassWithLazyMembers_when_CompilingWithCache_then_TheCacheIsBypassed()
+			throws Exception {
+		Constants constants = new Constants(10);
+		JSCCompilerCache cache = new JSCCompilerCache(10);
+		Class<?> klass = new JSCCompiler().cache(cache).compile(
+				outer(inner().add(constants)));
+		Assert.assertEquals(10, constants.pulled);
+		Assert.assertEquals(1, klass.getClasses().length);
+		Assert.assertEquals(0, cache.getHits() + cache.getMisses());
+	}
+
+	@Test
+	public void given_LazyMembersAddedToANestedClassLater_when_Checked_then_TheOuterClassHasLazyMembers() {
+		JSC inner = inner();
+		JSC outer = outer(inner);
+		Assert.assertFalse(outer.hasLazyMembers());
+		inner.add(new Constants(10));
+		Assert.assertTrue(outer.hasLazyMembers());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_ANestedClassWithLazyMembers_when_Written_then_ThrowsException() {
+		new JSCModelWriter().add(outer(inner().add(new Constants(10))));
+	}
+
+	@Test
+	public void given_AMemoizingClassWithANestedLazyClass_when_Streamed_then_TheMembersArePulledWhileWriting()
+			throws IOException {
+		Constants constants = new Constants(10);
+		JSC klass = outer(inner().add(constants));
+		final int[] pulled = new int[] { -1 };
+		JSCPrinter.pprint(klass, new Appendable() {
+			@Override
+			public Appendable append(CharSequence csq) {
+				if ("C0".contentEquals(csq)) {
+					pulled[0] = constants.pulled;
+				}
+				return this;
+			}
+
+			@Override
+			public Appendable append(CharSequence csq, int start, int end) {
+				return append(csq.subSequence(start, end));
+			}
+
+			@Override
+			public Appendable append(char c) {
+				return this;
+			}
+		});
+		Assert.assertEquals(1, pulled[0]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void given_ANullIterator_when_Adding_then_ThrowsException() {
+		klass("A").add((Iterator<JSC>) null);
+	}
+}